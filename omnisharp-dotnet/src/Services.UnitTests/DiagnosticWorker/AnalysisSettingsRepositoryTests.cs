@@ -0,0 +1,45 @@
+﻿/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+using FluentAssertions;
+using Microsoft.VisualStudio.TestTools.UnitTesting;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
+using static SonarLint.OmniSharp.DotNet.Services.UnitTests.TestingInfrastructure.MefTestHelpers;
+
+namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker
+{
+    [TestClass]
+    public class AnalysisSettingsRepositoryTests
+    {
+        [TestMethod]
+        public void MefCtor_CheckIsExported()
+        {
+            CheckTypeCanBeImported<AnalysisSettingsRepository, IAnalysisSettingsRepository>();
+        }
+
+        [TestMethod]
+        public void Get_ValueIsNotSet_NotConcurrent()
+        {
+            var testSubject = new AnalysisSettingsRepository();
+
+            testSubject.ConcurrentAnalysis.Should().BeFalse();
+        }
+    }
+}
@@ -289,6 +289,31 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker.QuickFi
             getFileChangesFunc.VerifyNoOtherCalls();
         }
 
+        [TestMethod]
+        public async Task GetDiagnosticQuickFixes_WorkspaceChangedDuringCodeCheck_ChangesRelativeToAnalyzedSolution()
+        {
+            const string filePath = "./test.cs";
+            var diagnostic = CreateDiagnostic();
+            var workspace = CreateOmnisharpWorkspaceWithDocument(filePath, "content");
+            var document = workspace.GetDocument(filePath);
+            var analyzedSolution = workspace.CurrentSolution;
+
+            var codeAction = CreateCodeAction("fix message", new ApplyChangesOperation(analyzedSolution));
+            var diagnosticCodeActionsProvider = new Mock<ISonarLintDiagnosticCodeActionsProvider>();
+            diagnosticCodeActionsProvider.Setup(dap => dap.GetCodeActions(diagnostic, document))
+                .Callback(() => workspace.AddDocument(DocumentInfo.Create(DocumentId.CreateNewId(document.Project.Id), "other.cs", filePath: "./other.cs")))
+                .ReturnsAsync(new List<CodeAction> { codeAction });
+            var getFileChangesFunc = new Mock<GetFileChangesAsyncFunc>();
+            SetupGetFileChangesFunc(getFileChangesFunc, analyzedSolution, CreateFileResponse(filePath));
+
+            var testSubject = CreateTestSubject(workspace, diagnosticCodeActionsProvider.Object, getFileChangesFunc.Object);
+
+            await testSubject.GetDiagnosticQuickFixes(diagnostic, filePath);
+
+            workspace.CurrentSolution.Should().NotBeSameAs(analyzedSolution);
+            getFileChangesFunc.Verify(x => x(analyzedSolution, analyzedSolution, ".", true, false), Times.Once);
+        }
+
         private DiagnosticQuickFixesProvider CreateTestSubject(
             OmniSharpWorkspace workspace = null,
             ISonarLintDiagnosticCodeActionsProvider diagnosticCodeActionsProvider = null,
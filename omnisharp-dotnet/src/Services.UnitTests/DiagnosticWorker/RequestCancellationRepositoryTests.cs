@@ -0,0 +1,124 @@
+﻿/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+using System.Threading;
+using System.Threading.Tasks;
+using FluentAssertions;
+using Microsoft.VisualStudio.TestTools.UnitTesting;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
+using static SonarLint.OmniSharp.DotNet.Services.UnitTests.TestingInfrastructure.MefTestHelpers;
+
+namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker
+{
+    [TestClass]
+    public class RequestCancellationRepositoryTests
+    {
+        [TestMethod]
+        public void MefCtor_CheckIsExported()
+        {
+            CheckTypeCanBeImported<RequestCancellationRepository, IRequestCancellationRepository>();
+        }
+
+        [TestMethod]
+        [DataRow(null)]
+        [DataRow("")]
+        public void Register_NoId_CannotBeCancelled(string cancellationId)
+        {
+            var testSubject = new RequestCancellationRepository();
+
+            var token = testSubject.Register(cancellationId);
+            testSubject.Cancel(cancellationId);
+
+            token.CanBeCanceled.Should().BeFalse();
+        }
+
+        [TestMethod]
+        public void Cancel_RegisteredRequest_CancelsToken()
+        {
+            var testSubject = new RequestCancellationRepository();
+            var token = testSubject.Register("1");
+            var otherToken = testSubject.Register("2");
+
+            testSubject.Cancel("1");
+
+            token.IsCancellationRequested.Should().BeTrue();
+            otherToken.IsCancellationRequested.Should().BeFalse();
+        }
+
+        [TestMethod]
+        public void Cancel_BeforeRegistration_TokenIsAlreadyCancelled()
+        {
+            var testSubject = new RequestCancellationRepository();
+
+            testSubject.Cancel("1");
+            var token = testSubject.Register("1");
+
+            token.IsCancellationRequested.Should().BeTrue();
+        }
+
+        [TestMethod]
+        public void Register_AfterUnregister_TokenIsNotCancelled()
+        {
+            var testSubject = new RequestCancellationRepository();
+            testSubject.Register("1");
+            testSubject.Cancel("1");
+            testSubject.Unregister("1");
+
+            var token = testSubject.Register("1");
+
+            token.IsCancellationRequested.Should().BeFalse();
+        }
+
+        [TestMethod]
+        public void Cancel_WhileRequestCompletes_DoesNotThrow()
+        {
+            var testSubject = new RequestCancellationRepository();
+
+            var completing = Task.Run(() =>
+            {
+                for (var i = 0; i < 10000; i++)
+                {
+                    testSubject.Register(i.ToString());
+                    testSubject.Unregister(i.ToString());
+                }
+            });
+            for (var i = 0; i < 10000; i++)
+            {
+                testSubject.Cancel(i.ToString());
+            }
+
+            completing.Invoking(x => x.Wait()).Should().NotThrow();
+        }
+
+        [TestMethod]
+        public void Cancel_TooManyEarlyCancellations_OldestAreForgotten()
+        {
+            var testSubject = new RequestCancellationRepository();
+
+            for (var i = 0; i <= RequestCancellationRepository.MaxEarlyCancellations; i++)
+            {
+                testSubject.Cancel(i.ToString());
+            }
+
+            testSubject.Register("0").IsCancellationRequested.Should().BeFalse();
+            testSubject.Register(RequestCancellationRepository.MaxEarlyCancellations.ToString()).IsCancellationRequested.Should().BeTrue();
+        }
+    }
+}
@@ -42,6 +42,7 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker
         {
             CheckTypeCanBeImported<SonarLintAnalysisConfigProvider, ISonarLintAnalysisConfigProvider>(
                  CreateExport<IActiveRuleDefinitionsRepository>(),
+                 CreateExport<IAnalysisSettingsRepository>(),
                  CreateExport<ISonarAnalyzerCodeActionProvider>(CreateSonarCodeActionProvider(ImmutableArray<DiagnosticAnalyzer>.Empty)),
                  CreateExport<IRulesToReportDiagnosticsConverter>());
         }
@@ -50,13 +51,129 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker
         public void Get_ReturnsCorrectAnalyzers()
         {
             var analyzers = new DiagnosticAnalyzer[] {new DummyAnalyzer()};
+            var activeRules = new[] {new ActiveRuleDefinition {RuleId = DummyAnalyzer.Descriptor2.Id}};
 
-            var testSubject = CreateTestSubject(analyzers: analyzers);
+            var testSubject = CreateTestSubject(activeRules: activeRules, analyzers: analyzers);
             var analysisConfig = testSubject.Get(CreateCompilation(), CreateOptions());
 
             analysisConfig.Analyzers.Should().BeEquivalentTo(analyzers);
         }
 
+        [TestMethod]
+        public void Get_AnalyzersWithoutActiveRulesAreIgnored()
+        {
+            var activeAnalyzer = new DummyAnalyzer();
+            var inactiveAnalyzer = new OtherDummyAnalyzer();
+            var activeRules = new[] {new ActiveRuleDefinition {RuleId = DummyAnalyzer.Descriptor1.Id}};
+
+            var testSubject = CreateTestSubject(activeRules: activeRules, analyzers: new DiagnosticAnalyzer[] {activeAnalyzer, inactiveAnalyzer});
+            var analysisConfig = testSubject.Get(CreateCompilation(), CreateOptions());
+
+            analysisConfig.Analyzers.Should().BeEquivalentTo(new[] {activeAnalyzer});
+            analysisConfig.AnalyzerRules.Should().BeEquivalentTo(DummyAnalyzer.Descriptor1.Id, DummyAnalyzer.Descriptor2.Id, OtherDummyAnalyzer.Descriptor.Id);
+        }
+
+        [TestMethod]
+        public void Get_ActiveRulesChanged_AnalyzersAreFilteredAgain()
+        {
+            var dummyAnalyzer = new DummyAnalyzer();
+            var otherAnalyzer = new OtherDummyAnalyzer();
+            var firstRules = new[] {new ActiveRuleDefinition {RuleId = DummyAnalyzer.Descriptor1.Id}};
+            var secondRules = new[] {new ActiveRuleDefinition {RuleId = OtherDummyAnalyzer.Descriptor.Id}};
+
+            var ruleDefinitionsRepository = new Mock<IActiveRuleDefinitionsRepository>();
+            ruleDefinitionsRepository.SetupSequence(x => x.ActiveRules)
+                .Returns(firstRules)
+                .Returns(firstRules)
+                .Returns(secondRules);
+
+            var rulesToReportDiagnosticsConverter = new Mock<IRulesToReportDiagnosticsConverter>();
+            rulesToReportDiagnosticsConverter
+                .Setup(x => x.Convert(It.IsAny<ImmutableHashSet<string>>(), It.IsAny<ImmutableHashSet<string>>()))
+                .Returns(new Dictionary<string, ReportDiagnostic>());
+
+            var testSubject = new SonarLintAnalysisConfigProvider(ruleDefinitionsRepository.Object,
+                new AnalysisSettingsRepository(),
+                CreateSonarCodeActionProvider(new DiagnosticAnalyzer[] {dummyAnalyzer, otherAnalyzer}.ToImmutableArray()),
+                rulesToReportDiagnosticsConverter.Object,
+                CreateRulesToAdditionalTextConverter());
+
+            var first = testSubject.Get(CreateCompilation(), CreateOptions());
+            var second = testSubject.Get(CreateCompilation(), CreateOptions());
+            var third = testSubject.Get(CreateCompilation(), CreateOptions());
+
+            first.Analyzers.Should().BeEquivalentTo(new[] {dummyAnalyzer});
+            second.Analyzers.Should().Equal(first.Analyzers);
+            third.Analyzers.Should().BeEquivalentTo(new[] {otherAnalyzer});
+        }
+
+        [TestMethod]
+        public void Get_SameCompilationAndOptions_ReturnsCachedConfig()
+        {
+            var testSubject = CreateTestSubject();
+            var compilation = CreateCompilation();
+            var options = CreateOptions();
+
+            var first = testSubject.Get(compilation, options);
+            var second = testSubject.Get(compilation, options);
+
+            second.Should().BeSameAs(first);
+            testSubject.Get(CreateCompilation(), options).Should().NotBeSameAs(first);
+            testSubject.Get(compilation, CreateOptions()).Should().NotBeSameAs(first);
+        }
+
+        [TestMethod]
+        public void Get_ActiveRulesChanged_CachedConfigIsRebuilt()
+        {
+            var dummyAnalyzer = new DummyAnalyzer();
+            var otherAnalyzer = new OtherDummyAnalyzer();
+            var firstRules = new[] {new ActiveRuleDefinition {RuleId = DummyAnalyzer.Descriptor1.Id}};
+            var secondRules = new[] {new ActiveRuleDefinition {RuleId = OtherDummyAnalyzer.Descriptor.Id}};
+
+            var ruleDefinitionsRepository = new Mock<IActiveRuleDefinitionsRepository>();
+            ruleDefinitionsRepository.SetupSequence(x => x.ActiveRules)
+                .Returns(firstRules)
+                .Returns(secondRules);
+
+            var rulesToReportDiagnosticsConverter = new Mock<IRulesToReportDiagnosticsConverter>();
+            rulesToReportDiagnosticsConverter
+                .Setup(x => x.Convert(It.IsAny<ImmutableHashSet<string>>(), It.IsAny<ImmutableHashSet<string>>()))
+                .Returns(new Dictionary<string, ReportDiagnostic>());
+
+            var testSubject = new SonarLintAnalysisConfigProvider(ruleDefinitionsRepository.Object,
+                new AnalysisSettingsRepository(),
+                CreateSonarCodeActionProvider(new DiagnosticAnalyzer[] {dummyAnalyzer, otherAnalyzer}.ToImmutableArray()),
+                rulesToReportDiagnosticsConverter.Object,
+                CreateRulesToAdditionalTextConverter());
+
+            var compilation = CreateCompilation();
+            var options = CreateOptions();
+
+            var first = testSubject.Get(compilation, options);
+            var second = testSubject.Get(compilation, options);
+
+            second.Should().NotBeSameAs(first);
+            first.Analyzers.Should().BeEquivalentTo(new[] {dummyAnalyzer});
+            second.Analyzers.Should().BeEquivalentTo(new[] {otherAnalyzer});
+        }
+
+        [TestMethod]
+        public void Get_ConcurrentAnalysisChanged_CachedConfigIsRebuilt()
+        {
+            var analysisSettingsRepository = new AnalysisSettingsRepository();
+            var testSubject = CreateTestSubject(analysisSettingsRepository: analysisSettingsRepository);
+            var compilation = CreateCompilation();
+            var options = CreateOptions();
+
+            var first = testSubject.Get(compilation, options);
+            analysisSettingsRepository.ConcurrentAnalysis = true;
+            var second = testSubject.Get(compilation, options);
+
+            first.ConcurrentAnalysis.Should().BeFalse();
+            second.Should().NotBeSameAs(first);
+            second.ConcurrentAnalysis.Should().BeTrue();
+        }
+
         [TestMethod]
         public void Get_ReturnsCorrectAnalyzerRules()
         {
@@ -159,12 +276,14 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker
             ActiveRuleDefinition[] activeRules = null,
             DiagnosticAnalyzer[] analyzers = null,
             Dictionary<string, ReportDiagnostic> ruleSeverities = null,
-            AdditionalText additionalFile = null)
+            AdditionalText additionalFile = null,
+            IAnalysisSettingsRepository analysisSettingsRepository = null)
         {
             activeRules ??= new[] {new ActiveRuleDefinition {RuleId = "1"}, new ActiveRuleDefinition {RuleId = "2"}};
             analyzers ??= new DiagnosticAnalyzer[] {new DummyAnalyzer()};
             ruleSeverities ??= new Dictionary<string, ReportDiagnostic>();
             additionalFile ??= new RulesToAdditionalTextConverter.AdditionalTextImpl("some file", "some content");
+            analysisSettingsRepository ??= new AnalysisSettingsRepository();
 
             var ruleDefinitionsRepository = CreateRuleDefinitionsRepository(activeRules);
             var rulesToReportDiagnosticsConverter = CreateRulesToReportDiagnosticsConverter(activeRules, analyzers, ruleSeverities);
@@ -172,6 +291,7 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker
             var sonarCodeActionProvider = CreateSonarCodeActionProvider(analyzers.ToImmutableArray());
 
             return new SonarLintAnalysisConfigProvider(ruleDefinitionsRepository,
+                analysisSettingsRepository,
                 sonarCodeActionProvider,
                 rulesToReportDiagnosticsConverter,
                 rulesToAdditionalTextConverter);
@@ -215,6 +335,17 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker
             return rulesToReportDiagnosticsConverter.Object;
         }
 
+        private static IRulesToAdditionalTextConverter CreateRulesToAdditionalTextConverter()
+        {
+            var rulesToAdditionalTextConverter = new Mock<IRulesToAdditionalTextConverter>();
+
+            rulesToAdditionalTextConverter
+                .Setup(x => x.Convert(It.IsAny<IEnumerable<ActiveRuleDefinition>>()))
+                .Returns(new RulesToAdditionalTextConverter.AdditionalTextImpl("some file", "some content"));
+
+            return rulesToAdditionalTextConverter.Object;
+        }
+
         private static IRulesToAdditionalTextConverter CreateRulesToAdditionalTextConverter(ActiveRuleDefinition[] rules, AdditionalText additionalText)
         {
             var rulesToAdditionalTextConverter = new Mock<IRulesToAdditionalTextConverter>();
@@ -244,6 +375,19 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker
                 new[] {Descriptor1, Descriptor2}.ToImmutableArray();
         }
 
+        private class OtherDummyAnalyzer : DiagnosticAnalyzer
+        {
+            public static DiagnosticDescriptor Descriptor =
+                new("id3", "title3","message3","category3",DiagnosticSeverity.Warning, true);
+
+            public override void Initialize(AnalysisContext context)
+            {
+            }
+
+            public override ImmutableArray<DiagnosticDescriptor> SupportedDiagnostics { get; } =
+                new[] {Descriptor}.ToImmutableArray();
+        }
+
         #endregion
     }
 }
@@ -23,6 +23,7 @@ using Microsoft.VisualStudio.TestTools.UnitTesting;
 using Moq;
 using Newtonsoft.Json;
 using OmniSharp.Mef;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
 using SonarLint.OmniSharp.DotNet.Services.Rules;
 using SonarLint.OmniSharp.DotNet.Services.Services;
 using static SonarLint.OmniSharp.DotNet.Services.UnitTests.TestingInfrastructure.MefTestHelpers;
@@ -38,7 +39,8 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
         public void MefCtor_CheckIsExported()
         {
             CheckTypeCanBeImported <ConfigService, IRequestHandler>(
-                     CreateExport<IActiveRuleDefinitionsRepository>());
+                     CreateExport<IActiveRuleDefinitionsRepository>(),
+                     CreateExport<IAnalysisSettingsRepository>());
         }
 
         [TestMethod]
@@ -48,7 +50,7 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
             var suppliedRules = new[] { new ActiveRuleDefinition { RuleId = "1" } };
             var request = new ConfigRequest { ActiveRules = suppliedRules };
 
-            var testSubject = new ConfigService(repo.Object);
+            var testSubject = new ConfigService(repo.Object, Mock.Of<IAnalysisSettingsRepository>());
 
             await testSubject.Handle(request);
 
@@ -56,6 +58,20 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
             repo.VerifyNoOtherCalls();
         }
 
+        [TestMethod]
+        public async Task Handle_AnalysisSettingsAreUpdated()
+        {
+            var settings = new Mock<IAnalysisSettingsRepository>();
+            var request = new ConfigRequest { ConcurrentAnalysis = true };
+
+            var testSubject = new ConfigService(Mock.Of<IActiveRuleDefinitionsRepository>(), settings.Object);
+
+            await testSubject.Handle(request);
+
+            settings.VerifySet(x => x.ConcurrentAnalysis = true);
+            settings.VerifyNoOtherCalls();
+        }
+
         [TestMethod]
         public void ConfigRequest_Deserialization()
         {
@@ -87,6 +103,21 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
 
             request.ActiveRules[1].RuleId.Should().Be("no params");
             request.ActiveRules[1].Parameters.Should().BeNull();
+            request.ConcurrentAnalysis.Should().BeFalse();
+        }
+
+        [TestMethod]
+        public void ConfigRequest_Deserialization_ConcurrentAnalysis()
+        {
+            const string data = @"{
+  'activeRules': [],
+  'concurrentAnalysis': true
+}";
+
+            var request = JsonConvert.DeserializeObject<ConfigRequest>(data);
+
+            request.ActiveRules.Should().BeEmpty();
+            request.ConcurrentAnalysis.Should().BeTrue();
         }
     }
 }
@@ -0,0 +1,182 @@
+﻿/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+using System.Collections.Immutable;
+using System.Linq;
+using System.Threading;
+using System.Threading.Tasks;
+using FluentAssertions;
+using Microsoft.CodeAnalysis;
+using Microsoft.VisualStudio.TestTools.UnitTesting;
+using Moq;
+using OmniSharp;
+using OmniSharp.Mef;
+using OmniSharp.Roslyn.CSharp.Services.Diagnostics;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker.AdditionalLocations;
+using SonarLint.OmniSharp.DotNet.Services.Services;
+using static SonarLint.OmniSharp.DotNet.Services.UnitTests.TestingInfrastructure.MefTestHelpers;
+using static SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker.OmniSharpWorkspaceHelper;
+
+namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
+{
+    [TestClass]
+    public class SonarLintBatchCodeCheckServiceTests
+    {
+        [TestMethod]
+        public void MefCtor_CheckIsExported()
+        {
+            CheckTypeCanBeImported<SonarLintBatchCodeCheckService, IRequestHandler>(
+                CreateExport<OmniSharpWorkspace>(CreateOmniSharpWorkspace()),
+                CreateExport<ISonarLintDiagnosticWorker>(),
+                CreateExport<IDiagnosticsToCodeLocationsConverter>(),
+                CreateExport<IRequestCancellationRepository>());
+        }
+
+        [TestMethod]
+        public async Task Handle_UpdatesBuffersBeforeAnalysis()
+        {
+            var workspace = CreateOmnisharpWorkspaceWithDocument("file1.cs", "class Original { }");
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            string analyzedText = null;
+            diagnosticWorker
+                .Setup(x => x.GetDiagnostics(It.IsAny<ImmutableArray<string>>(), It.IsAny<CancellationToken>()))
+                .Returns(async () =>
+                {
+                    analyzedText = (await workspace.GetDocument("file1.cs").GetTextAsync()).ToString();
+                    return ImmutableArray<DocumentDiagnostics>.Empty;
+                });
+
+            var testSubject = new SonarLintBatchCodeCheckService(workspace, diagnosticWorker.Object, Mock.Of<IDiagnosticsToCodeLocationsConverter>(), new RequestCancellationRepository());
+
+            await testSubject.Handle(CreateRequest(new BatchFile { FileName = "file1.cs", Buffer = "class Modified { }" }));
+
+            analyzedText.Should().Be("class Modified { }");
+        }
+
+        [TestMethod]
+        public async Task Handle_ReturnsDiagnosticsGroupedPerFile()
+        {
+            var diagnostics = new[]
+            {
+                CreateDocumentDiagnostics("file1.cs"),
+                CreateDocumentDiagnostics("file2.cs", Diagnostic.Create(SonarLintDiagnosticWorker.IncompleteAnalysis, Location.None))
+            }.ToImmutableArray();
+
+            var file1Locations = new[] { new SonarLintDiagnosticLocation { Id = "test1" } }.ToImmutableArray();
+            var file2Locations = new[] { new SonarLintDiagnosticLocation { Id = "test2" }, new SonarLintDiagnosticLocation { Id = "test3" } }.ToImmutableArray();
+
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            diagnosticWorker
+                .Setup(x => x.GetDiagnostics(
+                    It.Is((ImmutableArray<string> fileNames) => fileNames.SequenceEqual(new[] { "file1.cs", "file2.cs" })),
+                    It.IsAny<CancellationToken>()))
+                .ReturnsAsync(diagnostics);
+
+            var diagnosticsConverter = new Mock<IDiagnosticsToCodeLocationsConverter>();
+            diagnosticsConverter.Setup(x => x.Convert(diagnostics, "file1.cs")).ReturnsAsync(file1Locations);
+            diagnosticsConverter.Setup(x => x.Convert(diagnostics, "file2.cs")).ReturnsAsync(file2Locations);
+
+            var testSubject = new SonarLintBatchCodeCheckService(CreateOmniSharpWorkspace(), diagnosticWorker.Object, diagnosticsConverter.Object, new RequestCancellationRepository());
+
+            var result = await testSubject.Handle(CreateRequest(
+                new BatchFile { FileName = "file1.cs" },
+                new BatchFile { FileName = "file2.cs" }));
+
+            result.Files.Select(x => x.FileName).Should().BeEquivalentTo("file1.cs", "file2.cs");
+            result.Files.Single(x => x.FileName == "file1.cs").QuickFixes.Should().BeEquivalentTo(file1Locations);
+            result.Files.Single(x => x.FileName == "file2.cs").QuickFixes.Should().BeEquivalentTo(file2Locations);
+            result.Files.Single(x => x.FileName == "file1.cs").Complete.Should().BeTrue();
+            result.Files.Single(x => x.FileName == "file2.cs").Complete.Should().BeFalse();
+            diagnosticWorker.Verify(x => x.GetDiagnostics(It.IsAny<ImmutableArray<string>>(), It.IsAny<CancellationToken>()), Times.Once);
+        }
+
+        [TestMethod]
+        public async Task Handle_FileNotInWorkspace_ReturnsPartialResult()
+        {
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            diagnosticWorker
+                .Setup(x => x.GetDiagnostics(It.IsAny<ImmutableArray<string>>(), It.IsAny<CancellationToken>()))
+                .ReturnsAsync(ImmutableArray<DocumentDiagnostics>.Empty);
+            var diagnosticsConverter = new Mock<IDiagnosticsToCodeLocationsConverter>();
+            diagnosticsConverter
+                .Setup(x => x.Convert(It.IsAny<ImmutableArray<DocumentDiagnostics>>(), "file1.cs"))
+                .ReturnsAsync(ImmutableArray<SonarLintDiagnosticLocation>.Empty);
+
+            var testSubject = new SonarLintBatchCodeCheckService(CreateOmniSharpWorkspace(), diagnosticWorker.Object, diagnosticsConverter.Object, new RequestCancellationRepository());
+
+            var result = await testSubject.Handle(CreateRequest(new BatchFile { FileName = "file1.cs" }));
+
+            result.Files.Should().ContainSingle().Which.Complete.Should().BeFalse();
+        }
+
+        [TestMethod]
+        public async Task Handle_NoFiles_ReturnsEmptyResponse()
+        {
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            diagnosticWorker
+                .Setup(x => x.GetDiagnostics(It.IsAny<ImmutableArray<string>>(), It.IsAny<CancellationToken>()))
+                .ReturnsAsync(ImmutableArray<DocumentDiagnostics>.Empty);
+
+            var testSubject = new SonarLintBatchCodeCheckService(CreateOmniSharpWorkspace(), diagnosticWorker.Object, Mock.Of<IDiagnosticsToCodeLocationsConverter>(), new RequestCancellationRepository());
+
+            var result = await testSubject.Handle(new SonarLintBatchCodeCheckRequest());
+
+            result.Files.Should().BeEmpty();
+        }
+
+        [TestMethod]
+        public async Task Handle_CancelledBeforeAnalysis_ReturnsEmptyResponse()
+        {
+            var cancellationRepository = new RequestCancellationRepository();
+            cancellationRepository.Cancel("42");
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            diagnosticWorker
+                .Setup(x => x.GetDiagnostics(It.IsAny<ImmutableArray<string>>(), It.IsAny<CancellationToken>()))
+                .Returns((ImmutableArray<string> _, CancellationToken token) =>
+                {
+                    token.ThrowIfCancellationRequested();
+                    return Task.FromResult(ImmutableArray<DocumentDiagnostics>.Empty);
+                });
+
+            var testSubject = new SonarLintBatchCodeCheckService(CreateOmniSharpWorkspace(), diagnosticWorker.Object,
+                Mock.Of<IDiagnosticsToCodeLocationsConverter>(), cancellationRepository);
+
+            var request = CreateRequest(new BatchFile { FileName = "file1.cs" });
+            request.CancellationId = "42";
+            var result = await testSubject.Handle(request);
+
+            result.Files.Should().BeEmpty();
+        }
+
+        private static SonarLintBatchCodeCheckRequest CreateRequest(params BatchFile[] files) => new() { Files = files };
+
+        private static DocumentDiagnostics CreateDocumentDiagnostics(string fileName, params Diagnostic[] diagnostics)
+        {
+            var project = ProjectId.CreateNewId();
+
+            return new DocumentDiagnostics(DocumentId.CreateNewId(project),
+                fileName,
+                project,
+                project.Id.ToString(),
+                diagnostics.ToImmutableArray());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+﻿/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+using System.Threading.Tasks;
+using FluentAssertions;
+using Microsoft.VisualStudio.TestTools.UnitTesting;
+using Moq;
+using OmniSharp.Mef;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
+using SonarLint.OmniSharp.DotNet.Services.Services;
+using static SonarLint.OmniSharp.DotNet.Services.UnitTests.TestingInfrastructure.MefTestHelpers;
+
+namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
+{
+    [TestClass]
+    public class SonarLintCancelServiceTests
+    {
+        [TestMethod]
+        public void MefCtor_CheckIsExported()
+        {
+            CheckTypeCanBeImported<SonarLintCancelService, IRequestHandler>(
+                CreateExport<IRequestCancellationRepository>());
+        }
+
+        [TestMethod]
+        public async Task Handle_CancelsEveryId()
+        {
+            var cancellationRepository = new Mock<IRequestCancellationRepository>();
+            var testSubject = new SonarLintCancelService(cancellationRepository.Object);
+
+            var result = await testSubject.Handle(new SonarLintCancelRequest { CancellationIds = new[] { "1", "2" } });
+
+            result.Should().Be(true);
+            cancellationRepository.Verify(x => x.Cancel("1"), Times.Once);
+            cancellationRepository.Verify(x => x.Cancel("2"), Times.Once);
+            cancellationRepository.VerifyNoOtherCalls();
+        }
+
+        [TestMethod]
+        public async Task Handle_NoIds_DoesNothing()
+        {
+            var cancellationRepository = new Mock<IRequestCancellationRepository>();
+            var testSubject = new SonarLintCancelService(cancellationRepository.Object);
+
+            await testSubject.Handle(new SonarLintCancelRequest());
+
+            cancellationRepository.Invocations.Should().BeEmpty();
+        }
+    }
+}
@@ -18,13 +18,17 @@
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
 
+using System;
+using System.Collections.Generic;
 using System.Collections.Immutable;
 using System.Linq;
+using System.Threading;
 using System.Threading.Tasks;
 using FluentAssertions;
 using Microsoft.CodeAnalysis;
 using Microsoft.VisualStudio.TestTools.UnitTesting;
 using Moq;
+using OmniSharp.Eventing;
 using OmniSharp.Mef;
 using OmniSharp.Roslyn.CSharp.Services.Diagnostics;
 using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
@@ -42,7 +46,9 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
         {
             CheckTypeCanBeImported<SonarLintCodeCheckService, IRequestHandler>(
                 CreateExport<ISonarLintDiagnosticWorker>(),
-                CreateExport<IDiagnosticsToCodeLocationsConverter>());
+                CreateExport<IDiagnosticsToCodeLocationsConverter>(),
+                CreateExport<IRequestCancellationRepository>(),
+                CreateExport<IEventEmitter>());
         }
 
         [TestMethod]
@@ -104,20 +110,125 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
 
             var quickFixes = result.QuickFixes.ToList();
             quickFixes.Should().BeEquivalentTo(convertedLocations);
+            result.Complete.Should().BeTrue();
 
             diagnosticWorker.Verify(x => x.GetDiagnostics(
-                    It.Is((ImmutableArray<string> filePaths) => filePaths.Length == 1 && filePaths[0] == "file1.cs")),
+                    It.Is((ImmutableArray<string> filePaths) => filePaths.Length == 1 && filePaths[0] == "file1.cs"),
+                    It.IsAny<CancellationToken>()),
                 Times.Once);
             diagnosticWorker.VerifyNoOtherCalls();
         }
 
+        [TestMethod]
+        public async Task Handle_CancelledRequest_ReturnsEmptyResponse()
+        {
+            var cancellationRepository = new RequestCancellationRepository();
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            diagnosticWorker
+                .Setup(x => x.GetDiagnostics(It.IsAny<ImmutableArray<string>>(), It.IsAny<CancellationToken>()))
+                .Returns((ImmutableArray<string> _, CancellationToken token) =>
+                {
+                    cancellationRepository.Cancel("42");
+                    token.ThrowIfCancellationRequested();
+                    return Task.FromResult(ImmutableArray<DocumentDiagnostics>.Empty);
+                });
+            var diagnosticsConverter = new Mock<IDiagnosticsToCodeLocationsConverter>();
+
+            var testSubject = new SonarLintCodeCheckService(diagnosticWorker.Object, diagnosticsConverter.Object, cancellationRepository,
+                Mock.Of<IEventEmitter>());
+
+            var result = await testSubject.Handle(new SonarLintCodeCheckRequest { FileName = "file1.cs", CancellationId = "42" });
+
+            result.QuickFixes.Should().BeNullOrEmpty();
+            result.Complete.Should().BeFalse();
+            diagnosticsConverter.Invocations.Should().BeEmpty();
+        }
+
+        [TestMethod]
+        public async Task Handle_IncompleteAnalysis_ReturnsPartialResponse()
+        {
+            var diagnostics = new[]
+            {
+                CreateDocumentDiagnostics("file1.cs", Diagnostic.Create(SonarLintDiagnosticWorker.IncompleteAnalysis, Location.None))
+            }.ToImmutableArray();
+            var convertedLocations = ImmutableArray<SonarLintDiagnosticLocation>.Empty;
+
+            var diagnosticWorker = SetupDiagnosticWorker("file1.cs", diagnostics);
+            var diagnosticsConverter = SetupDiagnosticsConverter("file1.cs", diagnostics, convertedLocations);
+
+            var testSubject = CreateTestSubject(diagnosticWorker.Object, diagnosticsConverter.Object);
+
+            var result = await testSubject.Handle(CreateRequest("file1.cs"));
+
+            result.Complete.Should().BeFalse();
+        }
+
+        [TestMethod]
+        public async Task Handle_WorkerFailsWithoutCancellation_Throws()
+        {
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            diagnosticWorker
+                .Setup(x => x.GetDiagnostics(It.IsAny<ImmutableArray<string>>(), It.IsAny<CancellationToken>()))
+                .ThrowsAsync(new OperationCanceledException());
+
+            var testSubject = CreateTestSubject(diagnosticWorker.Object, Mock.Of<IDiagnosticsToCodeLocationsConverter>());
+
+            Func<Task> act = () => testSubject.Handle(new SonarLintCodeCheckRequest { FileName = "file1.cs", CancellationId = "42" });
+
+            await act.Should().ThrowAsync<OperationCanceledException>();
+        }
+
+        [TestMethod]
+        public async Task Handle_StreamResults_EmitsEventPerFile()
+        {
+            var file1Diagnostics = CreateDocumentDiagnostics("file1.cs");
+            var file2Diagnostics = CreateDocumentDiagnostics("file2.cs");
+            var file1Locations = new[] { new SonarLintDiagnosticLocation { Id = "test1" } }.ToImmutableArray();
+            var file2Locations = new[] { new SonarLintDiagnosticLocation { Id = "test2" } }.ToImmutableArray();
+
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            diagnosticWorker
+                .Setup(x => x.GetAllDiagnosticsAsync(It.IsAny<Func<DocumentDiagnostics, Task>>(), It.IsAny<CancellationToken>()))
+                .Returns(async (Func<DocumentDiagnostics, Task> onDocumentAnalyzed, CancellationToken _) =>
+                {
+                    await onDocumentAnalyzed(file1Diagnostics);
+                    await onDocumentAnalyzed(file2Diagnostics);
+                });
+            var diagnosticsConverter = new Mock<IDiagnosticsToCodeLocationsConverter>();
+            diagnosticsConverter
+                .Setup(x => x.Convert(It.Is((ImmutableArray<DocumentDiagnostics> d) => d.Single() == file1Diagnostics), "file1.cs"))
+                .ReturnsAsync(file1Locations);
+            diagnosticsConverter
+                .Setup(x => x.Convert(It.Is((ImmutableArray<DocumentDiagnostics> d) => d.Single() == file2Diagnostics), "file2.cs"))
+                .ReturnsAsync(file2Locations);
+            var emitted = new List<SonarLintFileDiagnostics>();
+            var eventEmitter = new Mock<IEventEmitter>();
+            eventEmitter
+                .Setup(x => x.Emit(SonarLintCodeCheckService.FileDiagnosticsEvent, It.IsAny<object>()))
+                .Callback((string _, object args) => emitted.Add((SonarLintFileDiagnostics)args));
+
+            var testSubject = new SonarLintCodeCheckService(diagnosticWorker.Object, diagnosticsConverter.Object, new RequestCancellationRepository(),
+                eventEmitter.Object);
+
+            var result = await testSubject.Handle(new SonarLintCodeCheckRequest { StreamResults = true, CancellationId = "42" });
+
+            result.QuickFixes.Should().BeNullOrEmpty();
+            emitted.Should().HaveCount(2);
+            emitted[0].CancellationId.Should().Be("42");
+            emitted[0].FileName.Should().Be("file1.cs");
+            emitted[0].QuickFixes.Should().BeEquivalentTo(file1Locations);
+            emitted[1].FileName.Should().Be("file2.cs");
+            emitted[1].QuickFixes.Should().BeEquivalentTo(file2Locations);
+            diagnosticWorker.Verify(x => x.GetAllDiagnosticsAsync(), Times.Never);
+        }
+
         private SonarLintCodeCheckRequest CreateRequest(string fileName) => new() { FileName = fileName };
 
         private static SonarLintCodeCheckService CreateTestSubject(
             ISonarLintDiagnosticWorker diagnosticWorker,
-            IDiagnosticsToCodeLocationsConverter converter) => new(diagnosticWorker, converter);
+            IDiagnosticsToCodeLocationsConverter converter) => new(diagnosticWorker, converter, new RequestCancellationRepository(), Mock.Of<IEventEmitter>());
 
-        private static DocumentDiagnostics CreateDocumentDiagnostics(string fileName)
+        private static DocumentDiagnostics CreateDocumentDiagnostics(string fileName, params Diagnostic[] diagnostics)
         {
             var project = ProjectId.CreateNewId();
 
@@ -125,7 +236,7 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
                 fileName,
                 project,
                 project.Id.ToString(),
-                ImmutableArray<Diagnostic>.Empty);
+                diagnostics.ToImmutableArray());
 
             return documentDiagnostics;
         }
@@ -147,7 +258,8 @@ namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
 
             diagnosticWorker
                 .Setup(x => x.GetDiagnostics(
-                    It.Is((ImmutableArray<string> fileNames) => fileNames.Length == 1 && fileNames[0] == fileName)))
+                    It.Is((ImmutableArray<string> fileNames) => fileNames.Length == 1 && fileNames[0] == fileName),
+                    It.IsAny<CancellationToken>()))
                 .ReturnsAsync(documentDiagnostics);
 
             return diagnosticWorker;
@@ -0,0 +1,112 @@
+﻿/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+using System.Collections.Immutable;
+using System.Threading.Tasks;
+using FluentAssertions;
+using Microsoft.Extensions.Logging;
+using Microsoft.VisualStudio.TestTools.UnitTesting;
+using Moq;
+using OmniSharp;
+using OmniSharp.Mef;
+using OmniSharp.Roslyn.CSharp.Services.Diagnostics;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
+using SonarLint.OmniSharp.DotNet.Services.Services;
+using static SonarLint.OmniSharp.DotNet.Services.UnitTests.DiagnosticWorker.OmniSharpWorkspaceHelper;
+using static SonarLint.OmniSharp.DotNet.Services.UnitTests.TestingInfrastructure.MefTestHelpers;
+
+namespace SonarLint.OmniSharp.DotNet.Services.UnitTests.Services
+{
+    [TestClass]
+    public class SonarLintWarmUpServiceTests
+    {
+        [TestMethod]
+        public void MefCtor_CheckIsExported()
+        {
+            CheckTypeCanBeImported<SonarLintWarmUpService, IRequestHandler>(
+                CreateExport<OmniSharpWorkspace>(CreateOmniSharpWorkspace()),
+                CreateExport<ISonarLintDiagnosticWorker>(),
+                CreateExport<ILoggerFactory>());
+        }
+
+        [TestMethod]
+        public async Task Handle_ReturnsImmediately()
+        {
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            var testSubject = CreateTestSubject(CreateOmniSharpWorkspace(), diagnosticWorker.Object);
+
+            var result = await testSubject.Handle(new SonarLintWarmUpRequest());
+
+            result.Should().Be(true);
+        }
+
+        [TestMethod]
+        public async Task WarmUp_AnalyzesSampleDocument()
+        {
+            var workspace = CreateOmnisharpWorkspaceWithDocument("file1.cs", "class Foo {}");
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            diagnosticWorker
+                .Setup(x => x.GetDiagnostics(It.IsAny<ImmutableArray<string>>()))
+                .ReturnsAsync(ImmutableArray<DocumentDiagnostics>.Empty);
+            var testSubject = CreateTestSubject(workspace, diagnosticWorker.Object);
+
+            await testSubject.WarmUp(workspace.CurrentSolution);
+
+            diagnosticWorker.Verify(x => x.GetDiagnostics(
+                It.Is((ImmutableArray<string> fileNames) => fileNames.Length == 1 && fileNames[0] == "file1.cs")), Times.Once);
+        }
+
+        [TestMethod]
+        public async Task WarmUp_WaitsForRunningAnalyses()
+        {
+            var workspace = CreateOmnisharpWorkspaceWithDocument("file1.cs", "class Foo {}");
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            diagnosticWorker.SetupSequence(x => x.IsAnalyzing)
+                .Returns(true)
+                .Returns(false)
+                .Returns(true)
+                .Returns(false);
+            diagnosticWorker
+                .Setup(x => x.GetDiagnostics(It.IsAny<ImmutableArray<string>>()))
+                .ReturnsAsync(ImmutableArray<DocumentDiagnostics>.Empty);
+            var testSubject = CreateTestSubject(workspace, diagnosticWorker.Object);
+
+            await testSubject.WarmUp(workspace.CurrentSolution);
+
+            diagnosticWorker.VerifyGet(x => x.IsAnalyzing, Times.Exactly(4));
+            diagnosticWorker.Verify(x => x.GetDiagnostics(It.IsAny<ImmutableArray<string>>()), Times.Once);
+        }
+
+        [TestMethod]
+        public async Task WarmUp_EmptyWorkspace_DoesNotAnalyze()
+        {
+            var workspace = CreateOmniSharpWorkspace();
+            var diagnosticWorker = new Mock<ISonarLintDiagnosticWorker>();
+            var testSubject = CreateTestSubject(workspace, diagnosticWorker.Object);
+
+            await testSubject.WarmUp(workspace.CurrentSolution);
+
+            diagnosticWorker.Invocations.Should().BeEmpty();
+        }
+
+        private static SonarLintWarmUpService CreateTestSubject(OmniSharpWorkspace workspace, ISonarLintDiagnosticWorker diagnosticWorker) =>
+            new(workspace, diagnosticWorker, Mock.Of<ILoggerFactory>());
+    }
+}
@@ -0,0 +1,38 @@
+﻿/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+using System.Composition;
+
+namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker
+{
+    internal interface IAnalysisSettingsRepository
+    {
+        /// <summary>
+        /// When true, Roslyn is allowed to run the analyzers of a single document on several threads.
+        /// </summary>
+        bool ConcurrentAnalysis { get; set; }
+    }
+
+    [Export(typeof(IAnalysisSettingsRepository)), Shared]
+    internal class AnalysisSettingsRepository : IAnalysisSettingsRepository
+    {
+        public bool ConcurrentAnalysis { get; set; }
+    }
+}
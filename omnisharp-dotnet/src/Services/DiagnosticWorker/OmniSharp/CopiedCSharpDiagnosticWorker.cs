@@ -31,6 +31,8 @@ namespace OmniSharp.Roslyn.CSharp.Workers.Diagnostics
     ///     1. Making <see cref="GetDiagnosticsForDocument"/> protected-virtual
     ///     2. Making needed members protected
     ///     3. Passing empty quick fixes in <see cref="ProcessNextItem"/>
+    ///     4. Passing a <see cref="CancellationToken"/> to <see cref="GetDiagnostics(ImmutableArray{string}, CancellationToken)"/> and <see cref="GetDiagnosticsForDocument"/>
+    ///     5. Notifying the diagnostics of each document as soon as it is analyzed in <see cref="GetAllDiagnosticsAsync(Func{DocumentDiagnostics, Task}, CancellationToken)"/>
     /// </summary>
     [System.Diagnostics.CodeAnalysis.ExcludeFromCodeCoverage]
     public class CopiedCSharpDiagnosticWorker: ICsDiagnosticWorker, IDisposable
@@ -155,12 +157,26 @@ namespace OmniSharp.Roslyn.CSharp.Workers.Diagnostics
             return ImmutableArray<DocumentId>.Empty;
         }
 
-        public async Task<ImmutableArray<DocumentDiagnostics>> GetDiagnostics(ImmutableArray<string> documentPaths)
+        public Task<ImmutableArray<DocumentDiagnostics>> GetDiagnostics(ImmutableArray<string> documentPaths) =>
+            GetDiagnostics(documentPaths, CancellationToken.None);
+
+        public async Task<ImmutableArray<DocumentDiagnostics>> GetDiagnostics(ImmutableArray<string> documentPaths, CancellationToken cancellationToken)
         {
             if (!documentPaths.Any()) return ImmutableArray<DocumentDiagnostics>.Empty;
 
             var results = ImmutableList<DocumentDiagnostics>.Empty;
 
+            await AnalyzeDocuments(documentPaths, documentDiagnostics =>
+            {
+                ImmutableInterlocked.Update(ref results, currentResults => currentResults.Add(documentDiagnostics));
+                return Task.CompletedTask;
+            }, cancellationToken);
+
+            return results.ToImmutableArray();
+        }
+
+        private async Task AnalyzeDocuments(ImmutableArray<string> documentPaths, Func<DocumentDiagnostics, Task> onDocumentAnalyzed, CancellationToken cancellationToken)
+        {
             var documents =
                 (await Task.WhenAll(
                     documentPaths
@@ -175,41 +191,39 @@ namespace OmniSharp.Roslyn.CSharp.Workers.Diagnostics
                     continue;
 
                 var projectName = document.Project.Name;
-                await throttler.WaitAsync();
+                await throttler.WaitAsync(cancellationToken);
                 diagnosticTasks.Add(
                         Task.Run(async () =>
                         {
                             try
                             {
-                                var diagnostics = await GetDiagnosticsForDocument(document, projectName);
+                                var diagnostics = await GetDiagnosticsForDocument(document, projectName, cancellationToken);
                                 var documentDiagnostics = new DocumentDiagnostics(document.Id, document.FilePath, document.Project.Id, document.Project.Name, diagnostics);
-                                ImmutableInterlocked.Update(ref results, currentResults => currentResults.Add(documentDiagnostics));
+                                await onDocumentAnalyzed(documentDiagnostics);
                             }
                             finally
                             {
                                 throttler.Release();
                             }
-                        }
+                        }, cancellationToken
                     )
                 );
             }
             await Task.WhenAll(diagnosticTasks);
-
-            return results.ToImmutableArray();
         }
 
-        protected virtual async Task<ImmutableArray<Diagnostic>> GetDiagnosticsForDocument(Document document, string projectName)
+        protected virtual async Task<ImmutableArray<Diagnostic>> GetDiagnosticsForDocument(Document document, string projectName, CancellationToken cancellationToken)
         {
             // Only basic syntax check is available if file is miscellanous like orphan .cs file.
             // Those projects are on hard coded virtual project
             if (projectName == $"{Configuration.OmniSharpMiscProjectName}.csproj")
             {
-                var syntaxTree = await document.GetSyntaxTreeAsync();
+                var syntaxTree = await document.GetSyntaxTreeAsync(cancellationToken);
                 return syntaxTree.GetDiagnostics().ToImmutableArray();
             }
             else
             {
-                var semanticModel = await document.GetSemanticModelAsync();
+                var semanticModel = await document.GetSemanticModelAsync(cancellationToken);
                 return semanticModel.GetDiagnostics();
             }
         }
@@ -245,6 +259,12 @@ namespace OmniSharp.Roslyn.CSharp.Workers.Diagnostics
             return GetDiagnostics(documents);
         }
 
+        public Task GetAllDiagnosticsAsync(Func<DocumentDiagnostics, Task> onDocumentAnalyzed, CancellationToken cancellationToken)
+        {
+            var documents = _workspace.CurrentSolution.Projects.SelectMany(x => x.Documents).Select(x => x.FilePath).Distinct().ToImmutableArray();
+            return AnalyzeDocuments(documents, onDocumentAnalyzed, cancellationToken);
+        }
+
         public void Dispose()
         {
             _workspace.WorkspaceChanged -= OnWorkspaceChanged;
@@ -256,7 +276,7 @@ namespace OmniSharp.Roslyn.CSharp.Workers.Diagnostics
         public async Task<IEnumerable<Diagnostic>> AnalyzeDocumentAsync(Document document, CancellationToken cancellationToken)
         {
             cancellationToken.ThrowIfCancellationRequested();
-            return await GetDiagnosticsForDocument(document, document.Project.Name);
+            return await GetDiagnosticsForDocument(document, document.Project.Name, cancellationToken);
         }
 
         public async Task<IEnumerable<Diagnostic>> AnalyzeProjectsAsync(Project project, CancellationToken cancellationToken)
@@ -265,7 +285,7 @@ namespace OmniSharp.Roslyn.CSharp.Workers.Diagnostics
             foreach (var document in project.Documents)
             {
                 cancellationToken.ThrowIfCancellationRequested();
-                diagnostics.AddRange(await GetDiagnosticsForDocument(document, project.Name));
+                diagnostics.AddRange(await GetDiagnosticsForDocument(document, project.Name, cancellationToken));
             }
 
             return diagnostics;
@@ -122,35 +122,44 @@ namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker.QuickFixes
 
             foreach (var action in codeFixActions)
             {
-                var fixes = new List<IFix>();
-                var directory = Path.GetDirectoryName(filePath);
-                var operations = await action.GetOperationsAsync(CancellationToken.None);
+                var fixes = await GetFixes(action, document.Project.Solution, filePath);
 
-                Debug.Assert(operations.Length <= 1, "Expecting quick fixes to contain one or zero operations.");
-
-                if (operations.Length > 1)
+                if (fixes != null)
                 {
-                    continue;
+                    quickFixes.Add(new QuickFix(action.Title, fixes));
                 }
+            }
 
-                var applyChangesOperations = operations.OfType<ApplyChangesOperation>().SingleOrDefault();
-                
-                if (applyChangesOperations == null)
-                {
-                    continue;
-                }
+            return quickFixes.ToArray();
+        }
+
+        /// <param name="solution">The solution the code action was computed from. The changes are relative to it, not to the current
+        /// solution of the workspace, which may have changed since.</param>
+        /// <returns>null if the code action doesn't only apply changes to the solution</returns>
+        private async Task<IFix[]> GetFixes(CodeAction action, Solution solution, string filePath)
+        {
+            var directory = Path.GetDirectoryName(filePath);
+            var operations = await action.GetOperationsAsync(CancellationToken.None);
 
-                var fileChangesResult = await getFileChangesAsyncFunc(applyChangesOperations.ChangedSolution, workspace.CurrentSolution, directory, true, false);
+            Debug.Assert(operations.Length <= 1, "Expecting quick fixes to contain one or zero operations.");
 
-                Debug.Assert(fileChangesResult.FileChanges.All(c => c is ModifiedFileResponse));
+            if (operations.Length > 1)
+            {
+                return null;
+            }
 
-                var fileFixes = fileChangesResult.FileChanges.Select(c => ToFix((ModifiedFileResponse) c));
-                fixes.AddRange(fileFixes);
+            var applyChangesOperations = operations.OfType<ApplyChangesOperation>().SingleOrDefault();
 
-                quickFixes.Add(new QuickFix(action.Title, fixes));
+            if (applyChangesOperations == null)
+            {
+                return null;
             }
 
-            return quickFixes.ToArray();
+            var fileChangesResult = await getFileChangesAsyncFunc(applyChangesOperations.ChangedSolution, solution, directory, true, false);
+
+            Debug.Assert(fileChangesResult.FileChanges.All(c => c is ModifiedFileResponse));
+
+            return fileChangesResult.FileChanges.Select(c => (IFix)ToFix((ModifiedFileResponse) c)).ToArray();
         }
 
         private static Fix ToFix(ModifiedFileResponse modifiedFileResponse)
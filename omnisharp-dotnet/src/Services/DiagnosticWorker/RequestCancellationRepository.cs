@@ -0,0 +1,129 @@
+﻿/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+using System.Collections.Generic;
+using System.Composition;
+using System.Threading;
+
+namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker
+{
+    internal interface IRequestCancellationRepository
+    {
+        /// <summary>
+        /// Returns the token to observe while handling the request with the given cancellation id.
+        /// The request can't be cancelled if the id is empty.
+        /// </summary>
+        CancellationToken Register(string cancellationId);
+
+        /// <summary>
+        /// Must be called once the request with the given cancellation id has been handled.
+        /// </summary>
+        void Unregister(string cancellationId);
+
+        /// <summary>
+        /// Cancels the request with the given cancellation id. Requests are handled concurrently, so the cancellation
+        /// is remembered if the request has not been registered yet.
+        /// </summary>
+        void Cancel(string cancellationId);
+    }
+
+    [Export(typeof(IRequestCancellationRepository)), Shared]
+    internal class RequestCancellationRepository : IRequestCancellationRepository
+    {
+        internal const int MaxEarlyCancellations = 100;
+
+        /// <summary>
+        /// Sources are only cancelled and disposed under the lock, so that a request completing while it is being cancelled
+        /// doesn't dispose its source in the middle of the cancellation
+        /// </summary>
+        private readonly object sync = new();
+        private readonly Dictionary<string, CancellationTokenSource> sources = new();
+        private readonly Queue<string> earlyCancellations = new();
+
+        public CancellationToken Register(string cancellationId)
+        {
+            if (string.IsNullOrEmpty(cancellationId))
+            {
+                return CancellationToken.None;
+            }
+
+            lock (sync)
+            {
+                return GetOrAddSource(cancellationId, out _).Token;
+            }
+        }
+
+        public void Unregister(string cancellationId)
+        {
+            if (string.IsNullOrEmpty(cancellationId))
+            {
+                return;
+            }
+
+            lock (sync)
+            {
+                RemoveSource(cancellationId);
+            }
+        }
+
+        public void Cancel(string cancellationId)
+        {
+            if (string.IsNullOrEmpty(cancellationId))
+            {
+                return;
+            }
+
+            lock (sync)
+            {
+                GetOrAddSource(cancellationId, out var isEarly).Cancel();
+
+                if (isEarly)
+                {
+                    // The request may never come, don't keep its cancellation forever
+                    earlyCancellations.Enqueue(cancellationId);
+                    while (earlyCancellations.Count > MaxEarlyCancellations)
+                    {
+                        RemoveSource(earlyCancellations.Dequeue());
+                    }
+                }
+            }
+        }
+
+        private CancellationTokenSource GetOrAddSource(string cancellationId, out bool isNew)
+        {
+            isNew = !sources.TryGetValue(cancellationId, out var source);
+            if (isNew)
+            {
+                source = new CancellationTokenSource();
+                sources[cancellationId] = source;
+            }
+            return source;
+        }
+
+        private void RemoveSource(string cancellationId)
+        {
+            if (sources.TryGetValue(cancellationId, out var source))
+            {
+                sources.Remove(cancellationId);
+                source.Dispose();
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ using System.Collections.Immutable;
 using System.Composition;
 using System.IO;
 using System.Linq;
+using System.Runtime.CompilerServices;
 using Microsoft.CodeAnalysis;
 using Microsoft.CodeAnalysis.Diagnostics;
 using SonarLint.OmniSharp.DotNet.Services.Rules;
@@ -36,6 +37,7 @@ namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker
         public ImmutableHashSet<string> AnalyzerRules { get; set; }
         public Compilation Compilation { get; set; }
         public AnalyzerOptions AnalyzerOptions { get; set; }
+        public bool ConcurrentAnalysis { get; set; }
     }
 
     internal interface ISonarLintAnalysisConfigProvider
@@ -50,17 +52,25 @@ namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker
     internal class SonarLintAnalysisConfigProvider : ISonarLintAnalysisConfigProvider
     {
         private readonly IActiveRuleDefinitionsRepository activeRuleDefinitionsRepository;
+        private readonly IAnalysisSettingsRepository analysisSettingsRepository;
         private readonly IRulesToAdditionalTextConverter rulesToAdditionalTextConverter;
         private readonly IRulesToReportDiagnosticsConverter rulesToReportDiagnosticsConverter;
 
         private readonly ImmutableArray<DiagnosticAnalyzer> analyzers;
         private readonly ImmutableHashSet<string> analyzerRules;
+        private readonly ImmutableDictionary<DiagnosticAnalyzer, ImmutableHashSet<string>> rulesPerAnalyzer;
+
+        private readonly ConditionalWeakTable<Compilation, CachedAnalysisConfig> analysisConfigs = new();
+
+        private RulesConfig rulesConfig;
 
         [ImportingConstructor]
         public SonarLintAnalysisConfigProvider(IActiveRuleDefinitionsRepository activeRuleDefinitionsRepository,
+            IAnalysisSettingsRepository analysisSettingsRepository,
             ISonarAnalyzerCodeActionProvider sonarAnalyzerCodeActionProvider,
             IRulesToReportDiagnosticsConverter rulesToReportDiagnosticsConverter)
             : this(activeRuleDefinitionsRepository,
+                analysisSettingsRepository,
                 sonarAnalyzerCodeActionProvider,
                 rulesToReportDiagnosticsConverter,
                 new RulesToAdditionalTextConverter())
@@ -68,42 +78,121 @@ namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker
         }
 
         internal SonarLintAnalysisConfigProvider(IActiveRuleDefinitionsRepository activeRuleDefinitionsRepository,
+            IAnalysisSettingsRepository analysisSettingsRepository,
             ISonarAnalyzerCodeActionProvider sonarAnalyzerCodeActionProvider,
             IRulesToReportDiagnosticsConverter rulesToReportDiagnosticsConverter,
             IRulesToAdditionalTextConverter rulesToAdditionalTextConverter)
         {
             this.activeRuleDefinitionsRepository = activeRuleDefinitionsRepository;
+            this.analysisSettingsRepository = analysisSettingsRepository;
             this.rulesToAdditionalTextConverter = rulesToAdditionalTextConverter;
             this.rulesToReportDiagnosticsConverter = rulesToReportDiagnosticsConverter;
 
             // performance optimization: cache the analyzers' rule descriptors
             analyzers = sonarAnalyzerCodeActionProvider.CodeDiagnosticAnalyzerProviders;
-            analyzerRules = analyzers
-                .SelectMany(x => x.SupportedDiagnostics)
-                .Select(x => x.Id)
+            rulesPerAnalyzer = analyzers.ToImmutableDictionary(
+                x => x,
+                x => x.SupportedDiagnostics.Select(d => d.Id).ToImmutableHashSet());
+            analyzerRules = rulesPerAnalyzer.Values
+                .SelectMany(x => x)
                 .ToImmutableHashSet();
         }
 
+        /// <summary>
+        /// The returned config is cached per compilation, so that consecutive documents of the same project version share
+        /// the same modified compilation and analyzer options (and therefore the same analyzer state).
+        /// The cache entry is rebuilt when the active rules or the analysis settings are replaced by the next
+        /// /sonarlint/config request, or when the workspace analyzer options of the project change.
+        /// </summary>
         public AnalysisConfig Get(Compilation originalCompilation, AnalyzerOptions originalOptions)
         {
-            var activeRules = activeRuleDefinitionsRepository.ActiveRules;
+            var rules = GetRulesConfig(activeRuleDefinitionsRepository.ActiveRules);
+            var concurrentAnalysis = analysisSettingsRepository.ConcurrentAnalysis;
+            var cached = analysisConfigs.GetValue(originalCompilation, _ => new CachedAnalysisConfig());
 
-            return new AnalysisConfig
+            lock (cached)
             {
-                Compilation = GetWithSonarLintRuleSeverities(originalCompilation, activeRules),
-                AnalyzerOptions = GetWithSonarLintAdditionalFiles(originalOptions, activeRules),
-                Analyzers = analyzers,
-                AnalyzerRules = analyzerRules,
-            };
+                if (cached.Config == null
+                    || !ReferenceEquals(cached.Rules, rules)
+                    || !ReferenceEquals(cached.OriginalOptions, originalOptions)
+                    || cached.Config.ConcurrentAnalysis != concurrentAnalysis)
+                {
+                    cached.Rules = rules;
+                    cached.OriginalOptions = originalOptions;
+                    cached.Config = new AnalysisConfig
+                    {
+                        Compilation = GetWithSonarLintRuleSeverities(originalCompilation, rules.RuleSeverities),
+                        AnalyzerOptions = GetWithSonarLintAdditionalFiles(originalOptions, rules.SonarLintAdditionalFile),
+                        Analyzers = rules.Analyzers,
+                        AnalyzerRules = analyzerRules,
+                        ConcurrentAnalysis = concurrentAnalysis,
+                    };
+                }
+
+                return cached.Config;
+            }
         }
 
         /// <summary>
-        /// Update sonar-dotnet analyzers rule severities.
+        /// Compute everything that only depends on the active rules: the analyzers to run, the rule severities and the
+        /// SonarLint.xml additional file.
+        /// Only analyzers that can raise at least one active rule are kept, Roslyn would otherwise still run the callbacks
+        /// of analyzers whose rules are all suppressed.
+        /// The result is cached until the active rules are replaced by the next /sonarlint/config request.
         /// </summary>
-        private Compilation GetWithSonarLintRuleSeverities(Compilation compilation, IEnumerable<ActiveRuleDefinition> activeRules)
+        private RulesConfig GetRulesConfig(ActiveRuleDefinition[] activeRules)
         {
+            var cached = rulesConfig;
+            if (cached != null && ReferenceEquals(cached.ActiveRules, activeRules))
+            {
+                return cached;
+            }
+
             var activeRuleIds = activeRules.Select(x => x.RuleId).ToImmutableHashSet();
-            var ruleSeverities = rulesToReportDiagnosticsConverter.Convert(activeRuleIds, analyzerRules);
+            var filteredAnalyzers = analyzers
+                .Where(x => rulesPerAnalyzer[x].Overlaps(activeRuleIds))
+                .ToImmutableArray();
+
+            var computed = new RulesConfig(activeRules,
+                filteredAnalyzers,
+                rulesToReportDiagnosticsConverter.Convert(activeRuleIds, analyzerRules),
+                rulesToAdditionalTextConverter.Convert(activeRules));
+
+            rulesConfig = computed;
+            return computed;
+        }
+
+        private sealed class RulesConfig
+        {
+            public RulesConfig(ActiveRuleDefinition[] activeRules,
+                ImmutableArray<DiagnosticAnalyzer> analyzers,
+                IReadOnlyDictionary<string, ReportDiagnostic> ruleSeverities,
+                AdditionalText sonarLintAdditionalFile)
+            {
+                ActiveRules = activeRules;
+                Analyzers = analyzers;
+                RuleSeverities = ruleSeverities;
+                SonarLintAdditionalFile = sonarLintAdditionalFile;
+            }
+
+            public ActiveRuleDefinition[] ActiveRules { get; }
+            public ImmutableArray<DiagnosticAnalyzer> Analyzers { get; }
+            public IReadOnlyDictionary<string, ReportDiagnostic> RuleSeverities { get; }
+            public AdditionalText SonarLintAdditionalFile { get; }
+        }
+
+        private sealed class CachedAnalysisConfig
+        {
+            public RulesConfig Rules { get; set; }
+            public AnalyzerOptions OriginalOptions { get; set; }
+            public AnalysisConfig Config { get; set; }
+        }
+
+        /// <summary>
+        /// Update sonar-dotnet analyzers rule severities.
+        /// </summary>
+        private static Compilation GetWithSonarLintRuleSeverities(Compilation compilation, IReadOnlyDictionary<string, ReportDiagnostic> ruleSeverities)
+        {
             var updatedCompilationOptions = compilation.Options.WithSpecificDiagnosticOptions(ruleSeverities);
 
             return compilation.WithOptions(updatedCompilationOptions);
@@ -113,9 +202,8 @@ namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker
         /// Add sonar-dotnet analyzer additional files.
         /// Override any existing sonar-dotnet analyzer additional files that were already in the project.
         /// </summary>
-        private AnalyzerOptions GetWithSonarLintAdditionalFiles(AnalyzerOptions workspaceAnalyzerOptions, IEnumerable<ActiveRuleDefinition> activeRules)
+        private static AnalyzerOptions GetWithSonarLintAdditionalFiles(AnalyzerOptions workspaceAnalyzerOptions, AdditionalText sonarLintAdditionalFile)
         {
-            var sonarLintAdditionalFile = rulesToAdditionalTextConverter.Convert(activeRules);
             var sonarLintAdditionalFileName = Path.GetFileName(sonarLintAdditionalFile.Path);
 
             var additionalFiles = workspaceAnalyzerOptions.AdditionalFiles;
@@ -23,6 +23,7 @@ using System.Collections.Immutable;
 using System.Composition;
 using System.Diagnostics.CodeAnalysis;
 using System.Linq;
+using System.Runtime.CompilerServices;
 using System.Threading;
 using System.Threading.Tasks;
 using Microsoft.CodeAnalysis;
@@ -32,19 +33,62 @@ using Microsoft.Extensions.Options;
 using OmniSharp;
 using OmniSharp.Options;
 using OmniSharp.Roslyn;
+using OmniSharp.Roslyn.CSharp.Services.Diagnostics;
 using OmniSharp.Roslyn.CSharp.Workers.Diagnostics;
 
 namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker
 {
     internal interface ISonarLintDiagnosticWorker : ICsDiagnosticWorker
     {
+        /// <summary>
+        /// Variant of <see cref="ICsDiagnosticWorker.GetDiagnostics"/> that stops analyzing when the request is cancelled,
+        /// by throwing an <see cref="OperationCanceledException"/>
+        /// </summary>
+        Task<ImmutableArray<DocumentDiagnostics>> GetDiagnostics(ImmutableArray<string> documentPaths, CancellationToken cancellationToken);
+
+        /// <summary>
+        /// Variant of <see cref="ICsDiagnosticWorker.GetAllDiagnosticsAsync"/> that doesn't keep the results, but passes the diagnostics
+        /// of each document to <paramref name="onDocumentAnalyzed"/> as soon as the document is analyzed. Documents are analyzed concurrently.
+        /// </summary>
+        Task GetAllDiagnosticsAsync(Func<DocumentDiagnostics, Task> onDocumentAnalyzed, CancellationToken cancellationToken);
+
+        /// <summary>
+        /// True while at least one document is being analyzed, so that background work can give way to the requests of the client
+        /// </summary>
+        bool IsAnalyzing { get; }
+    }
+
+    internal static class DocumentDiagnosticsExtensions
+    {
+        /// <summary>
+        /// False if the analyzers could not run on the document: it is not part of a loaded project yet and only its syntax was checked,
+        /// or the analysis failed or timed out. The client should not cache such results.
+        /// </summary>
+        public static bool IsComplete(this DocumentDiagnostics documentDiagnostics) =>
+            !documentDiagnostics.Diagnostics.Any(x => x.Id == SonarLintDiagnosticWorker.IncompleteAnalysisDiagnosticId);
     }
 
     [Export(typeof(ISonarLintDiagnosticWorker)), Shared]
     internal class SonarLintDiagnosticWorker : CopiedCSharpDiagnosticWorker, ISonarLintDiagnosticWorker
     {
+        /// <summary>
+        /// Id of the diagnostic added to the results of a partial analysis. It has no location, so it is never reported as an issue.
+        /// </summary>
+        internal const string IncompleteAnalysisDiagnosticId = "SonarLintIncompleteAnalysis";
+
+        internal static readonly DiagnosticDescriptor IncompleteAnalysis = new(IncompleteAnalysisDiagnosticId,
+            "Incomplete analysis", "The analyzers could not run on the document", "SonarLint", DiagnosticSeverity.Hidden, isEnabledByDefault: true);
+
         private readonly ISonarLintAnalysisConfigProvider sonarLintAnalysisConfigProvider;
 
+        /// <summary>
+        /// The analysis config is shared by all the documents of the same project version, and so is the
+        /// <see cref="CompilationWithAnalyzers"/> built from it: analyzer state is not rebuilt for each document.
+        /// </summary>
+        private readonly ConditionalWeakTable<AnalysisConfig, CompilationWithAnalyzers> compilationsWithAnalyzers = new();
+
+        private int runningAnalyses;
+
         [ImportingConstructor]
         public SonarLintDiagnosticWorker(ISonarLintAnalysisConfigProvider sonarLintAnalysisConfigProvider,
             OmniSharpWorkspace workspace,
@@ -56,34 +100,47 @@ namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker
             this.sonarLintAnalysisConfigProvider = sonarLintAnalysisConfigProvider;
         }
 
-        protected override async Task<ImmutableArray<Diagnostic>> GetDiagnosticsForDocument(Document document, string projectName)
+        public bool IsAnalyzing => Volatile.Read(ref runningAnalyses) > 0;
+
+        protected override async Task<ImmutableArray<Diagnostic>> GetDiagnosticsForDocument(Document document, string projectName, CancellationToken cancellationToken)
         {
-            var compilation = await document.Project.GetCompilationAsync();
-            var analysisConfig = sonarLintAnalysisConfigProvider.Get(compilation, document.Project.AnalyzerOptions);
+            Interlocked.Increment(ref runningAnalyses);
+            try
+            {
+                var compilation = await document.Project.GetCompilationAsync(cancellationToken);
+                var analysisConfig = sonarLintAnalysisConfigProvider.Get(compilation, document.Project.AnalyzerOptions);
 
-            var result = await AnalyzeDocument(document.Project,
-                analysisConfig.Analyzers,
-                analysisConfig.Compilation,
-                analysisConfig.AnalyzerOptions,
-                document);
+                var result = await AnalyzeDocument(document.Project, analysisConfig, document, cancellationToken);
 
-            var supportedRules = analysisConfig.AnalyzerRules;
-            var resultsWithoutCompilerRules = result.Where(x => supportedRules.Contains(x.Id)).ToImmutableArray();
+                var supportedRules = analysisConfig.AnalyzerRules;
+                var resultsWithoutCompilerRules = result
+                    .Where(x => supportedRules.Contains(x.Id) || x.Id == IncompleteAnalysisDiagnosticId)
+                    .ToImmutableArray();
 
-            return resultsWithoutCompilerRules;
+                return resultsWithoutCompilerRules;
+            }
+            finally
+            {
+                Interlocked.Decrement(ref runningAnalyses);
+            }
         }
         
         /// <summary>
-        /// Copied as-is from https://github.com/OmniSharp/omnisharp-roslyn/blob/v1.39.0/src/OmniSharp.Roslyn.CSharp/Workers/Diagnostics/CSharpDiagnosticWorkerWithAnalyzers.cs#L307
+        /// Copied from https://github.com/OmniSharp/omnisharp-roslyn/blob/v1.39.0/src/OmniSharp.Roslyn.CSharp/Workers/Diagnostics/CSharpDiagnosticWorkerWithAnalyzers.cs#L307
+        /// The only changes are that the <see cref="CompilationWithAnalyzers"/> is reused across documents, and that the analysis
+        /// can be cancelled by the client in addition to the timeout.
         /// </summary>
         [ExcludeFromCodeCoverage]
-        private async Task<ImmutableArray<Diagnostic>> AnalyzeDocument(Project project, ImmutableArray<DiagnosticAnalyzer> allAnalyzers, Compilation compilation, AnalyzerOptions workspaceAnalyzerOptions, Document document)
+        private async Task<ImmutableArray<Diagnostic>> AnalyzeDocument(Project project, AnalysisConfig analysisConfig, Document document,
+            CancellationToken cancellationToken)
         {
+            var allAnalyzers = analysisConfig.Analyzers;
+
             try
             {
                 // There's real possibility that bug in analyzer causes analysis hang at document.
-                var perDocumentTimeout =
-                    new CancellationTokenSource(_options.RoslynExtensionsOptions.DocumentAnalysisTimeoutMs);
+                using var perDocumentTimeout = CancellationTokenSource.CreateLinkedTokenSource(cancellationToken);
+                perDocumentTimeout.CancelAfter(_options.RoslynExtensionsOptions.DocumentAnalysisTimeoutMs);
 
                 var documentSemanticModel = await document.GetSemanticModelAsync(perDocumentTimeout.Token);
 
@@ -96,17 +153,12 @@ namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker
                 // Those projects are on hard coded virtual project
                 if (project.Name == $"{Configuration.OmniSharpMiscProjectName}.csproj")
                 {
-                    var syntaxTree = await document.GetSyntaxTreeAsync();
-                    return syntaxTree.GetDiagnostics().ToImmutableArray();
+                    var syntaxTree = await document.GetSyntaxTreeAsync(perDocumentTimeout.Token);
+                    return syntaxTree.GetDiagnostics().Append(Diagnostic.Create(IncompleteAnalysis, Location.None)).ToImmutableArray();
                 }
                 else if (canDoFullAnalysis)
                 {
-                    var compilationWithAnalyzers = compilation.WithAnalyzers(allAnalyzers, new CompilationWithAnalyzersOptions(
-                        workspaceAnalyzerOptions,
-                        onAnalyzerException: OnAnalyzerException,
-                        concurrentAnalysis: false,
-                        logAnalyzerExecutionTime: false,
-                        reportSuppressedDiagnostics: false));
+                    var compilationWithAnalyzers = compilationsWithAnalyzers.GetValue(analysisConfig, CreateCompilationWithAnalyzers);
 
                     var semanticDiagnosticsWithAnalyzers = await compilationWithAnalyzers
                         .GetAnalyzerSemanticDiagnosticsAsync(documentSemanticModel, filterSpan: null, perDocumentTimeout.Token);
@@ -125,13 +177,26 @@ namespace SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker
                     return documentSemanticModel.GetDiagnostics();
                 }
             }
+            catch (OperationCanceledException) when (cancellationToken.IsCancellationRequested)
+            {
+                // Not a timeout, the client doesn't need the result anymore
+                throw;
+            }
             catch (Exception ex)
             {
                 _logger.LogError($"Analysis of document {document.Name} failed or cancelled by timeout: {ex.Message}, analysers: {string.Join(", ", allAnalyzers)}");
-                return ImmutableArray<Diagnostic>.Empty;
+                return ImmutableArray.Create(Diagnostic.Create(IncompleteAnalysis, Location.None));
             }
         }
 
+        private CompilationWithAnalyzers CreateCompilationWithAnalyzers(AnalysisConfig analysisConfig) =>
+            analysisConfig.Compilation.WithAnalyzers(analysisConfig.Analyzers, new CompilationWithAnalyzersOptions(
+                analysisConfig.AnalyzerOptions,
+                onAnalyzerException: OnAnalyzerException,
+                concurrentAnalysis: analysisConfig.ConcurrentAnalysis,
+                logAnalyzerExecutionTime: false,
+                reportSuppressedDiagnostics: false));
+
         /// <summary>
         /// Copied as-is from https://github.com/OmniSharp/omnisharp-roslyn/blob/v1.39.0/src/OmniSharp.Roslyn.CSharp/Workers/Diagnostics/CSharpDiagnosticWorkerWithAnalyzers.cs#L370
         /// </summary>
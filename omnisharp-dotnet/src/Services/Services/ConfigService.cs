@@ -22,6 +22,7 @@ using Microsoft.CodeAnalysis;
 using Newtonsoft.Json;
 using OmniSharp;
 using OmniSharp.Mef;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
 using SonarLint.OmniSharp.DotNet.Services.Rules;
 using System.Composition;
 using System.Threading.Tasks;
@@ -33,6 +34,9 @@ namespace SonarLint.OmniSharp.DotNet.Services.Services
     {
         [JsonProperty("activeRules")]
         public ActiveRuleDefinition[] ActiveRules { get; set; }
+
+        [JsonProperty("concurrentAnalysis")]
+        public bool ConcurrentAnalysis { get; set; }
     }
 
     [OmniSharpHandler(ServiceEndpoint, LanguageNames.CSharp)]
@@ -41,15 +45,19 @@ namespace SonarLint.OmniSharp.DotNet.Services.Services
         internal const string ServiceEndpoint = "/sonarlint/config";
 
         private readonly IActiveRuleDefinitionsRepository activeRulesRepository;
+        private readonly IAnalysisSettingsRepository analysisSettingsRepository;
 
         [ImportingConstructor]
-        public ConfigService(IActiveRuleDefinitionsRepository activeRulesRepository)
+        public ConfigService(IActiveRuleDefinitionsRepository activeRulesRepository,
+            IAnalysisSettingsRepository analysisSettingsRepository)
         {
             this.activeRulesRepository = activeRulesRepository;
+            this.analysisSettingsRepository = analysisSettingsRepository;
         }
 
         public Task<object> Handle(ConfigRequest request)
         {
+            analysisSettingsRepository.ConcurrentAnalysis = request.ConcurrentAnalysis;
             activeRulesRepository.ActiveRules = request.ActiveRules;
             return Task.FromResult((object)true);
         }
@@ -0,0 +1,138 @@
+﻿/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+using System;
+using System.Collections.Generic;
+using System.Collections.Immutable;
+using System.Composition;
+using System.Linq;
+using System.Threading;
+using System.Threading.Tasks;
+using Microsoft.CodeAnalysis;
+using OmniSharp;
+using OmniSharp.Mef;
+using OmniSharp.Models;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker.AdditionalLocations;
+
+namespace SonarLint.OmniSharp.DotNet.Services.Services
+{
+    [OmniSharpEndpoint(SonarLintBatchCodeCheckService.ServiceEndpoint, typeof(SonarLintBatchCodeCheckRequest), typeof(SonarLintBatchCodeCheckResponse))]
+    internal class SonarLintBatchCodeCheckRequest : IRequest
+    {
+        public BatchFile[] Files { get; set; }
+
+        /// <summary>
+        /// Optional id that can be passed to <see cref="SonarLintCancelService"/> to stop the analysis
+        /// </summary>
+        public string CancellationId { get; set; }
+    }
+
+    internal class BatchFile
+    {
+        public string FileName { get; set; }
+        public string Buffer { get; set; }
+    }
+
+    internal class SonarLintBatchCodeCheckResponse
+    {
+        public FileDiagnostics[] Files { get; set; }
+    }
+
+    internal class FileDiagnostics
+    {
+        public string FileName { get; set; }
+        public IEnumerable<SonarLintDiagnosticLocation> QuickFixes { get; set; }
+
+        /// <summary>
+        /// False if the results are partial, see <see cref="DocumentDiagnosticsExtensions.IsComplete"/>
+        /// </summary>
+        public bool Complete { get; set; }
+    }
+
+    /// <summary>
+    /// Batched version of <see cref="SonarLintCodeCheckService"/>: updates the buffers of several files and analyzes them in a single round trip.
+    /// </summary>
+    [OmniSharpHandler(ServiceEndpoint, LanguageNames.CSharp)]
+    internal class SonarLintBatchCodeCheckService : IRequestHandler<SonarLintBatchCodeCheckRequest, SonarLintBatchCodeCheckResponse>
+    {
+        internal const string ServiceEndpoint = "/sonarlint/codecheckbatch";
+
+        private readonly OmniSharpWorkspace workspace;
+        private readonly ISonarLintDiagnosticWorker diagnosticWorker;
+        private readonly IDiagnosticsToCodeLocationsConverter diagnosticsToCodeLocationsConverter;
+        private readonly IRequestCancellationRepository cancellationRepository;
+
+        [ImportingConstructor]
+        public SonarLintBatchCodeCheckService(OmniSharpWorkspace workspace,
+            ISonarLintDiagnosticWorker diagnosticWorker,
+            IDiagnosticsToCodeLocationsConverter diagnosticsToCodeLocationsConverter,
+            IRequestCancellationRepository cancellationRepository)
+        {
+            this.workspace = workspace;
+            this.diagnosticWorker = diagnosticWorker;
+            this.diagnosticsToCodeLocationsConverter = diagnosticsToCodeLocationsConverter;
+            this.cancellationRepository = cancellationRepository;
+        }
+
+        public async Task<SonarLintBatchCodeCheckResponse> Handle(SonarLintBatchCodeCheckRequest request)
+        {
+            var cancellationToken = cancellationRepository.Register(request.CancellationId);
+            try
+            {
+                return await Analyze(request, cancellationToken);
+            }
+            catch (OperationCanceledException) when (cancellationToken.IsCancellationRequested)
+            {
+                return new SonarLintBatchCodeCheckResponse { Files = Array.Empty<FileDiagnostics>() };
+            }
+            finally
+            {
+                cancellationRepository.Unregister(request.CancellationId);
+            }
+        }
+
+        private async Task<SonarLintBatchCodeCheckResponse> Analyze(SonarLintBatchCodeCheckRequest request, CancellationToken cancellationToken)
+        {
+            var files = (request.Files ?? Array.Empty<BatchFile>())
+                .Where(x => !string.IsNullOrEmpty(x.FileName))
+                .ToArray();
+
+            foreach (var file in files.Where(x => x.Buffer != null))
+            {
+                await workspace.BufferManager.UpdateBufferAsync(new Request { FileName = file.FileName, Buffer = file.Buffer });
+            }
+
+            var fileNames = files.Select(x => x.FileName).Distinct().ToImmutableArray();
+            var diagnostics = await diagnosticWorker.GetDiagnostics(fileNames, cancellationToken);
+
+            var result = new List<FileDiagnostics>();
+            foreach (var fileName in fileNames)
+            {
+                var diagnosticLocations = await diagnosticsToCodeLocationsConverter.Convert(diagnostics, fileName);
+                var documentDiagnostics = diagnostics.Where(x => x.DocumentPath == fileName).ToList();
+                var complete = documentDiagnostics.Any() && documentDiagnostics.All(x => x.IsComplete());
+                result.Add(new FileDiagnostics { FileName = fileName, QuickFixes = diagnosticLocations, Complete = complete });
+            }
+
+            return new SonarLintBatchCodeCheckResponse { Files = result.ToArray() };
+        }
+    }
+}
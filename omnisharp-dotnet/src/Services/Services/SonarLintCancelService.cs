@@ -0,0 +1,62 @@
+﻿/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+using System;
+using System.Composition;
+using System.Threading.Tasks;
+using Microsoft.CodeAnalysis;
+using OmniSharp.Mef;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
+
+namespace SonarLint.OmniSharp.DotNet.Services.Services
+{
+    [OmniSharpEndpoint(SonarLintCancelService.ServiceEndpoint, typeof(SonarLintCancelRequest), typeof(object))]
+    internal class SonarLintCancelRequest : IRequest
+    {
+        public string[] CancellationIds { get; set; }
+    }
+
+    /// <summary>
+    /// Cancels the code checks sent with one of the given cancellation ids, see <see cref="IRequestCancellationRepository"/>
+    /// </summary>
+    [OmniSharpHandler(ServiceEndpoint, LanguageNames.CSharp)]
+    internal class SonarLintCancelService : IRequestHandler<SonarLintCancelRequest, object>
+    {
+        internal const string ServiceEndpoint = "/sonarlint/cancel";
+
+        private readonly IRequestCancellationRepository cancellationRepository;
+
+        [ImportingConstructor]
+        public SonarLintCancelService(IRequestCancellationRepository cancellationRepository)
+        {
+            this.cancellationRepository = cancellationRepository;
+        }
+
+        public Task<object> Handle(SonarLintCancelRequest request)
+        {
+            foreach (var cancellationId in request.CancellationIds ?? Array.Empty<string>())
+            {
+                cancellationRepository.Cancel(cancellationId);
+            }
+
+            return Task.FromResult((object)true);
+        }
+    }
+}
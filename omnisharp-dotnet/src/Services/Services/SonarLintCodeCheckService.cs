@@ -18,50 +18,135 @@
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
 
+using System;
+using System.Collections.Generic;
 using System.Collections.Immutable;
 using System.Composition;
+using System.Linq;
+using System.Threading;
 using System.Threading.Tasks;
 using Microsoft.CodeAnalysis;
+using OmniSharp.Eventing;
 using OmniSharp.Mef;
 using OmniSharp.Models;
 using OmniSharp.Roslyn.CSharp.Services.Diagnostics;
 using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker.AdditionalLocations;
 
 namespace SonarLint.OmniSharp.DotNet.Services.Services
 {
-    [OmniSharpEndpoint(SonarLintCodeCheckService.ServiceEndpoint, typeof(SonarLintCodeCheckRequest), typeof(QuickFixResponse))]
+    [OmniSharpEndpoint(SonarLintCodeCheckService.ServiceEndpoint, typeof(SonarLintCodeCheckRequest), typeof(SonarLintCodeCheckResponse))]
     internal class SonarLintCodeCheckRequest : Request
     {
+        /// <summary>
+        /// Optional id that can be passed to <see cref="SonarLintCancelService"/> to stop the analysis
+        /// </summary>
+        public string CancellationId { get; set; }
+
+        /// <summary>
+        /// When true and no file name is given, the diagnostics of each file are sent with a <see cref="SonarLintCodeCheckService.FileDiagnosticsEvent"/>
+        /// as soon as the file is analyzed, and the response doesn't contain any diagnostic
+        /// </summary>
+        public bool StreamResults { get; set; }
+    }
+
+    internal class SonarLintCodeCheckResponse : QuickFixResponse
+    {
+        public SonarLintCodeCheckResponse()
+        {
+        }
+
+        public SonarLintCodeCheckResponse(IEnumerable<QuickFix> quickFixes, bool complete) : base(quickFixes)
+        {
+            Complete = complete;
+        }
+
+        /// <summary>
+        /// False if the results are partial, see <see cref="DocumentDiagnosticsExtensions.IsComplete"/>, or if the analysis was cancelled
+        /// </summary>
+        public bool Complete { get; set; }
+    }
+
+    internal class SonarLintFileDiagnostics
+    {
+        /// <summary>
+        /// The <see cref="SonarLintCodeCheckRequest.CancellationId"/> of the request, to let the client match the event with it
+        /// </summary>
+        public string CancellationId { get; set; }
+        public string FileName { get; set; }
+        public IEnumerable<SonarLintDiagnosticLocation> QuickFixes { get; set; }
     }
 
     /// <summary>
     /// This service is intended to behave as <see cref="CodeCheckService"/>, except with our own <see cref="ISonarLintDiagnosticWorker"/>.
     /// </summary>
     [OmniSharpHandler(ServiceEndpoint, LanguageNames.CSharp)]
-    internal class SonarLintCodeCheckService : IRequestHandler<SonarLintCodeCheckRequest, QuickFixResponse>
+    internal class SonarLintCodeCheckService : IRequestHandler<SonarLintCodeCheckRequest, SonarLintCodeCheckResponse>
     {
         internal const string ServiceEndpoint = "/sonarlint/codecheck";
+        internal const string FileDiagnosticsEvent = "SonarLintFileDiagnostics";
 
         private readonly ISonarLintDiagnosticWorker diagnosticWorker;
         private readonly IDiagnosticsToCodeLocationsConverter diagnosticsToCodeLocationsConverter;
+        private readonly IRequestCancellationRepository cancellationRepository;
+        private readonly IEventEmitter eventEmitter;
 
         [ImportingConstructor]
         public SonarLintCodeCheckService(ISonarLintDiagnosticWorker diagnosticWorker, 
-            IDiagnosticsToCodeLocationsConverter diagnosticsToCodeLocationsConverter)
+            IDiagnosticsToCodeLocationsConverter diagnosticsToCodeLocationsConverter,
+            IRequestCancellationRepository cancellationRepository,
+            IEventEmitter eventEmitter)
         {
             this.diagnosticWorker = diagnosticWorker;
             this.diagnosticsToCodeLocationsConverter = diagnosticsToCodeLocationsConverter;
+            this.cancellationRepository = cancellationRepository;
+            this.eventEmitter = eventEmitter;
         }
 
-        public async Task<QuickFixResponse> Handle(SonarLintCodeCheckRequest request)
+        public async Task<SonarLintCodeCheckResponse> Handle(SonarLintCodeCheckRequest request)
         {
-            var diagnostics = string.IsNullOrEmpty(request.FileName)
-                ? await diagnosticWorker.GetAllDiagnosticsAsync()
-                : await diagnosticWorker.GetDiagnostics(ImmutableArray.Create(request.FileName));
+            var cancellationToken = cancellationRepository.Register(request.CancellationId);
+            try
+            {
+                if (string.IsNullOrEmpty(request.FileName) && request.StreamResults)
+                {
+                    await diagnosticWorker.GetAllDiagnosticsAsync(
+                        documentDiagnostics => EmitFileDiagnostics(request.CancellationId, documentDiagnostics),
+                        cancellationToken);
+                    return new SonarLintCodeCheckResponse();
+                }
+
+                var diagnostics = string.IsNullOrEmpty(request.FileName)
+                    ? await diagnosticWorker.GetAllDiagnosticsAsync()
+                    : await diagnosticWorker.GetDiagnostics(ImmutableArray.Create(request.FileName), cancellationToken);
 
-            var diagnosticLocations = await diagnosticsToCodeLocationsConverter.Convert(diagnostics, request.FileName);
+                var diagnosticLocations = await diagnosticsToCodeLocationsConverter.Convert(diagnostics, request.FileName);
+                // A file that is not part of the workspace is not analyzed at all
+                var complete = diagnostics.Any() && diagnostics.All(x => x.IsComplete());
+
+                return new SonarLintCodeCheckResponse(diagnosticLocations, complete);
+            }
+            catch (OperationCanceledException) when (cancellationToken.IsCancellationRequested)
+            {
+                return new SonarLintCodeCheckResponse();
+            }
+            finally
+            {
+                cancellationRepository.Unregister(request.CancellationId);
+            }
+        }
+
+        private async Task EmitFileDiagnostics(string cancellationId, DocumentDiagnostics documentDiagnostics)
+        {
+            var diagnosticLocations = await diagnosticsToCodeLocationsConverter.Convert(
+                ImmutableArray.Create(documentDiagnostics), documentDiagnostics.DocumentPath);
 
-            return new QuickFixResponse(diagnosticLocations);
+            eventEmitter.Emit(FileDiagnosticsEvent, new SonarLintFileDiagnostics
+            {
+                CancellationId = cancellationId,
+                FileName = documentDiagnostics.DocumentPath,
+                QuickFixes = diagnosticLocations
+            });
         }
     }
 }
@@ -0,0 +1,105 @@
+﻿/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+using System;
+using System.Collections.Immutable;
+using System.Composition;
+using System.Linq;
+using System.Threading.Tasks;
+using Microsoft.CodeAnalysis;
+using Microsoft.Extensions.Logging;
+using OmniSharp;
+using OmniSharp.Mef;
+using SonarLint.OmniSharp.DotNet.Services.DiagnosticWorker;
+
+namespace SonarLint.OmniSharp.DotNet.Services.Services
+{
+    [OmniSharpEndpoint(SonarLintWarmUpService.ServiceEndpoint, typeof(SonarLintWarmUpRequest), typeof(object))]
+    internal class SonarLintWarmUpRequest : IRequest
+    {
+    }
+
+    /// <summary>
+    /// Compiles the projects of the workspace and analyzes one of their documents, so that the first code check doesn't pay for the
+    /// compilations and the JIT compilation of the analyzers. The work is done in the background after the response, one project at a
+    /// time, and waits while documents are being analyzed so that it doesn't compete with the code checks.
+    /// </summary>
+    [OmniSharpHandler(ServiceEndpoint, LanguageNames.CSharp)]
+    internal class SonarLintWarmUpService : IRequestHandler<SonarLintWarmUpRequest, object>
+    {
+        internal const string ServiceEndpoint = "/sonarlint/warmup";
+        internal static readonly TimeSpan YieldDelay = TimeSpan.FromMilliseconds(100);
+
+        private readonly OmniSharpWorkspace workspace;
+        private readonly ISonarLintDiagnosticWorker diagnosticWorker;
+        private readonly ILogger logger;
+
+        [ImportingConstructor]
+        public SonarLintWarmUpService(OmniSharpWorkspace workspace,
+            ISonarLintDiagnosticWorker diagnosticWorker,
+            ILoggerFactory loggerFactory)
+        {
+            this.workspace = workspace;
+            this.diagnosticWorker = diagnosticWorker;
+            logger = loggerFactory.CreateLogger<SonarLintWarmUpService>();
+        }
+
+        public Task<object> Handle(SonarLintWarmUpRequest request)
+        {
+            var solution = workspace.CurrentSolution;
+            _ = Task.Run(() => WarmUp(solution));
+            return Task.FromResult((object)true);
+        }
+
+        internal async Task WarmUp(Solution solution)
+        {
+            try
+            {
+                var projects = solution.Projects.Where(x => x.Language == LanguageNames.CSharp).ToList();
+                foreach (var project in projects)
+                {
+                    await WaitForRunningAnalyses();
+                    // Kept by the workspace until the project changes, so the analysis reuses it
+                    await project.GetCompilationAsync();
+                }
+
+                var sampleDocument = projects.SelectMany(x => x.Documents).FirstOrDefault(x => x.FilePath != null);
+                if (sampleDocument != null)
+                {
+                    await WaitForRunningAnalyses();
+                    await diagnosticWorker.GetDiagnostics(ImmutableArray.Create(sampleDocument.FilePath));
+                }
+                logger.LogDebug($"Warm-up completed for {projects.Count} projects");
+            }
+            catch (Exception ex)
+            {
+                logger.LogDebug($"Warm-up failed: {ex.Message}");
+            }
+        }
+
+        private async Task WaitForRunningAnalyses()
+        {
+            while (diagnosticWorker.IsAnalyzing)
+            {
+                await Task.Delay(YieldDelay);
+            }
+        }
+    }
+}
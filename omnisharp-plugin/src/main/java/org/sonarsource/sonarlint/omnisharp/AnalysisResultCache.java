@@ -0,0 +1,260 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.StreamSupport;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.omnisharp.protocol.Diagnostic;
+
+/**
+ * Diagnostics of previous analyses, stored in the module working directory. An entry is only valid for the same file contents,
+ * the same active rules and parameters, and the same project fingerprint (solution, projects, MSBuild files and restored
+ * package references). There is one entry per file, so the cache doesn't grow with the number of analyses.
+ */
+class AnalysisResultCache {
+
+  private static final Logger LOG = Loggers.get(AnalysisResultCache.class);
+
+  private static final Gson GSON = new Gson();
+
+  /**
+   * Content hashes of the project files, with the size and modification time they were computed for
+   */
+  private static final String PROJECT_FILES_INDEX = "project-files.json";
+
+  private final Path cacheDir;
+  private final String analysisKey;
+
+  AnalysisResultCache(Path cacheDir, String analysisKey) {
+    this.cacheDir = cacheDir;
+    this.analysisKey = analysisKey;
+  }
+
+  static AnalysisResultCache create(FileSystem fs, String rulesConfig, String analyzerLocation) {
+    Path cacheDir = fs.workDir().toPath().resolve("omnisharp-cache");
+    MessageDigest digest = Hashing.newSha256();
+    digest.update(rulesConfig.getBytes(StandardCharsets.UTF_8));
+    digest.update(analyzerLocation.getBytes(StandardCharsets.UTF_8));
+    updateWithProjectFingerprint(fs, cacheDir, digest);
+    return new AnalysisResultCache(cacheDir, Hashing.toHex(digest.digest()));
+  }
+
+  private static void updateWithProjectFingerprint(FileSystem fs, Path cacheDir, MessageDigest digest) {
+    FilePredicates p = fs.predicates();
+    Iterable<InputFile> projectFiles = fs.inputFiles(p.or(
+      p.hasExtension("sln"),
+      p.hasExtension("slnf"),
+      p.hasExtension("csproj"),
+      p.hasFilename("Directory.Build.props"),
+      p.hasFilename("Directory.Build.targets"),
+      p.hasFilename("Directory.Packages.props"),
+      p.hasFilename("global.json")));
+    Map<String, ProjectFile> previousIndex = readProjectFilesIndex(cacheDir);
+    Map<String, ProjectFile> index = new HashMap<>();
+    StreamSupport.stream(projectFiles.spliterator(), false)
+      .sorted(Comparator.comparing(InputFile::uri))
+      .forEach(f -> {
+        String uri = f.uri().toString();
+        ProjectFile projectFile = hashIfModified(f, previousIndex.get(uri));
+        index.put(uri, projectFile);
+        digest.update(uri.getBytes(StandardCharsets.UTF_8));
+        digest.update(projectFile.contentHash.getBytes(StandardCharsets.UTF_8));
+        if (f.filename().endsWith(".csproj")) {
+          // Referenced assemblies are resolved by the restore, that updates the assets file
+          Path assets = f.path().resolveSibling("obj").resolve("project.assets.json");
+          digest.update(lastModified(assets).getBytes(StandardCharsets.UTF_8));
+        }
+      });
+    if (!index.equals(previousIndex)) {
+      ProjectFilesIndex content = new ProjectFilesIndex();
+      content.files = index;
+      writeAtomically(cacheDir, cacheDir.resolve(PROJECT_FILES_INDEX), content);
+    }
+  }
+
+  /**
+   * Only read the file again if its size or modification time changed, since the project files are checked at each analysis.
+   * Hashing the contents, rather than using the size and modification time alone, keeps the cache valid when a file is only touched.
+   */
+  private static ProjectFile hashIfModified(InputFile f, @Nullable ProjectFile previous) {
+    String lastModified = lastModified(f.path());
+    if (previous != null && !lastModified.isEmpty() && lastModified.equals(previous.lastModified)) {
+      return previous;
+    }
+    return new ProjectFile(lastModified, Hashing.sha256Hex(readQuietly(f)));
+  }
+
+  private static Map<String, ProjectFile> readProjectFilesIndex(Path cacheDir) {
+    Path indexPath = cacheDir.resolve(PROJECT_FILES_INDEX);
+    if (!Files.exists(indexPath)) {
+      return Map.of();
+    }
+    try (Reader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+      ProjectFilesIndex index = GSON.fromJson(reader, ProjectFilesIndex.class);
+      Map<String, ProjectFile> result = new HashMap<>();
+      if (index != null && index.files != null) {
+        index.files.forEach((uri, entry) -> {
+          if (entry != null && entry.lastModified != null && entry.contentHash != null) {
+            result.put(uri, entry);
+          }
+        });
+      }
+      return result;
+    } catch (IOException | JsonParseException e) {
+      LOG.debug("Unable to read the index of project files", e);
+      return Map.of();
+    }
+  }
+
+  private static String readQuietly(InputFile f) {
+    try {
+      return f.contents();
+    } catch (IOException e) {
+      return "";
+    }
+  }
+
+  private static String lastModified(Path file) {
+    try {
+      return Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException e) {
+      return "";
+    }
+  }
+
+  @CheckForNull
+  List<Diagnostic> get(InputFile f, String contentHash) {
+    Path entryPath = entryPath(f);
+    if (!Files.exists(entryPath)) {
+      return null;
+    }
+    try (Reader reader = Files.newBufferedReader(entryPath, StandardCharsets.UTF_8)) {
+      Entry entry = GSON.fromJson(reader, Entry.class);
+      if (entry != null && entryKey(contentHash).equals(entry.key) && entry.diagnostics != null) {
+        return Arrays.asList(entry.diagnostics);
+      }
+    } catch (IOException | JsonParseException e) {
+      LOG.debug("Unable to read cached analysis results of " + f, e);
+    }
+    return null;
+  }
+
+  void put(InputFile f, String contentHash, List<Diagnostic> diagnostics) {
+    Entry entry = new Entry();
+    entry.key = entryKey(contentHash);
+    entry.diagnostics = diagnostics.toArray(new Diagnostic[0]);
+    writeAtomically(cacheDir, entryPath(f), entry);
+  }
+
+  private static void writeAtomically(Path cacheDir, Path target, Object content) {
+    Path tmp = null;
+    try {
+      Files.createDirectories(cacheDir);
+      // Write then move, so that a concurrent reader never sees a partial entry
+      tmp = Files.createTempFile(cacheDir, "entry", ".tmp");
+      try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        GSON.toJson(content, writer);
+      }
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOG.debug("Unable to write " + target, e);
+      deleteQuietly(tmp);
+    }
+  }
+
+  private static void deleteQuietly(@Nullable Path file) {
+    if (file != null) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        // Ignore
+      }
+    }
+  }
+
+  private String entryKey(String contentHash) {
+    return analysisKey + ":" + contentHash;
+  }
+
+  private Path entryPath(InputFile f) {
+    return cacheDir.resolve(Hashing.sha256Hex(f.uri().toString()) + ".json");
+  }
+
+  private static class Entry {
+    @SerializedName("key")
+    private String key;
+    @SerializedName("diagnostics")
+    private Diagnostic[] diagnostics;
+  }
+
+  private static class ProjectFilesIndex {
+    @SerializedName("files")
+    private Map<String, ProjectFile> files;
+  }
+
+  private static class ProjectFile {
+    @SerializedName("lastModified")
+    private String lastModified;
+    @SerializedName("contentHash")
+    private String contentHash;
+
+    private ProjectFile(String lastModified, String contentHash) {
+      this.lastModified = lastModified;
+      this.contentHash = contentHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ProjectFile)) {
+        return false;
+      }
+      ProjectFile other = (ProjectFile) o;
+      return lastModified.equals(other.lastModified) && contentHash.equals(other.contentHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return lastModified.hashCode() * 31 + contentHash.hashCode();
+    }
+  }
+
+}
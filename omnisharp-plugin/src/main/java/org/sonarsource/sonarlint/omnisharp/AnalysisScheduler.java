@@ -0,0 +1,79 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.sonar.api.batch.fs.InputFile;
+
+/**
+ * Orders the files to analyze so that issues are first reported on what the developer is working on: files changed since the previous
+ * analysis, then files touched by recent file events, then the others. Smaller files go first within each tier, since they are
+ * analyzed faster.
+ */
+final class AnalysisScheduler {
+
+  private static final int CHANGED_TIER = 0;
+  private static final int RECENTLY_TOUCHED_TIER = 1;
+  private static final int OTHER_TIER = 2;
+
+  private AnalysisScheduler() {
+    // static only
+  }
+
+  static List<InputFile> prioritize(List<InputFile> files, Predicate<Path> recentlyTouched) {
+    // When all files are new, like on a first analysis, their status tells nothing about what is being edited
+    boolean useStatus = files.stream().anyMatch(f -> !isChanged(f));
+    // Sizes are read once, the comparator would read them again for each comparison
+    return files.stream()
+      .map(f -> new ScheduledFile(f, tier(f, useStatus, recentlyTouched), f.file().length()))
+      .sorted(Comparator.comparingInt((ScheduledFile f) -> f.tier).thenComparingLong(f -> f.size))
+      .map(f -> f.inputFile)
+      .collect(Collectors.toList());
+  }
+
+  private static int tier(InputFile f, boolean useStatus, Predicate<Path> recentlyTouched) {
+    if (useStatus && isChanged(f)) {
+      return CHANGED_TIER;
+    }
+    return recentlyTouched.test(f.path()) ? RECENTLY_TOUCHED_TIER : OTHER_TIER;
+  }
+
+  private static boolean isChanged(InputFile f) {
+    InputFile.Status status = f.status();
+    return status == InputFile.Status.CHANGED || status == InputFile.Status.ADDED;
+  }
+
+  private static final class ScheduledFile {
+    private final InputFile inputFile;
+    private final int tier;
+    private final long size;
+
+    private ScheduledFile(InputFile inputFile, int tier, long size) {
+      this.inputFile = inputFile;
+      this.tier = tier;
+      this.size = size;
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+
+/**
+ * Buffers sent to the OmniSharp processes of a pool, used to only send changes and to skip sending unchanged buffers. Each pool has its
+ * own ledger, since a new process knows nothing about the buffers sent to the previous one.
+ */
+final class BufferLedger {
+
+  /**
+   * Last buffer sent for each file
+   */
+  private final Map<Path, String> snapshots = new ConcurrentHashMap<>();
+
+  /**
+   * Hash of the last buffer sent for each file
+   */
+  private final Map<Path, String> hashes = new ConcurrentHashMap<>();
+
+  @CheckForNull
+  String getSnapshot(Path file) {
+    return snapshots.get(file);
+  }
+
+  boolean isUpToDate(Path file, String buffer) {
+    String sentHash = hashes.get(file);
+    return sentHash != null && sentHash.equals(Hashing.sha256Hex(buffer));
+  }
+
+  void sent(Path file, String buffer) {
+    snapshots.put(file, buffer);
+    hashes.put(file, Hashing.sha256Hex(buffer));
+  }
+
+  void forget(Path file) {
+    snapshots.remove(file);
+    hashes.remove(file);
+  }
+
+}
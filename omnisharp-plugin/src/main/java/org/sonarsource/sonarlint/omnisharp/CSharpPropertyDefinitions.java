@@ -84,6 +84,76 @@ public class CSharpPropertyDefinitions {
         .defaultValue("60")
         .hidden()
         .build());
+    result.add(
+      PropertyDefinition.builder(getAnalysisBatchSize())
+        .type(PropertyType.INTEGER)
+        .defaultValue("1")
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getAnalysisCacheEnabled())
+        .type(PropertyType.BOOLEAN)
+        .defaultValue("false")
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getAnalysisThreads())
+        .type(PropertyType.INTEGER)
+        .defaultValue("1")
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getConcurrentAnalysis())
+        .type(PropertyType.BOOLEAN)
+        .defaultValue("false")
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getServerPoolSize())
+        .type(PropertyType.INTEGER)
+        .defaultValue("1")
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getWarmRestart())
+        .type(PropertyType.BOOLEAN)
+        .defaultValue("false")
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getProgressiveAnalysis())
+        .type(PropertyType.BOOLEAN)
+        .defaultValue("false")
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getMemoryRecycleThreshold())
+        .type(PropertyType.INTEGER)
+        .defaultValue("0")
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getHeapHardLimit())
+        .type(PropertyType.INTEGER)
+        .defaultValue("0")
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getRuntimeProfile())
+        .type(PropertyType.SINGLE_SELECT_LIST)
+        .options(OmnisharpCommandBuilder.RuntimeProfile.names())
+        .defaultValue("default")
+        .description("Environment variables of the .NET 6 runtime running OmniSharp. 'low-latency', for IDE sessions, sets DOTNET_gcServer=0, "
+          + "DOTNET_gcConcurrent=1, DOTNET_TieredCompilation=1 and DOTNET_TieredPGO=1. 'throughput', for full scans of large solutions, sets "
+          + "DOTNET_gcServer=1, DOTNET_gcConcurrent=0 and DOTNET_TieredPGO=1. 'default' sets none.")
+        .hidden()
+        .build());
+    result.add(
+      PropertyDefinition.builder(getWholeProjectAnalysis())
+        .type(PropertyType.BOOLEAN)
+        .defaultValue("false")
+        .hidden()
+        .build());
     result.add(
       PropertyDefinition.builder(getFileSuffixProperty())
         .category(OmnisharpPlugin.LANGUAGE_NAME)
@@ -143,4 +213,48 @@ public class CSharpPropertyDefinitions {
   public static String getStartupTimeout() {
     return PROP_PREFIX + LANGUAGE_KEY + ".internal.startupTimeout";
   }
+
+  public static String getAnalysisBatchSize() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.analysisBatchSize";
+  }
+
+  public static String getAnalysisCacheEnabled() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.analysisCacheEnabled";
+  }
+
+  public static String getAnalysisThreads() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.analysisThreads";
+  }
+
+  public static String getConcurrentAnalysis() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.concurrentAnalysis";
+  }
+
+  public static String getServerPoolSize() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.serverPoolSize";
+  }
+
+  public static String getWarmRestart() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.warmRestart";
+  }
+
+  public static String getProgressiveAnalysis() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.progressiveAnalysis";
+  }
+
+  public static String getMemoryRecycleThreshold() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.memoryRecycleThreshold";
+  }
+
+  public static String getHeapHardLimit() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.heapHardLimit";
+  }
+
+  public static String getRuntimeProfile() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.runtimeProfile";
+  }
+
+  public static String getWholeProjectAnalysis() {
+    return PROP_PREFIX + LANGUAGE_KEY + ".internal.wholeProjectAnalysis";
+  }
 }
@@ -0,0 +1,57 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+
+/**
+ * Input files of the module by path, built once per analysis. Diagnostics can have many locations and quick fixes, resolving each of them
+ * with a file system predicate is costly.
+ */
+final class InputFileIndex {
+
+  private final Path baseDir;
+  private final Map<Path, InputFile> filesByPath = new HashMap<>();
+
+  InputFileIndex(FileSystem fileSystem) {
+    this.baseDir = fileSystem.baseDir().toPath();
+    for (InputFile inputFile : fileSystem.inputFiles(fileSystem.predicates().all())) {
+      filesByPath.put(normalize(inputFile.path()), inputFile);
+    }
+  }
+
+  /**
+   * Like {@link org.sonar.api.batch.fs.FilePredicates#is(java.io.File)}, relative paths are resolved against the base directory.
+   */
+  @CheckForNull
+  InputFile get(Path path) {
+    return filesByPath.get(normalize(path));
+  }
+
+  private Path normalize(Path path) {
+    return baseDir.resolve(path).toAbsolutePath().normalize();
+  }
+
+}
@@ -22,16 +22,26 @@ package org.sonarsource.sonarlint.omnisharp;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.api.sonarlint.SonarLintSide;
 import org.sonarsource.sonarlint.plugin.api.SonarLintRuntime;
 
 @SonarLintSide(lifespan = "MODULE")
 public class OmnisharpCommandBuilder {
 
+  private static final Logger LOG = Loggers.get(OmnisharpCommandBuilder.class);
+
+  private static final String DOTNET_HEAP_HARD_LIMIT = "DOTNET_GCHeapHardLimit";
+  private static final String MONO_GC_PARAMS = "MONO_GC_PARAMS";
+
   private final System2 system2;
   private final SonarLintRuntime sonarLintRuntime;
   private final OmnisharpServicesExtractor servicesExtractor;
@@ -58,7 +68,13 @@ public class OmnisharpCommandBuilder {
     }
     String omnisharpNet6Loc = getMandatoryConfig(CSharpPropertyDefinitions.getOmnisharpNet6Location());
     args.add(Paths.get(omnisharpNet6Loc).resolve("OmniSharp.dll").toString());
-    return addArguments(projectBaseDir, msBuildPath, solutionPath, loadProjectsOnDemand, args);
+    ProcessBuilder processBuilder = addArguments(projectBaseDir, msBuildPath, solutionPath, loadProjectsOnDemand, args);
+    processBuilder.environment().putAll(getRuntimeProfile().environment);
+    long heapHardLimitMb = getHeapHardLimitMb();
+    if (heapHardLimitMb > 0) {
+      processBuilder.environment().put(DOTNET_HEAP_HARD_LIMIT, "0x" + Long.toHexString(heapHardLimitMb * 1024 * 1024));
+    }
+    return processBuilder;
   }
 
   public ProcessBuilder build(Path projectBaseDir, @Nullable Path monoPath, @Nullable Path msBuildPath, @Nullable Path solutionPath, boolean loadProjectsOnDemand) {
@@ -75,7 +91,12 @@ public class OmnisharpCommandBuilder {
       String omnisharpMonoLoc = getMandatoryConfig(CSharpPropertyDefinitions.getOmnisharpMonoLocation());
       args.add(Paths.get(omnisharpMonoLoc).resolve("OmniSharp.exe").toString());
     }
-    return addArguments(projectBaseDir, msBuildPath, solutionPath, loadProjectsOnDemand, args);
+    ProcessBuilder processBuilder = addArguments(projectBaseDir, msBuildPath, solutionPath, loadProjectsOnDemand, args);
+    long heapHardLimitMb = getHeapHardLimitMb();
+    if (heapHardLimitMb > 0 && !system2.isOsWindows()) {
+      processBuilder.environment().merge(MONO_GC_PARAMS, "max-heap-size=" + heapHardLimitMb + "m", (existing, added) -> existing + "," + added);
+    }
+    return processBuilder;
   }
 
   private ProcessBuilder addArguments(Path projectBaseDir, @Nullable Path msBuildPath, @Nullable Path solutionPath, boolean loadProjectsOnDemand, List<String> args) {
@@ -98,8 +119,55 @@ public class OmnisharpCommandBuilder {
     return new ProcessBuilder(args);
   }
 
+  /**
+   * The GC fails allocations above the limit instead of letting the process grow, so it is only set when configured.
+   */
+  long getHeapHardLimitMb() {
+    return config.getInt(CSharpPropertyDefinitions.getHeapHardLimit()).orElse(0);
+  }
+
+  RuntimeProfile getRuntimeProfile() {
+    String name = config.get(CSharpPropertyDefinitions.getRuntimeProfile()).orElse(RuntimeProfile.DEFAULT.name);
+    for (RuntimeProfile profile : RuntimeProfile.values()) {
+      if (profile.name.equals(name)) {
+        return profile;
+      }
+    }
+    LOG.warn("Unknown OmniSharp runtime profile '{}', using the default one", name);
+    return RuntimeProfile.DEFAULT;
+  }
+
   private String getMandatoryConfig(String propKey) {
     return config.get(propKey).orElseThrow(() -> new IllegalStateException("Property '" + propKey + "' is required"));
   }
 
+  /**
+   * Tuning of the .NET runtime running OmniSharp. IDE sessions need short pauses, while full scans of large solutions benefit from
+   * the server GC and its heap per core. Only settings supported by .NET 6, the runtime launched by {@link #buildNet6}, are used.
+   */
+  enum RuntimeProfile {
+    DEFAULT("default", Map.of()),
+    LOW_LATENCY("low-latency", Map.of(
+      "DOTNET_gcServer", "0",
+      "DOTNET_gcConcurrent", "1",
+      "DOTNET_TieredCompilation", "1",
+      "DOTNET_TieredPGO", "1")),
+    THROUGHPUT("throughput", Map.of(
+      "DOTNET_gcServer", "1",
+      "DOTNET_gcConcurrent", "0",
+      "DOTNET_TieredPGO", "1"));
+
+    private final String name;
+    private final Map<String, String> environment;
+
+    RuntimeProfile(String name, Map<String, String> environment) {
+      this.name = name;
+      this.environment = environment;
+    }
+
+    static List<String> names() {
+      return Arrays.stream(values()).map(p -> p.name).collect(Collectors.toList());
+    }
+  }
+
 }
@@ -20,6 +20,8 @@
 package org.sonarsource.sonarlint.omnisharp;
 
 import java.io.File;
+import java.util.List;
+import org.sonar.api.config.Configuration;
 import org.sonarsource.api.sonarlint.SonarLintSide;
 import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpEndpoints;
 import org.sonarsource.sonarlint.plugin.api.module.file.ModuleFileEvent;
@@ -30,10 +32,15 @@ public class OmnisharpFileListener implements ModuleFileListener {
 
   private final OmnisharpEndpoints omnisharpEndpoints;
   private final OmnisharpServerController serverController;
+  private final Configuration config;
+  private final RecentlyTouchedFiles recentlyTouchedFiles;
 
-  public OmnisharpFileListener(OmnisharpServerController serverController, OmnisharpEndpoints omnisharpEndpoints) {
+  public OmnisharpFileListener(OmnisharpServerController serverController, OmnisharpEndpoints omnisharpEndpoints, Configuration config,
+    RecentlyTouchedFiles recentlyTouchedFiles) {
     this.serverController = serverController;
     this.omnisharpEndpoints = omnisharpEndpoints;
+    this.config = config;
+    this.recentlyTouchedFiles = recentlyTouchedFiles;
   }
 
   @Override
@@ -44,22 +51,30 @@ public class OmnisharpFileListener implements ModuleFileListener {
     File file = event.getTarget().file();
     switch (event.getType()) {
       case CREATED:
-        if (file.getName().endsWith(".sln") || file.getName().endsWith(".csproj")) {
-          // Stop the server so that it is restarted during the next analysis and take into account changes to the solution, or added
-          // projects
-          serverController.stopServer();
+        if (file.getName().endsWith(".sln")) {
+          // Restart the server to take into account the new solution
+          restartServer();
         } else {
+          // OmniSharp loads a created project on its own, without reloading the other ones
+          if (file.getName().endsWith(".csproj")) {
+            serverController.projectCreated(file.toPath());
+          }
+          serverController.forgetBuffer(file.toPath());
+          recentlyTouchedFiles.touch(file.toPath());
           omnisharpEndpoints.fileChanged(file, OmnisharpEndpoints.FileChangeType.CREATE);
         }
         break;
       case DELETED:
+        serverController.forgetBuffer(file.toPath());
         omnisharpEndpoints.fileChanged(file, OmnisharpEndpoints.FileChangeType.DELETE);
         break;
       case MODIFIED:
         if (file.getName().endsWith(".sln")) {
-          // Stop the server so that it is restarted during the next analysis and take into account changes to the solution
-          serverController.stopServer();
+          reloadSolution(file);
         } else {
+          // OmniSharp may reload the file from disk, the buffer it holds is no longer known
+          serverController.forgetBuffer(file.toPath());
+          recentlyTouchedFiles.touch(file.toPath());
           omnisharpEndpoints.fileChanged(file, OmnisharpEndpoints.FileChangeType.CHANGE);
         }
         break;
@@ -69,4 +84,23 @@ public class OmnisharpFileListener implements ModuleFileListener {
 
   }
 
+  private void reloadSolution(File solution) {
+    List<File> addedProjects = serverController.projectsAddedToSolution(solution.toPath());
+    if (addedProjects == null) {
+      // Restart the server to take into account changes to the solution that can't be applied incrementally
+      restartServer();
+      return;
+    }
+    addedProjects.forEach(p -> omnisharpEndpoints.fileChanged(p, OmnisharpEndpoints.FileChangeType.CREATE));
+  }
+
+  private void restartServer() {
+    if (config.getBoolean(CSharpPropertyDefinitions.getWarmRestart()).orElse(false)) {
+      serverController.restartInBackground();
+    } else {
+      // The server will be restarted during the next analysis
+      serverController.stopServer();
+    }
+  }
+
 }
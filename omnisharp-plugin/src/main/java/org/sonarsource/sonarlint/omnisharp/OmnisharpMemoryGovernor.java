@@ -0,0 +1,81 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.sonar.api.Startable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+
+/**
+ * Periodically samples the memory used by the OmniSharp processes, and recycles them with a restart in the background once they use more
+ * than the threshold set by the analysis. Long editing sessions otherwise make OmniSharp grow until the machine swaps.
+ * The servers being shared between modules, there is only one governor, sampling each server once.
+ */
+@SonarLintSide(lifespan = SonarLintSide.MULTIPLE_ANALYSES)
+public class OmnisharpMemoryGovernor implements Startable {
+
+  private static final Logger LOG = Loggers.get(OmnisharpMemoryGovernor.class);
+
+  private static final long SAMPLING_PERIOD_SEC = 30;
+
+  private final OmnisharpServerRegistry serverRegistry;
+
+  @Nullable
+  private ScheduledExecutorService sampler;
+
+  public OmnisharpMemoryGovernor(OmnisharpServerRegistry serverRegistry) {
+    this.serverRegistry = serverRegistry;
+  }
+
+  @Override
+  public synchronized void start() {
+    sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "omnisharp-memory-governor");
+      t.setDaemon(true);
+      return t;
+    });
+    sampler.scheduleWithFixedDelay(this::checkMemory, SAMPLING_PERIOD_SEC, SAMPLING_PERIOD_SEC, TimeUnit.SECONDS);
+  }
+
+  void checkMemory() {
+    for (OmnisharpServerController server : serverRegistry.getOneUserPerServer()) {
+      try {
+        server.recycleIfMemoryAboveLimit();
+      } catch (Exception e) {
+        // Don't let the periodic task die, the next sample may succeed
+        LOG.debug("Unable to check the memory used by OmniSharp", e);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (sampler != null) {
+      sampler.shutdownNow();
+      sampler = null;
+    }
+  }
+
+}
@@ -42,10 +42,13 @@ public class OmnisharpPlugin implements Plugin {
     if (context.getRuntime().getProduct() == SonarProduct.SONARLINT) {
       context.addExtensions(
         OmnisharpServerController.class,
+        OmnisharpServerRegistry.class,
+        OmnisharpMemoryGovernor.class,
         OmnisharpSensor.class,
         OmnisharpEndpoints.class,
         OmnisharpServicesExtractor.class,
         OmnisharpFileListener.class,
+        RecentlyTouchedFiles.class,
         OmnisharpResponseProcessor.class,
         OmnisharpCommandBuilder.class);
     }
@@ -21,15 +21,33 @@ package org.sonarsource.sonarlint.omnisharp;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import javax.annotation.Nullable;
 import org.sonar.api.batch.fs.FilePredicate;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.rule.ActiveRule;
@@ -42,23 +60,29 @@ import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.analyzer.commons.ProgressReport;
+import org.sonarsource.sonarlint.omnisharp.protocol.CodeCheckResult;
 import org.sonarsource.sonarlint.omnisharp.protocol.Diagnostic;
 import org.sonarsource.sonarlint.omnisharp.protocol.DiagnosticLocation;
 import org.sonarsource.sonarlint.omnisharp.protocol.Fix;
 import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpEndpoints;
 import org.sonarsource.sonarlint.omnisharp.protocol.QuickFix;
 import org.sonarsource.sonarlint.omnisharp.protocol.QuickFixEdit;
+import org.sonarsource.sonarlint.omnisharp.protocol.TextChange;
 
 public class OmnisharpSensor implements Sensor {
 
   private static final Logger LOG = Loggers.get(OmnisharpSensor.class);
 
+  private static final long CANCELLATION_POLL_INTERVAL_MS = 100;
+
   private final OmnisharpServerController server;
   private final OmnisharpEndpoints omnisharpEndpoints;
+  private final RecentlyTouchedFiles recentlyTouchedFiles;
 
-  public OmnisharpSensor(OmnisharpServerController server, OmnisharpEndpoints omnisharpEndpoints) {
+  public OmnisharpSensor(OmnisharpServerController server, OmnisharpEndpoints omnisharpEndpoints, RecentlyTouchedFiles recentlyTouchedFiles) {
     this.server = server;
     this.omnisharpEndpoints = omnisharpEndpoints;
+    this.recentlyTouchedFiles = recentlyTouchedFiles;
   }
 
   @Override
@@ -78,6 +102,11 @@ public class OmnisharpSensor implements Sensor {
     if (!context.fileSystem().hasFiles(predicate)) {
       return;
     }
+    JsonObject config = buildRulesConfig(context);
+    if (context.config().getBoolean(CSharpPropertyDefinitions.getConcurrentAnalysis()).orElse(false)) {
+      // Let Roslyn run the analyzers of a single document on several threads
+      config.addProperty("concurrentAnalysis", true);
+    }
     try {
       Path dotnetCliExePath = context.config().get(CSharpPropertyDefinitions.getDotnetCliExeLocation()).map(Paths::get).orElse(null);
       Path monoExePath = context.config().get(CSharpPropertyDefinitions.getMonoExeLocation()).map(Paths::get).orElse(null);
@@ -87,8 +116,11 @@ public class OmnisharpSensor implements Sensor {
       boolean loadProjectsOnDemand = context.config().getBoolean(CSharpPropertyDefinitions.getLoadProjectsOnDemand()).orElse(false);
       int startupTimeOutSec = context.config().getInt(CSharpPropertyDefinitions.getStartupTimeout()).orElse(60);
       int loadProjectsTimeOutSec = context.config().getInt(CSharpPropertyDefinitions.getLoadProjectsTimeout()).orElse(60);
+      int poolSize = context.config().getInt(CSharpPropertyDefinitions.getServerPoolSize()).orElse(1);
+      int memoryRecycleThresholdMb = context.config().getInt(CSharpPropertyDefinitions.getMemoryRecycleThreshold()).orElse(0);
       server.lazyStart(context.fileSystem().baseDir().toPath(), useFramework, loadProjectsOnDemand, dotnetCliExePath, monoExePath, msBuildPath, solutionPath, startupTimeOutSec,
-        loadProjectsTimeOutSec);
+        loadProjectsTimeOutSec, poolSize, Hashing.sha256Hex(config.toString()));
+      server.setMemoryLimit(memoryRecycleThresholdMb * 1024L * 1024L);
     } catch (InterruptedException e) {
       LOG.warn("Interrupted", e);
       Thread.currentThread().interrupt();
@@ -98,8 +130,14 @@ public class OmnisharpSensor implements Sensor {
     }
 
     try {
-      server.whenReady().get();
-      analyze(context, predicate);
+      boolean progressiveAnalysis = context.config().getBoolean(CSharpPropertyDefinitions.getProgressiveAnalysis()).orElse(false);
+      boolean wholeProjectAnalysis = context.config().getBoolean(CSharpPropertyDefinitions.getWholeProjectAnalysis()).orElse(false);
+      // A whole project analysis needs all projects to be loaded
+      ProjectLoadState projectLoadState = progressiveAnalysis && !wholeProjectAnalysis ? server.getProjectLoadState() : null;
+      if (projectLoadState == null) {
+        server.whenReady().get();
+      }
+      analyze(context, predicate, config, projectLoadState, wholeProjectAnalysis);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
     } catch (ExecutionException e) {
@@ -113,25 +151,61 @@ public class OmnisharpSensor implements Sensor {
     }
   }
 
-  private void analyze(SensorContext context, FilePredicate predicate) {
-    JsonObject config = buildRulesConfig(context);
+  /**
+   * @param config the rules configuration, already taken into account to choose the OmniSharp processes
+   * @param projectLoadState when not null, files are analyzed as soon as their project is loaded instead of waiting for the whole solution
+   * @param wholeProjectAnalysis when true, all files are analyzed with a single request whose results are streamed file per file
+   */
+  private void analyze(SensorContext context, FilePredicate predicate, JsonObject config, @Nullable ProjectLoadState projectLoadState,
+    boolean wholeProjectAnalysis) throws InterruptedException {
+    int batchSize = context.config().getInt(CSharpPropertyDefinitions.getAnalysisBatchSize()).orElse(1);
+    boolean useCache = context.config().getBoolean(CSharpPropertyDefinitions.getAnalysisCacheEnabled()).orElse(false);
+    int threads = context.config().getInt(CSharpPropertyDefinitions.getAnalysisThreads()).orElse(1);
+
     omnisharpEndpoints.config(config);
+    AnalysisResultCache cache = useCache ? AnalysisResultCache.create(context.fileSystem(), config.toString(), analyzerLocation(context)) : null;
+    // Even when not analyzing progressively, the analysis can start before all projects are loaded
+    ProjectLoadState cacheLoadState = useCache ? server.getProjectLoadState() : null;
+
+    List<InputFile> inputFiles = AnalysisScheduler.prioritize(
+      StreamSupport.stream(context.fileSystem().inputFiles(predicate).spliterator(), false).collect(Collectors.toList()),
+      recentlyTouchedFiles::contains);
+    InputFileIndex inputFileIndex = new InputFileIndex(context.fileSystem());
+    AnalysisUnitScanner scanner = (unit, issues) -> {
+      try {
+        if (batchSize > 1) {
+          scanBatch(unit, cache, cacheLoadState, issues);
+        } else {
+          scanFile(unit.get(0), cache, cacheLoadState, issues);
+        }
+      } catch (CancellationException e) {
+        // The code check was cancelled by the watcher, the analysis loops stop on their next cancellation check
+        LOG.debug("Code check cancelled");
+      }
+    };
 
     ProgressReport progressReport = new ProgressReport("Report about progress of OmniSharp analyzer", TimeUnit.SECONDS.toMillis(10));
-    progressReport.start(StreamSupport.stream(context.fileSystem().inputFiles(predicate).spliterator(), false).map(InputFile::toString).collect(Collectors.toList()));
+    progressReport.start(inputFiles.stream().map(InputFile::toString).collect(Collectors.toList()));
+    ScheduledExecutorService cancellationWatcher = context.isCancelled() ? null : watchCancellation(context);
     boolean successfullyCompleted = false;
-    boolean cancelled = false;
     try {
-      for (InputFile inputFile : context.fileSystem().inputFiles(predicate)) {
-        if (context.isCancelled()) {
-          cancelled = true;
-          break;
-        }
-        scanFile(context, inputFile);
-        progressReport.nextFile();
+      if (wholeProjectAnalysis) {
+        successfullyCompleted = !analyzeWholeProject(context, inputFileIndex, inputFiles, progressReport);
+        return;
+      }
+      boolean cancelled = false;
+      List<InputFile> remaining = inputFiles;
+      while (!cancelled && !remaining.isEmpty()) {
+        List<InputFile> loaded = projectLoadState != null ? waitForLoadedFiles(context, remaining, projectLoadState) : remaining;
+        cancelled = context.isCancelled() || analyzeFiles(context, inputFileIndex, loaded, batchSize, threads, scanner, progressReport);
+        Set<InputFile> analyzed = new HashSet<>(loaded);
+        remaining = remaining.stream().filter(f -> !analyzed.contains(f)).collect(Collectors.toList());
       }
       successfullyCompleted = !cancelled;
     } finally {
+      if (cancellationWatcher != null) {
+        cancellationWatcher.shutdownNow();
+      }
       if (successfullyCompleted) {
         progressReport.stop();
       } else {
@@ -140,6 +214,187 @@ public class OmnisharpSensor implements Sensor {
     }
   }
 
+  /**
+   * The analysis cache is not used, since OmniSharp decides which files to analyze. The buffers are all sent before waiting for the
+   * responses, instead of one round trip per file.
+   *
+   * @return true if the analysis was cancelled
+   */
+  private boolean analyzeWholeProject(SensorContext context, InputFileIndex inputFileIndex, List<InputFile> inputFiles, ProgressReport progressReport) {
+    List<CompletableFuture<Void>> updates = new ArrayList<>();
+    for (InputFile f : inputFiles) {
+      if (context.isCancelled()) {
+        return true;
+      }
+      updates.addAll(updateBufferAsync(f, readBuffer(f)));
+    }
+    waitForUpdates(updates);
+    try {
+      omnisharpEndpoints.codeCheckAll(diagnostics -> {
+        diagnostics.forEach(diag -> handle(context, inputFileIndex, diag));
+        progressReport.nextFile();
+      });
+    } catch (CancellationException e) {
+      LOG.debug("Code check cancelled");
+    }
+    return context.isCancelled();
+  }
+
+  /**
+   * The sensor context can only be polled, so a background thread checks it while the analysis threads wait for OmniSharp, and stops
+   * the in-flight code checks as soon as the analysis is cancelled.
+   */
+  private ScheduledExecutorService watchCancellation(SensorContext context) {
+    ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "omnisharp-cancellation-watcher");
+      t.setDaemon(true);
+      return t;
+    });
+    watcher.scheduleWithFixedDelay(() -> {
+      try {
+        if (context.isCancelled()) {
+          omnisharpEndpoints.cancelCodeChecks();
+        }
+      } catch (RuntimeException e) {
+        LOG.debug("Unable to cancel code checks: {}", e.getMessage());
+      }
+    }, CANCELLATION_POLL_INTERVAL_MS, CANCELLATION_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    return watcher;
+  }
+
+  @FunctionalInterface
+  private interface AnalysisUnitScanner {
+    void scan(List<InputFile> unit, Consumer<Diagnostic> issues);
+  }
+
+  /**
+   * @return true if the analysis was cancelled
+   */
+  private static boolean analyzeFiles(SensorContext context, InputFileIndex inputFileIndex, List<InputFile> files, int batchSize, int threads,
+    AnalysisUnitScanner scanner, ProgressReport progressReport) throws InterruptedException {
+    List<List<InputFile>> units = partition(files, batchSize);
+    if (threads > 1 && units.size() > 1) {
+      return analyzeInParallel(context, inputFileIndex, units, scanner, progressReport, threads);
+    }
+    return analyzeSequentially(context, inputFileIndex, units, scanner, progressReport);
+  }
+
+  /**
+   * @return the files whose project is loaded, waiting for more projects to be loaded if there is none yet. If no project is loaded for
+   * the duration of the project load timeout, all files are returned so that the analysis is not blocked by a project that fails to load.
+   * If the analysis is cancelled while waiting, no file is returned.
+   */
+  private static List<InputFile> waitForLoadedFiles(SensorContext context, List<InputFile> files, ProjectLoadState projectLoadState)
+    throws InterruptedException {
+    int loadProjectsTimeoutSec = context.config().getInt(CSharpPropertyDefinitions.getLoadProjectsTimeout()).orElse(60);
+    while (true) {
+      // Taken before checking the files, so that a project loaded in between is not missed
+      CompletableFuture<Void> changed = projectLoadState.whenChanged();
+      List<InputFile> loaded = files.stream().filter(f -> projectLoadState.isLoaded(f.file().toPath())).collect(Collectors.toList());
+      if (!loaded.isEmpty()) {
+        LOG.debug("Analyzing {} files of loaded projects", loaded.size());
+        return loaded;
+      }
+      // Waited in short slices, since the sensor context can only be polled for cancellation
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(loadProjectsTimeoutSec);
+      while (!changed.isDone()) {
+        if (context.isCancelled()) {
+          return List.of();
+        }
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+          LOG.warn("Some projects are still not loaded, analyzing the remaining files anyway");
+          return files;
+        }
+        try {
+          changed.get(Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(CANCELLATION_POLL_INTERVAL_MS)), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          // Check for cancellation again
+        } catch (ExecutionException e) {
+          throw new IllegalStateException("Analysis failed: " + e.getMessage(), e.getCause());
+        }
+      }
+    }
+  }
+
+  private static List<List<InputFile>> partition(List<InputFile> inputFiles, int batchSize) {
+    int size = Math.max(1, batchSize);
+    List<List<InputFile>> units = new ArrayList<>();
+    for (int i = 0; i < inputFiles.size(); i += size) {
+      units.add(inputFiles.subList(i, Math.min(i + size, inputFiles.size())));
+    }
+    return units;
+  }
+
+  /**
+   * @return true if the analysis was cancelled
+   */
+  private static boolean analyzeSequentially(SensorContext context, InputFileIndex inputFileIndex, List<List<InputFile>> units, AnalysisUnitScanner scanner,
+    ProgressReport progressReport) {
+    for (List<InputFile> unit : units) {
+      if (context.isCancelled()) {
+        return true;
+      }
+      scanner.scan(unit, diag -> handle(context, inputFileIndex, diag));
+      unit.forEach(f -> progressReport.nextFile());
+    }
+    return false;
+  }
+
+  /**
+   * Files are analyzed concurrently by OmniSharp, but the sensor context is not thread safe, so issues are saved one at a time.
+   *
+   * @return true if the analysis was cancelled
+   */
+  private static boolean analyzeInParallel(SensorContext context, InputFileIndex inputFileIndex, List<List<InputFile>> units, AnalysisUnitScanner scanner,
+    ProgressReport progressReport, int threads) throws InterruptedException {
+    Object lock = new Object();
+    Consumer<Diagnostic> issues = diag -> {
+      synchronized (lock) {
+        handle(context, inputFileIndex, diag);
+      }
+    };
+    AtomicBoolean cancelled = new AtomicBoolean(false);
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "omnisharp-analysis-" + threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (List<InputFile> unit : units) {
+        futures.add(executor.submit(() -> {
+          if (cancelled.get() || context.isCancelled()) {
+            cancelled.set(true);
+            return;
+          }
+          scanner.scan(unit, issues);
+          synchronized (lock) {
+            unit.forEach(f -> progressReport.nextFile());
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        waitFor(future);
+      }
+      return cancelled.get();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void waitFor(Future<?> future) throws InterruptedException {
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Analysis failed: " + e.getCause().getMessage(), e.getCause());
+    }
+  }
+
   private static JsonObject buildRulesConfig(SensorContext context) {
     JsonObject config = new JsonObject();
     JsonArray rulesJson = new JsonArray();
@@ -159,49 +414,171 @@ public class OmnisharpSensor implements Sensor {
     return config;
   }
 
-  private void scanFile(SensorContext context, InputFile f) {
-    String buffer;
+  private static String analyzerLocation(SensorContext context) {
+    return Stream.of(CSharpPropertyDefinitions.getOmnisharpNet6Location(), CSharpPropertyDefinitions.getOmnisharpMonoLocation(),
+      CSharpPropertyDefinitions.getOmnisharpWinLocation())
+      .map(key -> context.config().get(key).orElse(""))
+      .collect(Collectors.joining(File.pathSeparator));
+  }
+
+  private static String readBuffer(InputFile f) {
     try {
-      buffer = f.contents();
+      return f.contents();
     } catch (IOException e) {
       throw new IllegalStateException("Unable to read file buffer", e);
     }
-    omnisharpEndpoints.updateBuffer(f.file(), buffer);
-    omnisharpEndpoints.codeCheck(f.file(), diag -> handle(context, diag));
   }
 
-  private static void handle(SensorContext context, Diagnostic diag) {
+  private void scanFile(InputFile f, @Nullable AnalysisResultCache cache, @Nullable ProjectLoadState loadState, Consumer<Diagnostic> issues) {
+    String buffer = readBuffer(f);
+    updateBuffer(f, buffer);
+    if (cache == null) {
+      omnisharpEndpoints.codeCheck(f.file(), issues);
+      return;
+    }
+    String contentHash = Hashing.sha256Hex(buffer);
+    List<Diagnostic> cached = cache.get(f, contentHash);
+    if (cached != null) {
+      cached.forEach(issues);
+      return;
+    }
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    boolean complete = omnisharpEndpoints.codeCheck(f.file(), diagnostics::add);
+    diagnostics.forEach(issues);
+    if (complete && isFullyLoaded(loadState)) {
+      cache.put(f, contentHash, diagnostics);
+    }
+  }
+
+  /**
+   * Results computed while projects are still loading are not cached, even when OmniSharp reports them as complete, since the file may
+   * be analyzed again with more context once its project or the projects it references are loaded.
+   */
+  private static boolean isFullyLoaded(@Nullable ProjectLoadState loadState) {
+    return loadState == null || loadState.isFullyLoaded();
+  }
+
+  private void updateBuffer(InputFile f, String buffer) {
+    waitForUpdates(updateBufferAsync(f, buffer));
+  }
+
+  /**
+   * @return the pending requests sending the buffer, none if OmniSharp already has it
+   */
+  private List<CompletableFuture<Void>> updateBufferAsync(InputFile f, String buffer) {
+    Path path = f.file().toPath();
+    BufferLedger buffers = server.getBuffers();
+    if (buffers.isUpToDate(path, buffer)) {
+      return List.of();
+    }
+    List<CompletableFuture<Void>> updates = new ArrayList<>();
+    String previous = buffers.getSnapshot(path);
+    List<TextChange> changes = previous != null ? TextChange.diff(previous, buffer) : null;
+    if (changes != null) {
+      updates.add(omnisharpEndpoints.updateBufferChangesAsync(f.file(), changes));
+    } else {
+      updates.add(omnisharpEndpoints.updateBufferAsync(f.file(), buffer));
+    }
+    buffers.sent(path, buffer);
+    if (!server.isCurrent(buffers)) {
+      // OmniSharp was restarted in the meantime, the new processes may have received changes against a buffer they never had
+      updates.add(omnisharpEndpoints.updateBufferAsync(f.file(), buffer));
+      server.getBuffers().sent(path, buffer);
+    }
+    return updates;
+  }
+
+  private static void waitForUpdates(List<CompletableFuture<Void>> updates) {
+    try {
+      CompletableFuture.allOf(updates.toArray(CompletableFuture[]::new)).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted!", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Unable to update the buffers: " + e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  private void scanBatch(List<InputFile> batch, @Nullable AnalysisResultCache cache, @Nullable ProjectLoadState loadState, Consumer<Diagnostic> issues) {
+    Map<File, String> buffers = new LinkedHashMap<>();
+    Map<File, InputFile> toCache = new HashMap<>();
+    Map<File, String> contentHashes = new HashMap<>();
+    BufferLedger sentBuffers = server.getBuffers();
+    for (InputFile f : batch) {
+      String buffer = readBuffer(f);
+      if (cache != null) {
+        String contentHash = Hashing.sha256Hex(buffer);
+        List<Diagnostic> cached = cache.get(f, contentHash);
+        if (cached != null) {
+          updateBuffer(f, buffer);
+          cached.forEach(issues);
+          continue;
+        }
+        toCache.put(f.file(), f);
+        contentHashes.put(f.file(), contentHash);
+      }
+      // No need to send again a buffer the server already has
+      buffers.put(f.file(), sentBuffers.isUpToDate(f.file().toPath(), buffer) ? null : buffer);
+    }
+    if (!buffers.isEmpty()) {
+      List<CodeCheckResult> completeResults = new ArrayList<>();
+      omnisharpEndpoints.codeCheckBatch(buffers, result -> {
+        result.getDiagnostics().forEach(issues);
+        if (result.isComplete()) {
+          completeResults.add(result);
+        }
+      });
+      buffers.forEach((file, buffer) -> {
+        if (buffer != null) {
+          sentBuffers.sent(file.toPath(), buffer);
+        }
+      });
+      if (cache != null && isFullyLoaded(loadState)) {
+        // Results are keyed by the files of the request
+        completeResults.forEach(result -> cache.put(toCache.get(result.getFile()), contentHashes.get(result.getFile()), result.getDiagnostics()));
+      }
+    }
+  }
+
+  private static void handle(SensorContext context, InputFileIndex inputFileIndex, Diagnostic diag) {
     var ruleKey = RuleKey.of(OmnisharpPlugin.REPOSITORY_KEY, diag.getId());
     if (context.activeRules().find(ruleKey) != null) {
       var diagFilePath = Paths.get(diag.getFilename());
-      var diagInputFile = findInputFile(context, diagFilePath);
+      var diagInputFile = inputFileIndex.get(diagFilePath);
       if (diagInputFile != null) {
         var newIssue = context.newIssue();
         newIssue
           .forRule(ruleKey)
           .at(createLocation(newIssue, diag, diagInputFile));
-        handleSecondaryLocations(context, diag, newIssue);
-        handleQuickFixes(context, diag, newIssue);
+        handleSecondaryLocations(inputFileIndex, diag, newIssue);
+        handleQuickFixes(inputFileIndex, diag, newIssue);
         newIssue.save();
       }
     }
   }
 
-  private static void handleQuickFixes(SensorContext context, Diagnostic diag, NewIssue newIssue) {
+  /**
+   * The edits of the quick fixes are computed by OmniSharp during the code check. They can't be resolved later, when the user opens a
+   * fix, since the plugin API has no hook for it: they have to be attached to the issue when it is saved.
+   */
+  private static void handleQuickFixes(InputFileIndex inputFileIndex, Diagnostic diag, NewIssue newIssue) {
     var quickFixes = diag.getQuickFixes();
     if (quickFixes != null && quickFixes.length > 0) {
       newIssue.setQuickFixAvailable(true);
       for (var quickFix : quickFixes) {
-        handleQuickFix(context, quickFix, newIssue);
+        handleQuickFix(inputFileIndex, quickFix, newIssue);
       }
     }
   }
 
-  static void handleQuickFix(SensorContext context, QuickFix quickFix, NewIssue newIssue) {
+  static void handleQuickFix(InputFileIndex inputFileIndex, QuickFix quickFix, NewIssue newIssue) {
     var newQuickFix = newIssue.newQuickFix();
     newQuickFix.message(quickFix.getMessage());
     for (Fix fix : quickFix.getFixes()) {
-      var fixInputFile = findInputFile(context, Paths.get(fix.getFilename()));
+      var fixInputFile = inputFileIndex.get(Paths.get(fix.getFilename()));
       if (fixInputFile != null) {
         var newInputFileEdit = newQuickFix.newInputFileEdit()
           .on(fixInputFile);
@@ -217,12 +594,12 @@ public class OmnisharpSensor implements Sensor {
     newIssue.addQuickFix(newQuickFix);
   }
 
-  private static void handleSecondaryLocations(SensorContext context, Diagnostic diag, NewIssue newIssue) {
+  private static void handleSecondaryLocations(InputFileIndex inputFileIndex, Diagnostic diag, NewIssue newIssue) {
     var additionalLocations = diag.getAdditionalLocations();
     if (additionalLocations != null) {
       for (var additionalLocation : additionalLocations) {
         var additionalFilePath = Paths.get(additionalLocation.getFilename());
-        var additionalFilePathInputFile = findInputFile(context, additionalFilePath);
+        var additionalFilePathInputFile = inputFileIndex.get(additionalFilePath);
         if (additionalFilePathInputFile != null) {
           newIssue.addLocation(createLocation(newIssue, additionalLocation, additionalFilePathInputFile));
         }
@@ -230,10 +607,6 @@ public class OmnisharpSensor implements Sensor {
     }
   }
 
-  private static InputFile findInputFile(SensorContext context, Path filePath) {
-    return context.fileSystem().inputFile(context.fileSystem().predicates().is(filePath.toFile()));
-  }
-
   private static NewIssueLocation createLocation(NewIssue newIssue, DiagnosticLocation location, InputFile inputFile) {
     return newIssue.newLocation()
       .on(inputFile)
@@ -19,14 +19,29 @@
  */
 package org.sonarsource.sonarlint.omnisharp;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonar.api.Startable;
 import org.sonar.api.scanner.ScannerSide;
@@ -34,9 +49,11 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.api.sonarlint.SonarLintSide;
 import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpEndpoints;
+import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpRequest;
 import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpResponseProcessor;
 
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
 @ScannerSide
 @SonarLintSide(lifespan = "MODULE")
@@ -44,6 +61,17 @@ public class OmnisharpServerController implements Startable {
 
   private static final Logger LOG = Loggers.get(OmnisharpServerController.class);
 
+  /**
+   * After a warm restart, the replaced processes are kept alive long enough for the requests already sent to them to complete.
+   */
+  private static final long RETIRE_DELAY_SEC = 60;
+
+  private static final long MEGABYTE = 1024L * 1024L;
+
+  private static final long CONFIG_TIMEOUT_MIN = 1;
+
+  private static final Gson GSON = new Gson();
+
   enum ServerState {
     PROCESS_STARTED,
     OMNISHARP_STARTED,
@@ -54,6 +82,10 @@ public class OmnisharpServerController implements Startable {
   private static class ServerStateMachine {
     private volatile ServerState state = ServerState.STOPPED;
     private ProcessWrapper processWrapper;
+    /**
+     * Writes only need to be atomic per process, they don't have to wait for lifecycle changes.
+     */
+    private final Object stdInLock = new Object();
     private CompletableFuture<Integer> terminationFuture = CompletableFuture.completedFuture(0);
     private CompletableFuture<Void> startFuture = failedNotStarted();
     private CompletableFuture<Void> loadProjectsFuture = failedNotStarted();
@@ -124,21 +156,307 @@ public class OmnisharpServerController implements Startable {
       this.state = ServerState.STOPPING;
     }
 
+    public void writeLnStdIn(OmnisharpRequest request) throws IOException {
+      synchronized (stdInLock) {
+        processWrapper.writeLnStdIn(request::writeTo);
+      }
+    }
+
+    public synchronized OptionalLong residentSetSize() {
+      return processWrapper != null ? processWrapper.residentSetSize() : OptionalLong.empty();
+    }
+
     public void waitForStop() throws InterruptedException, ExecutionException {
       this.processWrapper.waitForProcessToEndOrKill(1, TimeUnit.SECONDS);
       terminationFuture.get();
     }
   }
 
-  private final ServerStateMachine stateMachine = new ServerStateMachine();
+  /**
+   * The OmniSharp processes serving requests. There is more than one process only in pool mode, where each process loads a shard
+   * of the solution.
+   */
+  private static class ServerPool {
+    private final List<ServerStateMachine> stateMachines;
+
+    /**
+     * In pool mode, directory of each project with the index of the process that loaded it. Deepest directories first, so that the
+     * first match is the project owning a file. Replaced as a whole when projects are added, since it is read without lock.
+     */
+    private volatile List<Map.Entry<Path, Integer>> projectOwners;
+
+    /**
+     * Projects of the solution loaded by the processes, including the ones added incrementally since. <code>null</code> if the solution
+     * is not known, when OmniSharp looks for it by itself.
+     */
+    @Nullable
+    private final Set<Path> solutionProjects;
+
+    /**
+     * <code>null</code> if the projects to be loaded are not known in advance.
+     */
+    @Nullable
+    private final ProjectLoadState projectLoadState;
+
+    /**
+     * Owned by the pool rather than by the shared server, so that a send to a pool being replaced is never recorded for its replacement.
+     */
+    private final BufferLedger buffers = new BufferLedger();
+
+    /**
+     * Code checks sent to the pool and not completed yet, so that the pool is not recycled or stopped while it is analyzing files.
+     */
+    private final AtomicInteger pendingCodeChecks = new AtomicInteger();
 
-  private Path cachedProjectBaseDir;
-  private Path cachedDotnetCliPath;
-  private Path cachedMonoPath;
-  private Path cachedMsBuildPath;
-  private Path cachedSolutionPath;
-  private boolean cachedUseNet6;
-  private boolean cachedLoadProjectsOnDemand;
+    private ServerPool(List<ServerStateMachine> stateMachines, List<Map.Entry<Path, Integer>> projectOwners, @Nullable Set<Path> solutionProjects,
+      @Nullable ProjectLoadState projectLoadState) {
+      this.stateMachines = List.copyOf(stateMachines);
+      this.projectOwners = List.copyOf(projectOwners);
+      this.solutionProjects = solutionProjects;
+      this.projectLoadState = projectLoadState;
+    }
+
+    private static ServerPool notStarted() {
+      return new ServerPool(List.of(new ServerStateMachine()), List.of(), null, null);
+    }
+
+    private boolean isStopped() {
+      return stateMachines.stream().allMatch(ServerStateMachine::isStopped);
+    }
+
+    /**
+     * In pool mode, a process may have died while the others are still running.
+     */
+    private boolean isPartiallyStopped() {
+      return !isStopped() && stateMachines.stream().anyMatch(ServerStateMachine::isStopped);
+    }
+
+    private boolean isOmnisharpStarted() {
+      return stateMachines.stream().allMatch(ServerStateMachine::isOmnisharpStarted);
+    }
+
+    private List<ServerStateMachine> running() {
+      List<ServerStateMachine> running = new ArrayList<>();
+      stateMachines.stream().filter(s -> !s.isStopped()).forEach(running::add);
+      return running;
+    }
+
+    private int getProcessIndex(File file) {
+      List<Map.Entry<Path, Integer>> owners = projectOwners;
+      if (owners.isEmpty()) {
+        return 0;
+      }
+      Path path = file.toPath().toAbsolutePath().normalize();
+      for (Map.Entry<Path, Integer> owner : owners) {
+        if (path.startsWith(owner.getKey())) {
+          return owner.getValue();
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * Register projects added to the solution after the processes were started, so that their files are routed to the process that
+     * loads them, and so that the analysis waits for them to be loaded. To be called with the lock of the server held.
+     */
+    private void addProjects(List<Path> projects) {
+      if (projectLoadState != null) {
+        projectLoadState.addProjects(projects);
+      }
+      addOwners(projects);
+    }
+
+    /**
+     * Assign the projects without an owner to a process. To be called with the lock of the server held.
+     */
+    private void addOwners(List<Path> projects) {
+      if (projectOwners.isEmpty()) {
+        return;
+      }
+      List<Map.Entry<Path, Integer>> owners = new ArrayList<>(projectOwners);
+      for (Path project : projects) {
+        // A project created before being added to the solution keeps its owner
+        if (owners.stream().noneMatch(o -> o.getKey().equals(project.getParent()))) {
+          owners.add(new AbstractMap.SimpleImmutableEntry<>(project.getParent(), chooseOwner(project, owners)));
+        }
+      }
+      owners.sort(Comparator.comparingInt((Map.Entry<Path, Integer> e) -> e.getKey().getNameCount()).reversed());
+      projectOwners = List.copyOf(owners);
+    }
+
+    /**
+     * @return the process that already loaded a project referenced by the new one, since it would load it again otherwise, or else
+     * the process owning the fewest projects
+     */
+    private int chooseOwner(Path project, List<Map.Entry<Path, Integer>> owners) {
+      for (Path reference : SolutionShards.readProjectReferences(project)) {
+        for (Map.Entry<Path, Integer> owner : owners) {
+          if (owner.getKey().equals(reference.getParent())) {
+            return owner.getValue();
+          }
+        }
+      }
+      int[] projectCounts = new int[stateMachines.size()];
+      owners.forEach(o -> projectCounts[o.getValue()]++);
+      int leastLoaded = 0;
+      for (int i = 1; i < projectCounts.length; i++) {
+        if (projectCounts[i] < projectCounts[leastLoaded]) {
+          leastLoaded = i;
+        }
+      }
+      return leastLoaded;
+    }
+
+    private CompletableFuture<Void> whenStarted() {
+      if (stateMachines.size() == 1) {
+        return stateMachines.get(0).startFuture;
+      }
+      return CompletableFuture.allOf(stateMachines.stream().map(s -> s.startFuture).toArray(CompletableFuture[]::new));
+    }
+
+    private CompletableFuture<Void> whenReady() {
+      if (stateMachines.size() == 1) {
+        return stateMachines.get(0).loadProjectsFuture;
+      }
+      return CompletableFuture.allOf(stateMachines.stream().map(s -> s.loadProjectsFuture).toArray(CompletableFuture[]::new));
+    }
+  }
+
+  /**
+   * Settings that require a dedicated OmniSharp server. Modules using the same settings share the server.
+   */
+  static final class ServerKey {
+    private final Path projectBaseDir;
+    @Nullable
+    private final Path dotnetCliPath;
+    @Nullable
+    private final Path monoPath;
+    @Nullable
+    private final Path msBuildPath;
+    @Nullable
+    private final Path solutionPath;
+    private final boolean useNet6;
+    private final boolean loadProjectsOnDemand;
+    private final int poolSize;
+    /**
+     * Environment of the processes, set when they are started.
+     */
+    @Nullable
+    private final OmnisharpCommandBuilder.RuntimeProfile runtimeProfile;
+    private final long heapHardLimitMb;
+    /**
+     * The configuration of the rules is global to an OmniSharp process, so modules with different rules can't share it.
+     */
+    @Nullable
+    private final String rulesConfigHash;
+
+    ServerKey(Path projectBaseDir, @Nullable Path dotnetCliPath, @Nullable Path monoPath, @Nullable Path msBuildPath, @Nullable Path solutionPath,
+      boolean useNet6, boolean loadProjectsOnDemand, int poolSize, @Nullable OmnisharpCommandBuilder.RuntimeProfile runtimeProfile, long heapHardLimitMb,
+      @Nullable String rulesConfigHash) {
+      this.projectBaseDir = projectBaseDir;
+      this.dotnetCliPath = dotnetCliPath;
+      this.monoPath = monoPath;
+      this.msBuildPath = msBuildPath;
+      this.solutionPath = solutionPath;
+      this.useNet6 = useNet6;
+      this.loadProjectsOnDemand = loadProjectsOnDemand;
+      this.poolSize = poolSize;
+      this.runtimeProfile = runtimeProfile;
+      this.heapHardLimitMb = heapHardLimitMb;
+      this.rulesConfigHash = rulesConfigHash;
+    }
+
+    private void logDifferences(ServerKey other) {
+      logIfDifferent(projectBaseDir, other.projectBaseDir, "project basedir");
+      logIfDifferent(dotnetCliPath, other.dotnetCliPath, "dotnet CLI path");
+      logIfDifferent(monoPath, other.monoPath, "Mono location");
+      logIfDifferent(msBuildPath, other.msBuildPath, "MSBuild path");
+      logIfDifferent(solutionPath, other.solutionPath, "solution path");
+      logIfDifferent(useNet6, other.useNet6, "flavor of OmniSharp");
+      logIfDifferent(loadProjectsOnDemand, other.loadProjectsOnDemand, "load projects on demand setting");
+      logIfDifferent(poolSize, other.poolSize, "server pool size");
+      logIfDifferent(runtimeProfile, other.runtimeProfile, "runtime profile");
+      logIfDifferent(heapHardLimitMb, other.heapHardLimitMb, "heap hard limit");
+      logIfDifferent(rulesConfigHash, other.rulesConfigHash, "configuration of the rules");
+    }
+
+    private static void logIfDifferent(@Nullable Object oldValue, @Nullable Object newValue, String label) {
+      if (!Objects.equals(oldValue, newValue)) {
+        LOG.info("Using a different {}, OmniSharp has to be restarted", label);
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ServerKey other = (ServerKey) o;
+      return useNet6 == other.useNet6
+        && loadProjectsOnDemand == other.loadProjectsOnDemand
+        && poolSize == other.poolSize
+        && heapHardLimitMb == other.heapHardLimitMb
+        && runtimeProfile == other.runtimeProfile
+        && projectBaseDir.equals(other.projectBaseDir)
+        && Objects.equals(dotnetCliPath, other.dotnetCliPath)
+        && Objects.equals(monoPath, other.monoPath)
+        && Objects.equals(msBuildPath, other.msBuildPath)
+        && Objects.equals(solutionPath, other.solutionPath)
+        && Objects.equals(rulesConfigHash, other.rulesConfigHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(projectBaseDir, dotnetCliPath, monoPath, msBuildPath, solutionPath, useNet6, loadProjectsOnDemand, poolSize, runtimeProfile,
+        heapHardLimitMb, rulesConfigHash);
+    }
+  }
+
+  /**
+   * The OmniSharp processes of a {@link ServerKey}, with what is known about their state. Shared by the controllers of all the modules
+   * using the same key, and guarded by its own monitor.
+   */
+  static final class SharedServer {
+    @Nullable
+    private final ServerKey key;
+
+    private volatile ServerPool pool = ServerPool.notStarted();
+
+    /**
+     * Replacement processes being started by a warm restart, while requests are still sent to the current pool.
+     */
+    @Nullable
+    private ServerPool standbyPool;
+
+    /**
+     * Processes replaced by a warm restart, waiting for the requests already sent to them to complete.
+     */
+    private final List<ServerPool> retiringPools = new CopyOnWriteArrayList<>();
+
+    @Nullable
+    private Path shardsDir;
+
+    private int startupTimeoutSec;
+    private int loadProjectsTimeoutSec;
+
+    /**
+     * Maximum resident set size of one process before OmniSharp is recycled, disabled if not positive.
+     */
+    private long memoryLimit;
+
+    /**
+     * Last <code>/sonarlint/config</code> sent to the processes, sent again to the replacement processes of a warm restart.
+     */
+    @Nullable
+    private JsonObject config;
+
+    SharedServer(@Nullable ServerKey key) {
+      this.key = key;
+    }
+  }
 
   private final OmnisharpEndpoints omnisharpEndpoints;
 
@@ -146,121 +464,614 @@ public class OmnisharpServerController implements Startable {
 
   private final OmnisharpCommandBuilder omnisharpCommandBuilder;
 
-  public OmnisharpServerController(OmnisharpEndpoints omnisharpEndpoints, OmnisharpResponseProcessor omnisharpResponseProcessor, OmnisharpCommandBuilder omnisharpCommandBuilder) {
+  private final OmnisharpServerRegistry serverRegistry;
+
+  @Nullable
+  private ServerKey serverKey;
+
+  /**
+   * Not registered until the first start, since the key is not known before.
+   */
+  private volatile SharedServer server = new SharedServer(null);
+
+  public OmnisharpServerController(OmnisharpEndpoints omnisharpEndpoints, OmnisharpResponseProcessor omnisharpResponseProcessor, OmnisharpCommandBuilder omnisharpCommandBuilder,
+    OmnisharpServerRegistry serverRegistry) {
     this.omnisharpEndpoints = omnisharpEndpoints;
     this.omnisharpResponseProcessor = omnisharpResponseProcessor;
     this.omnisharpCommandBuilder = omnisharpCommandBuilder;
+    this.serverRegistry = serverRegistry;
     omnisharpEndpoints.setServer(this);
   }
 
-  public synchronized void lazyStart(Path projectBaseDir, boolean useNet6, boolean loadProjectsOnDemand, @Nullable Path dotnetCliPath, @Nullable Path monoPath,
+  public void lazyStart(Path projectBaseDir, boolean useNet6, boolean loadProjectsOnDemand, @Nullable Path dotnetCliPath, @Nullable Path monoPath,
     @Nullable Path msBuildPath,
     @Nullable Path solutionPath, int serverStartupTimeoutSec, int loadProjectsTimeoutSec)
     throws InterruptedException {
-    AtomicBoolean shouldRestart = new AtomicBoolean(false);
-    this.cachedProjectBaseDir = checkIfRestartRequired(cachedProjectBaseDir, projectBaseDir, "project basedir", shouldRestart);
-    this.cachedDotnetCliPath = checkIfRestartRequired(cachedDotnetCliPath, dotnetCliPath, "dotnet CLI path", shouldRestart);
-    this.cachedMonoPath = checkIfRestartRequired(cachedMonoPath, monoPath, "Mono location", shouldRestart);
-    this.cachedMsBuildPath = checkIfRestartRequired(cachedMsBuildPath, msBuildPath, "MSBuild path", shouldRestart);
-    this.cachedSolutionPath = checkIfRestartRequired(cachedSolutionPath, solutionPath, "solution path", shouldRestart);
-    this.cachedUseNet6 = checkIfRestartRequired(cachedUseNet6, useNet6, "flavor of OmniSharp", shouldRestart);
-    this.cachedLoadProjectsOnDemand = checkIfRestartRequired(cachedLoadProjectsOnDemand, loadProjectsOnDemand, "load projects on demand setting", shouldRestart);
-    if (shouldRestart.get()) {
-      stopServer();
-    }
-    if (stateMachine.isStopped()) {
-      startServer(serverStartupTimeoutSec, loadProjectsTimeoutSec);
-    }
+    lazyStart(projectBaseDir, useNet6, loadProjectsOnDemand, dotnetCliPath, monoPath, msBuildPath, solutionPath, serverStartupTimeoutSec, loadProjectsTimeoutSec, 1);
+  }
+
+  public void lazyStart(Path projectBaseDir, boolean useNet6, boolean loadProjectsOnDemand, @Nullable Path dotnetCliPath, @Nullable Path monoPath,
+    @Nullable Path msBuildPath,
+    @Nullable Path solutionPath, int serverStartupTimeoutSec, int loadProjectsTimeoutSec, int poolSize)
+    throws InterruptedException {
+    lazyStart(projectBaseDir, useNet6, loadProjectsOnDemand, dotnetCliPath, monoPath, msBuildPath, solutionPath, serverStartupTimeoutSec, loadProjectsTimeoutSec, poolSize,
+      null);
+  }
+
+  /**
+   * Blocking variant of {@link #lazyStartAsync}.
+   */
+  public void lazyStart(Path projectBaseDir, boolean useNet6, boolean loadProjectsOnDemand, @Nullable Path dotnetCliPath, @Nullable Path monoPath,
+    @Nullable Path msBuildPath,
+    @Nullable Path solutionPath, int serverStartupTimeoutSec, int loadProjectsTimeoutSec, int poolSize, @Nullable String rulesConfigHash)
+    throws InterruptedException {
     try {
-      stateMachine.startFuture.get();
+      lazyStartAsync(projectBaseDir, useNet6, loadProjectsOnDemand, dotnetCliPath, monoPath, msBuildPath, solutionPath, serverStartupTimeoutSec, loadProjectsTimeoutSec,
+        poolSize, rulesConfigHash).get();
     } catch (ExecutionException e) {
       if (e.getCause() instanceof TimeoutException) {
         throw new IllegalStateException("Timeout waiting for Omnisharp server to start");
       }
       throw new IllegalStateException("Unable to start the Omnisharp server: " + e.getCause().getMessage(), e.getCause());
+    } catch (CancellationException e) {
+      throw new IllegalStateException("OmniSharp was stopped while starting", e);
+    }
+  }
+
+  /**
+   * Start the OmniSharp processes if they are not running yet, without waiting for OmniSharp to be started. The lifecycle lock is only held
+   * while the processes are launched, so that a slow startup doesn't block requests, file events and stop requests coming from other threads.
+   * If another module already started a server with the same settings, it is reused instead of starting new processes.
+   *
+   * @param poolSize when greater than 1 and a solution is provided, the projects of the solution are split between up to
+   *                 <code>poolSize</code> OmniSharp processes
+   * @param rulesConfigHash hash of the <code>/sonarlint/config</code> the module will send, so that modules with different rules
+   *                 don't share the processes
+   * @return a future completed once OmniSharp is started, see {@link #whenReady()} to wait for the projects to be loaded
+   */
+  public CompletableFuture<Void> lazyStartAsync(Path projectBaseDir, boolean useNet6, boolean loadProjectsOnDemand, @Nullable Path dotnetCliPath,
+    @Nullable Path monoPath, @Nullable Path msBuildPath, @Nullable Path solutionPath, int serverStartupTimeoutSec, int loadProjectsTimeoutSec, int poolSize,
+    @Nullable String rulesConfigHash) {
+    SharedServer s = share(new ServerKey(projectBaseDir, dotnetCliPath, monoPath, msBuildPath, solutionPath, useNet6, loadProjectsOnDemand, poolSize,
+      omnisharpCommandBuilder.getRuntimeProfile(), omnisharpCommandBuilder.getHeapHardLimitMb(), rulesConfigHash));
+    synchronized (s) {
+      s.startupTimeoutSec = serverStartupTimeoutSec;
+      s.loadProjectsTimeoutSec = loadProjectsTimeoutSec;
+      if (s.pool.isPartiallyStopped()) {
+        stopServer(s);
+      }
+      if (s.pool.isStopped()) {
+        startServer(s);
+      }
+      return s.pool.whenStarted();
     }
+  }
 
+  /**
+   * Release the server used so far if the settings changed, stopping it if no other module uses it, and get the one for the new settings.
+   */
+  private synchronized SharedServer share(ServerKey key) {
+    if (!key.equals(serverKey)) {
+      if (serverKey != null) {
+        if (isOmnisharpStarted()) {
+          serverKey.logDifferences(key);
+        }
+        if (serverRegistry.release(serverKey, this)) {
+          // Still the current server, so that the stop request is sent to it
+          stopServer(server);
+        }
+      }
+      serverKey = key;
+      server = serverRegistry.acquire(key, this);
+    }
+    return server;
   }
 
   public CompletableFuture<Void> whenReady() {
-    return stateMachine.loadProjectsFuture;
+    return server.pool.whenReady();
+  }
+
+  public boolean isOmnisharpStarted() {
+    return server.pool.isOmnisharpStarted();
+  }
+
+  /**
+   * @return the load state of each project of the solution, or <code>null</code> if the projects to be loaded are not known in advance
+   * (solution not provided, or projects loaded on demand)
+   */
+  @CheckForNull
+  ProjectLoadState getProjectLoadState() {
+    return server.pool.projectLoadState;
+  }
+
+  /**
+   * @return the number of OmniSharp processes that will receive a request sent to all processes
+   */
+  public int getRunningProcessCount() {
+    return server.pool.running().size();
+  }
+
+  /**
+   * @return the index of the OmniSharp process that loaded the project of the file, 0 if there is a single process or no project owns the file
+   */
+  public int getProcessIndex(File file) {
+    return server.pool.getProcessIndex(file);
+  }
+
+  private void startServer(SharedServer s) {
+    s.pool = startPool(s);
+    warmUpWhenReady(s, s.pool);
+  }
+
+  /**
+   * Compile the projects in the background once they are loaded, so that the first analysis doesn't pay for it. OmniSharp reports
+   * the solution as loaded with its first project, so when the projects are known, the warm-up waits for all of them.
+   */
+  private void warmUpWhenReady(SharedServer s, ServerPool started) {
+    ProjectLoadState projectLoadState = started.projectLoadState;
+    CompletableFuture<Void> loaded = projectLoadState != null ? started.whenReady().thenCompose(r -> projectLoadState.whenFullyLoaded()) : started.whenReady();
+    loaded.thenRunAsync(() -> {
+      if (server == s && s.pool == started) {
+        omnisharpEndpoints.warmUp();
+      }
+    });
+  }
+
+  private ServerPool startPool(SharedServer s) {
+    ServerKey key = Objects.requireNonNull(s.key);
+    // Read before starting the processes, so that later changes to the solution are detected
+    Set<Path> solutionProjects = readSolutionProjects(key.solutionPath);
+    // With projects loaded on demand, OmniSharp only loads a project when one of its files is requested
+    ProjectLoadState projectLoadState = solutionProjects != null && !key.loadProjectsOnDemand ? new ProjectLoadState(solutionProjects) : null;
+    List<SolutionShards.Shard> shards = splitSolution(s);
+    List<ServerStateMachine> started = new ArrayList<>();
+    List<Map.Entry<Path, Integer>> owners = new ArrayList<>();
+    if (shards.isEmpty()) {
+      started.add(startProcess(s, key.solutionPath, projectLoadState));
+    } else {
+      LOG.info("Splitting the solution between {} OmniSharp processes", shards.size());
+      for (int i = 0; i < shards.size(); i++) {
+        SolutionShards.Shard shard = shards.get(i);
+        started.add(startProcess(s, shard.getSolutionFilter(), projectLoadState));
+        for (Path projectDir : shard.getProjectDirs()) {
+          owners.add(new AbstractMap.SimpleImmutableEntry<>(projectDir, i));
+        }
+      }
+      owners.sort(Comparator.comparingInt((Map.Entry<Path, Integer> e) -> e.getKey().getNameCount()).reversed());
+    }
+    return new ServerPool(started, owners, solutionProjects, projectLoadState);
+  }
+
+  @CheckForNull
+  private static Set<Path> readSolutionProjects(@Nullable Path solutionPath) {
+    if (solutionPath == null || !solutionPath.toString().endsWith(".sln")) {
+      return null;
+    }
+    try {
+      Path solutionDir = solutionPath.toAbsolutePath().normalize().getParent();
+      Set<Path> projects = new HashSet<>();
+      SolutionShards.readProjects(solutionPath).forEach(p -> projects.add(solutionDir.resolve(p.replace('\\', '/')).normalize()));
+      return projects;
+    } catch (IOException e) {
+      LOG.debug("Unable to read the projects of the solution", e);
+      return null;
+    }
   }
 
-  private <G> G checkIfRestartRequired(@Nullable G oldValue, @Nullable G newValue, String label, AtomicBoolean shouldRestart) {
-    if (stateMachine.isOmnisharpStarted() && !Objects.equals(oldValue, newValue)) {
-      shouldRestart.set(true);
-      LOG.info("Using a different {}, OmniSharp has to be restarted", label);
+  /**
+   * Compare the projects of a modified solution with the ones loaded by the running server, so that added projects can be loaded
+   * incrementally instead of restarting the server. The added projects are registered with the running server: in pool mode, each
+   * one is assigned to the process that will receive the <code>/filesChanged</code> request for its project file.
+   *
+   * @return the projects added to the solution, or <code>null</code> if the change can't be applied to the running server (unknown
+   * solution, removed or moved projects, restart in progress)
+   */
+  @CheckForNull
+  public List<File> projectsAddedToSolution(Path solution) {
+    SharedServer s = server;
+    synchronized (s) {
+      ServerPool current = s.pool;
+      Path solutionPath = s.key != null ? s.key.solutionPath : null;
+      if (s.standbyPool != null || current.solutionProjects == null || solutionPath == null
+        || !solutionPath.toAbsolutePath().normalize().equals(solution.toAbsolutePath().normalize())) {
+        return null;
+      }
+      Set<Path> modifiedProjects = readSolutionProjects(solution);
+      if (modifiedProjects == null || !modifiedProjects.containsAll(current.solutionProjects)) {
+        return null;
+      }
+      List<Path> added = new ArrayList<>();
+      for (Path project : modifiedProjects) {
+        if (current.solutionProjects.add(project)) {
+          added.add(project);
+        }
+      }
+      current.addProjects(added);
+      return added.stream().map(Path::toFile).collect(toList());
     }
-    return newValue;
   }
 
-  public boolean isOmnisharpStarted() {
-    return stateMachine.isOmnisharpStarted();
+  /**
+   * Assign a created project to a process of the pool, the same one that will load it if it is later added to the solution, so that
+   * the <code>/filesChanged</code> request for the project file and the files of the project are routed to the process owning it.
+   */
+  public void projectCreated(Path project) {
+    SharedServer s = server;
+    synchronized (s) {
+      if (s.standbyPool == null) {
+        s.pool.addOwners(List.of(project.toAbsolutePath().normalize()));
+      }
+    }
+  }
+
+  private List<SolutionShards.Shard> splitSolution(SharedServer s) {
+    ServerKey key = Objects.requireNonNull(s.key);
+    if (key.poolSize < 2 || key.solutionPath == null || !key.solutionPath.toString().endsWith(".sln")) {
+      return List.of();
+    }
+    try {
+      if (s.shardsDir == null) {
+        s.shardsDir = Files.createTempDirectory("omnisharp-shards");
+        s.shardsDir.toFile().deleteOnExit();
+      }
+      List<SolutionShards.Shard> shards = SolutionShards.split(key.solutionPath, key.poolSize, s.shardsDir);
+      shards.forEach(shard -> shard.getSolutionFilter().toFile().deleteOnExit());
+      return shards;
+    } catch (IOException e) {
+      LOG.warn("Unable to split the solution, using a single OmniSharp process", e);
+      return List.of();
+    }
   }
 
-  private void startServer(int serverStartupTimeoutSec, int loadProjectsTimeoutSec) {
+  private ServerStateMachine startProcess(SharedServer s, @Nullable Path solutionPath, @Nullable ProjectLoadState projectLoadState) {
+    ServerKey key = Objects.requireNonNull(s.key);
+    var stateMachine = new ServerStateMachine();
     var startFuture = new CompletableFuture<Void>()
-      .orTimeout(serverStartupTimeoutSec, TimeUnit.SECONDS);
+      .orTimeout(s.startupTimeoutSec, TimeUnit.SECONDS);
     var loadProjectsFuture = new CompletableFuture<Void>()
-      .orTimeout(loadProjectsTimeoutSec, TimeUnit.SECONDS);
+      .orTimeout(s.loadProjectsTimeoutSec, TimeUnit.SECONDS);
     ProcessBuilder processBuilder;
-    if (cachedUseNet6) {
-      processBuilder = omnisharpCommandBuilder.buildNet6(cachedProjectBaseDir, cachedDotnetCliPath, cachedMsBuildPath, cachedSolutionPath, cachedLoadProjectsOnDemand);
+    if (key.useNet6) {
+      processBuilder = omnisharpCommandBuilder.buildNet6(key.projectBaseDir, key.dotnetCliPath, key.msBuildPath, solutionPath, key.loadProjectsOnDemand);
     } else {
-      processBuilder = omnisharpCommandBuilder.build(cachedProjectBaseDir, cachedMonoPath, cachedMsBuildPath, cachedSolutionPath, cachedLoadProjectsOnDemand);
+      processBuilder = omnisharpCommandBuilder.build(key.projectBaseDir, key.monoPath, key.msBuildPath, solutionPath, key.loadProjectsOnDemand);
     }
 
     LOG.info("Starting OmniSharp...");
     LOG.debug(processBuilder.command().stream().collect(joining(" ")));
     try {
       var startedProcess = ProcessWrapper.start(processBuilder,
-        s -> omnisharpResponseProcessor.handleOmnisharpOutput(startFuture, loadProjectsFuture, s), LOG::error);
-      stateMachine.processStarted(startedProcess, startFuture, loadProjectsFuture, cachedLoadProjectsOnDemand);
+        line -> omnisharpResponseProcessor.handleOmnisharpOutput(startFuture, loadProjectsFuture, project -> {
+          if (projectLoadState != null) {
+            projectLoadState.projectLoaded(project);
+          }
+        }, line), LOG::error);
+      stateMachine.processStarted(startedProcess, startFuture, loadProjectsFuture, key.loadProjectsOnDemand);
     } catch (IOException e) {
       LOG.warn("Unable to start OmniSharp", e);
       stateMachine.processStartFailed(e);
     }
+    return stateMachine;
   }
 
-  @Override
-  public void start() {
-    // Nothing to do
+  /**
+   * Start replacement processes in the background, to take into account changes to the solution. Requests are still sent to the current
+   * processes until the replacement has loaded the projects, then the switch is atomic. If the server is not started, the restart is
+   * left to the next analysis.
+   */
+  public void restartInBackground() {
+    restartInBackground(server);
   }
 
-  @Override
-  public void stop() {
-    stopServer();
+  private void restartInBackground(SharedServer s) {
+    synchronized (s) {
+      if (!s.pool.isOmnisharpStarted()) {
+        stopServer(s);
+        return;
+      }
+      if (s.standbyPool != null) {
+        LOG.debug("Discarding the previous OmniSharp replacement, it is already outdated");
+        discard(s.standbyPool);
+      }
+      LOG.info("Restarting OmniSharp in the background");
+      ServerPool standby = startPool(s);
+      s.standbyPool = standby;
+      standby.whenReady().whenCompleteAsync((r, t) -> {
+        if (t != null) {
+          switchTo(s, standby, null, t);
+        } else {
+          configure(s, standby);
+        }
+      });
+    }
+  }
+
+  /**
+   * Send the last configuration to the replacement processes, since code checks would find no issue without the active rules.
+   */
+  private void configure(SharedServer s, ServerPool standby) {
+    JsonObject config;
+    synchronized (s) {
+      config = s.config;
+    }
+    CompletableFuture<Void> configured = config != null ? sendConfig(standby, config) : CompletableFuture.completedFuture(null);
+    configured.whenCompleteAsync((r, t) -> switchTo(s, standby, config, t));
   }
 
-  public synchronized void stopServer() {
-    if (!stateMachine.isStopped()) {
+  private CompletableFuture<Void> sendConfig(ServerPool pool, JsonObject config) {
+    List<ServerStateMachine> running = pool.running();
+    long id = omnisharpResponseProcessor.nextRequestId();
+    OmnisharpRequest request = new OmnisharpRequest(id, OmnisharpEndpoints.CONFIG_COMMAND, w -> GSON.toJson(config, w));
+    CompletableFuture<Void> response = omnisharpResponseProcessor.registerResponseHandler(id, null, running.size())
+      .orTimeout(CONFIG_TIMEOUT_MIN, TimeUnit.MINUTES)
+      .thenAccept(r -> {
+        if (!r.isSuccess()) {
+          throw new IllegalStateException("Unable to configure OmniSharp: " + r.getMessage());
+        }
+      });
+    response.whenComplete((r, t) -> omnisharpResponseProcessor.removeResponseHandler(id));
+    try {
+      for (ServerStateMachine stateMachine : running) {
+        stateMachine.writeLnStdIn(request);
+      }
+    } catch (IOException e) {
+      omnisharpResponseProcessor.removeResponseHandler(id);
+      return CompletableFuture.failedFuture(e);
+    }
+    return response;
+  }
+
+  /**
+   * Remember the configuration sent to the processes, so that it is sent again to the replacement processes of a warm restart.
+   */
+  public void configSent(JsonObject config) {
+    SharedServer s = server;
+    synchronized (s) {
+      s.config = config;
+    }
+  }
+
+  /**
+   * To be called when a code check is about to be sent, and the returned callback once it completed, so that the processes analyzing
+   * the file are not recycled or retired in the meantime.
+   */
+  public Runnable codeCheckStarted() {
+    ServerPool current = server.pool;
+    current.pendingCodeChecks.incrementAndGet();
+    return current.pendingCodeChecks::decrementAndGet;
+  }
+
+  /**
+   * Recycle OmniSharp with a restart in the background if one of its processes uses more memory than allowed. Nothing is done if the
+   * memory usage can't be measured on this OS, or if a restart is already in progress.
+   *
+   * @return <code>true</code> if a restart was triggered
+   */
+  public boolean recycleIfMemoryAbove(long maxResidentSetSize) {
+    return recycleIfMemoryAbove(server, maxResidentSetSize);
+  }
+
+  /**
+   * Set the memory limit of the server used by this module, see {@link #recycleIfMemoryAboveLimit()}. The server being shared, the last
+   * module to set it wins, like for the timeouts.
+   *
+   * @param maxResidentSetSize disabled if not positive
+   */
+  public void setMemoryLimit(long maxResidentSetSize) {
+    SharedServer s = server;
+    synchronized (s) {
+      s.memoryLimit = maxResidentSetSize;
+    }
+  }
+
+  /**
+   * Same as {@link #recycleIfMemoryAbove(long)}, with the limit set by {@link #setMemoryLimit(long)}.
+   *
+   * @return <code>true</code> if a restart was triggered
+   */
+  boolean recycleIfMemoryAboveLimit() {
+    SharedServer s = server;
+    long limit;
+    synchronized (s) {
+      limit = s.memoryLimit;
+    }
+    return limit > 0 && recycleIfMemoryAbove(s, limit);
+  }
+
+  private boolean recycleIfMemoryAbove(SharedServer s, long maxResidentSetSize) {
+    synchronized (s) {
+      if (!s.pool.isOmnisharpStarted() || s.standbyPool != null) {
+        return false;
+      }
+      if (s.pool.pendingCodeChecks.get() > 0) {
+        LOG.debug("Not recycling OmniSharp while code checks are pending");
+        return false;
+      }
+      long used = s.pool.running().stream()
+        .map(ServerStateMachine::residentSetSize)
+        .filter(OptionalLong::isPresent)
+        .mapToLong(OptionalLong::getAsLong)
+        .max()
+        .orElse(0);
+      if (used <= maxResidentSetSize) {
+        return false;
+      }
+      LOG.info("OmniSharp uses {} MB of memory, more than the {} MB allowed, recycling it", used / MEGABYTE, maxResidentSetSize / MEGABYTE);
+      restartInBackground(s);
+      return true;
+    }
+  }
+
+  private void switchTo(SharedServer s, ServerPool standby, @Nullable JsonObject sentConfig, @Nullable Throwable error) {
+    synchronized (s) {
+      if (s.standbyPool != standby) {
+        // Replaced by a more recent restart, or the server was stopped
+        return;
+      }
+      if (error == null && s.config != sentConfig) {
+        // The configuration changed while the replacement was being configured
+        configure(s, standby);
+        return;
+      }
+      s.standbyPool = null;
+      if (error != null) {
+        LOG.warn("Unable to restart OmniSharp in the background, it will be restarted during the next analysis", error);
+        discard(standby);
+        stopServer(s);
+        return;
+      }
+      ServerPool previous = s.pool;
+      s.pool = standby;
+      LOG.info("OmniSharp restarted");
+      warmUpWhenReady(s, standby);
+      s.retiringPools.add(previous);
+      CompletableFuture.runAsync(() -> retire(s, previous), CompletableFuture.delayedExecutor(RETIRE_DELAY_SEC, TimeUnit.SECONDS));
+    }
+  }
+
+  private static void retire(SharedServer s, ServerPool previous) {
+    if (previous.pendingCodeChecks.get() > 0 && s.retiringPools.contains(previous)) {
+      // Still analyzing files, checked again later
+      CompletableFuture.runAsync(() -> retire(s, previous), CompletableFuture.delayedExecutor(RETIRE_DELAY_SEC, TimeUnit.SECONDS));
+      return;
+    }
+    if (s.retiringPools.remove(previous)) {
+      discard(previous);
+    }
+  }
+
+  /**
+   * Stop processes that are not the target of requests anymore, so {@link OmnisharpEndpoints#stopServer()} can't be used.
+   */
+  private static void discard(ServerPool discarded) {
+    List<ServerStateMachine> running = discarded.running();
+    for (ServerStateMachine stateMachine : running) {
       stateMachine.stopping();
-      LOG.info("Stopping OmniSharp");
-      omnisharpEndpoints.stopServer();
+      try {
+        stateMachine.writeLnStdIn(new OmnisharpRequest(0, "/stopserver", null));
+      } catch (IOException e) {
+        LOG.debug("Unable to write in Omnisharp stdin", e);
+      }
+    }
+    for (ServerStateMachine stateMachine : running) {
       try {
         stateMachine.waitForStop();
-        LOG.info("OmniSharp stopped");
       } catch (InterruptedException e) {
         LOG.debug("Interrupted!", e);
         Thread.currentThread().interrupt();
       } catch (ExecutionException e) {
-        LOG.error("Could not stop Omnisharp properly", e);
-        throw new IllegalStateException("Could not stop Omnisharp properly", e.getCause());
+        LOG.debug("Could not stop Omnisharp properly", e);
       }
     }
   }
 
-  public synchronized boolean writeRequestOnStdIn(String str) {
-    if (stateMachine.isStopped()) {
-      LOG.debug("Server stopped, ignoring request");
-      return false;
+  /**
+   * @return the buffers sent to the current OmniSharp processes. Once OmniSharp is restarted, the returned ledger is not the current one
+   * anymore, see {@link #isCurrent(BufferLedger)}.
+   */
+  BufferLedger getBuffers() {
+    return server.pool.buffers;
+  }
+
+  /**
+   * @return <code>false</code> if OmniSharp was restarted since the ledger was taken, so that requests sent in the meantime may have been
+   * received by the new processes
+   */
+  boolean isCurrent(BufferLedger buffers) {
+    return server.pool.buffers == buffers;
+  }
+
+  /**
+   * To be called when OmniSharp may have reloaded the file by itself, so that the next update sends the full contents.
+   */
+  public void forgetBuffer(Path file) {
+    getBuffers().forget(file);
+  }
+
+  @Override
+  public void start() {
+    // Nothing to do
+  }
+
+  /**
+   * The server is only stopped if no other module uses it.
+   */
+  @Override
+  public synchronized void stop() {
+    if (serverKey != null) {
+      boolean lastUser = serverRegistry.release(serverKey, this);
+      serverKey = null;
+      if (!lastUser) {
+        server = new SharedServer(null);
+        return;
+      }
     }
-    try {
-      stateMachine.processWrapper.writeLnStdIn(str);
-      return true;
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to write in Omnisharp stdin", e);
+    stopServer(server);
+  }
+
+  /**
+   * Stop the server, also for the other modules using it. It will be restarted by the next analysis.
+   */
+  public void stopServer() {
+    stopServer(server);
+  }
+
+  private void stopServer(SharedServer s) {
+    synchronized (s) {
+      if (s.standbyPool != null) {
+        discard(s.standbyPool);
+        s.standbyPool = null;
+      }
+      for (ServerPool retiring : s.retiringPools) {
+        if (s.retiringPools.remove(retiring)) {
+          discard(retiring);
+        }
+      }
+      List<ServerStateMachine> running = s.pool.running();
+      if (!running.isEmpty()) {
+        running.forEach(ServerStateMachine::stopping);
+        LOG.info("Stopping OmniSharp");
+        omnisharpEndpoints.stopServer();
+        try {
+          for (ServerStateMachine stateMachine : running) {
+            stateMachine.waitForStop();
+          }
+          LOG.info("OmniSharp stopped");
+        } catch (InterruptedException e) {
+          LOG.debug("Interrupted!", e);
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          LOG.error("Could not stop Omnisharp properly", e);
+          throw new IllegalStateException("Could not stop Omnisharp properly", e.getCause());
+        }
+      }
+    }
+  }
+
+  /**
+   * Requests about a file are only sent to the process owning the file, others are sent to all processes. Doesn't take the lifecycle lock,
+   * so requests are not delayed by a starting or stopping server.
+   */
+  public boolean writeRequestOnStdIn(OmnisharpRequest request) {
+    ServerPool current = server.pool;
+    File file = request.getFile();
+    List<ServerStateMachine> targets = file != null ? List.of(current.stateMachines.get(current.getProcessIndex(file))) : current.stateMachines;
+    boolean written = false;
+    for (ServerStateMachine stateMachine : targets) {
+      if (stateMachine.isStopped()) {
+        continue;
+      }
+      try {
+        stateMachine.writeLnStdIn(request);
+        written = true;
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to write in Omnisharp stdin", e);
+      }
+    }
+    if (!written) {
+      LOG.debug("Server stopped, ignoring request");
     }
+    return written;
   }
 
 }
@@ -0,0 +1,88 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+import org.sonarsource.sonarlint.omnisharp.OmnisharpServerController.ServerKey;
+import org.sonarsource.sonarlint.omnisharp.OmnisharpServerController.SharedServer;
+
+import static java.util.Collections.newSetFromMap;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Keep track of the modules using each OmniSharp server, so that modules with the same settings (typically several modules of the
+ * same solution) share one server instead of each starting its own processes.
+ */
+@SonarLintSide(lifespan = SonarLintSide.MULTIPLE_ANALYSES)
+public class OmnisharpServerRegistry {
+
+  private final Map<ServerKey, Registration> registrations = new HashMap<>();
+
+  private static class Registration {
+    private final SharedServer server;
+    private final Set<OmnisharpServerController> users = newSetFromMap(new IdentityHashMap<>());
+
+    private Registration(SharedServer server) {
+      this.server = server;
+    }
+  }
+
+  synchronized SharedServer acquire(ServerKey key, OmnisharpServerController user) {
+    Registration registration = registrations.computeIfAbsent(key, k -> new Registration(new SharedServer(k)));
+    registration.users.add(user);
+    return registration.server;
+  }
+
+  /**
+   * @return true if no other module uses the server anymore, so that it has to be stopped
+   */
+  synchronized boolean release(ServerKey key, OmnisharpServerController user) {
+    Registration registration = registrations.get(key);
+    if (registration == null) {
+      return true;
+    }
+    registration.users.remove(user);
+    if (registration.users.isEmpty()) {
+      registrations.remove(key);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return one of the modules using each server, to act on the server on behalf of all of them
+   */
+  synchronized List<OmnisharpServerController> getOneUserPerServer() {
+    return registrations.values().stream()
+      .map(r -> r.users.iterator().next())
+      .collect(toList());
+  }
+
+  synchronized int getUserCount(ServerKey key) {
+    Registration registration = registrations.get(key);
+    return registration != null ? registration.users.size() : 0;
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Memory used by a process, as reported by the OS. Only supported on Linux, where it is read from <code>/proc/&lt;pid&gt;/status</code>.
+ */
+final class ProcessMemory {
+
+  private static final Logger LOG = Loggers.get(ProcessMemory.class);
+
+  private static final Path PROC = Paths.get("/proc");
+  private static final String RSS_PREFIX = "VmRSS:";
+
+  private ProcessMemory() {
+    // static only
+  }
+
+  static OptionalLong residentSetSize(long pid) {
+    return residentSetSize(PROC, pid);
+  }
+
+  static OptionalLong residentSetSize(Path procDir, long pid) {
+    Path status = procDir.resolve(Long.toString(pid)).resolve("status");
+    if (!Files.isRegularFile(status)) {
+      return OptionalLong.empty();
+    }
+    try (Stream<String> lines = Files.lines(status, StandardCharsets.UTF_8)) {
+      Optional<String> rss = lines.filter(l -> l.startsWith(RSS_PREFIX)).findFirst();
+      return rss.isPresent() ? parseKilobytes(rss.get().substring(RSS_PREFIX.length())) : OptionalLong.empty();
+    } catch (IOException | UncheckedIOException e) {
+      // The process may have exited in the meantime
+      LOG.debug("Unable to read the memory usage of process " + pid, e);
+      return OptionalLong.empty();
+    }
+  }
+
+  /**
+   * Values are formatted like <code>"  123456 kB"</code>.
+   */
+  private static OptionalLong parseKilobytes(String value) {
+    String[] parts = value.trim().split("\\s+");
+    try {
+      return OptionalLong.of(Long.parseLong(parts[0]) * 1024);
+    } catch (NumberFormatException e) {
+      return OptionalLong.empty();
+    }
+  }
+
+}
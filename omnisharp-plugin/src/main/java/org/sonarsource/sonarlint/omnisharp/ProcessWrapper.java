@@ -20,9 +20,13 @@
 package org.sonarsource.sonarlint.omnisharp;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.OptionalLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -38,9 +42,12 @@ public class ProcessWrapper {
   private final Thread stdErrThread;
   private volatile boolean terminated = false;
   private final CompletableFuture<Integer> terminationFuture = new CompletableFuture<>();
+  private final Writer stdIn;
+  private volatile boolean stdInBroken = false;
 
   private ProcessWrapper(Process p, Consumer<String> stdOutConsumer, Consumer<String> stdErrConsumer) {
     this.p = p;
+    this.stdIn = new BufferedWriter(new OutputStreamWriter(p.getOutputStream(), StandardCharsets.UTF_8));
     stdOutThread = new Thread(() -> {
       try (BufferedReader streamReader = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
         while (!terminated) {
@@ -114,9 +121,39 @@ public class ProcessWrapper {
   }
 
   public void writeLnStdIn(String str) throws IOException {
-    p.getOutputStream().write(str.getBytes(StandardCharsets.UTF_8));
-    p.getOutputStream().write("\n".getBytes(StandardCharsets.UTF_8));
-    p.getOutputStream().flush();
+    writeLnStdIn(w -> w.write(str));
+  }
+
+  /**
+   * Let the content be written directly on the buffered stdin writer, followed by a newline, then flush. A write failing halfway leaves
+   * a truncated line in the stream that would corrupt the next request, so the process is killed and later writes are refused.
+   */
+  public void writeLnStdIn(StdInContent content) throws IOException {
+    if (stdInBroken) {
+      throw new IOException("Stdin of process " + p.pid() + " is unusable after a failed write");
+    }
+    try {
+      content.writeTo(stdIn);
+      stdIn.write('\n');
+      stdIn.flush();
+    } catch (IOException | RuntimeException e) {
+      stdInBroken = true;
+      LOG.debug("Failed to write on stdin of process " + p.pid() + ", killing it");
+      p.destroyForcibly();
+      throw e;
+    }
+  }
+
+  @FunctionalInterface
+  public interface StdInContent {
+    void writeTo(Writer writer) throws IOException;
+  }
+
+  /**
+   * Physical memory currently used by the process, empty if it can't be measured on this OS.
+   */
+  public OptionalLong residentSetSize() {
+    return ProcessMemory.residentSetSize(p.pid());
   }
 
   public void destroyForcibly() {
@@ -0,0 +1,123 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.CheckForNull;
+
+/**
+ * Track which projects of the solution OmniSharp has loaded, from its project events, so that files can be analyzed as soon as their own
+ * project is loaded.
+ */
+final class ProjectLoadState {
+
+  /**
+   * Directories of the projects of the solution, deepest first, so that the first match is the project owning a file.
+   */
+  private final List<Path> projectDirs = new ArrayList<>();
+  private final Set<Path> loadedProjectDirs = new HashSet<>();
+  private CompletableFuture<Void> changed = new CompletableFuture<>();
+
+  ProjectLoadState(Collection<Path> projects) {
+    addProjects(projects);
+  }
+
+  /**
+   * Track projects added to the solution after OmniSharp was started. They are considered not loaded until OmniSharp reports them.
+   */
+  synchronized void addProjects(Collection<Path> projects) {
+    projects.stream()
+      .map(p -> p.toAbsolutePath().normalize().getParent())
+      .filter(dir -> !projectDirs.contains(dir))
+      .distinct()
+      .forEach(projectDirs::add);
+    projectDirs.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+  }
+
+  /**
+   * @param projectFile path of the project file, as reported by OmniSharp
+   */
+  void projectLoaded(String projectFile) {
+    CompletableFuture<Void> previous;
+    synchronized (this) {
+      Path projectDir = Paths.get(projectFile).toAbsolutePath().normalize().getParent();
+      if (projectDir == null || !loadedProjectDirs.add(projectDir)) {
+        return;
+      }
+      previous = changed;
+      changed = new CompletableFuture<>();
+    }
+    // Outside of the lock, dependent stages may query the state
+    previous.complete(null);
+  }
+
+  /**
+   * @return true if the project owning the file is loaded. Files that are not part of any project of the solution are only considered
+   * loaded once all projects are.
+   */
+  synchronized boolean isLoaded(Path file) {
+    Path owner = findProjectDir(file.toAbsolutePath().normalize());
+    return owner != null ? loadedProjectDirs.contains(owner) : isFullyLoaded();
+  }
+
+  synchronized boolean isFullyLoaded() {
+    return loadedProjectDirs.containsAll(projectDirs);
+  }
+
+  /**
+   * @return a future completed the next time a project is loaded
+   */
+  synchronized CompletableFuture<Void> whenChanged() {
+    return changed;
+  }
+
+  /**
+   * @return a future completed once all the projects are loaded, including the ones added in the meantime
+   */
+  CompletableFuture<Void> whenFullyLoaded() {
+    CompletableFuture<Void> next;
+    synchronized (this) {
+      if (isFullyLoaded()) {
+        return CompletableFuture.completedFuture(null);
+      }
+      next = changed;
+    }
+    return next.thenCompose(v -> whenFullyLoaded());
+  }
+
+  @CheckForNull
+  private Path findProjectDir(Path file) {
+    for (Path projectDir : projectDirs) {
+      if (file.startsWith(projectDir)) {
+        return projectDir;
+      }
+    }
+    return null;
+  }
+
+}
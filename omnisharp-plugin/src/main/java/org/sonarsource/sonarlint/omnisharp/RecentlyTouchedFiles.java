@@ -0,0 +1,54 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+
+/**
+ * Files touched by the latest file events of the module, most likely the ones the developer is working on. Only the most recent ones are kept.
+ */
+@SonarLintSide(lifespan = "MODULE")
+public class RecentlyTouchedFiles {
+
+  static final int MAX_FILES = 100;
+
+  private final Map<Path, Boolean> files = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Path, Boolean> eldest) {
+      return size() > MAX_FILES;
+    }
+  };
+
+  public synchronized void touch(Path file) {
+    files.put(normalize(file), Boolean.TRUE);
+  }
+
+  public synchronized boolean contains(Path file) {
+    return files.containsKey(normalize(file));
+  }
+
+  private static Path normalize(Path file) {
+    return file.toAbsolutePath().normalize();
+  }
+
+}
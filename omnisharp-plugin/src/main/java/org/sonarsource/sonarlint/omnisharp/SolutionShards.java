@@ -0,0 +1,242 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Split the projects of a solution in several solution filters (.slnf), so that each one can be loaded by its own OmniSharp process.
+ * OmniSharp also loads the projects referenced by the ones of a filter, so the solution is split between its top-level projects, the ones
+ * no other project references, and each shard loads the projects its top-level projects depend on. A project referenced from several
+ * shards, like a common core library, is loaded by each of them, but its files are only analyzed by the process owning it.
+ * A solution where a single project references all the others can't be split.
+ */
+final class SolutionShards {
+
+  private static final Pattern PROJECT_REFERENCE = Pattern.compile("<ProjectReference\\s+Include\\s*=\\s*\"([^\"]+)\"");
+  private static final Pattern PROJECT_LINE = Pattern.compile("^Project\\(\"\\{[^}]*\\}\"\\)\\s*=\\s*\"[^\"]*\"\\s*,\\s*\"([^\"]+)\"");
+
+  private SolutionShards() {
+    // static only
+  }
+
+  static class Shard {
+    private final Path solutionFilter;
+    private final List<Path> projectDirs;
+
+    Shard(Path solutionFilter, List<Path> projectDirs) {
+      this.solutionFilter = solutionFilter;
+      this.projectDirs = projectDirs;
+    }
+
+    Path getSolutionFilter() {
+      return solutionFilter;
+    }
+
+    /**
+     * @return the directories of the projects owned by the shard. A project loaded by several shards is only owned by one of them.
+     */
+    List<Path> getProjectDirs() {
+      return projectDirs;
+    }
+  }
+
+  /**
+   * @return at most <code>count</code> shards, or an empty list if the solution has less than two top-level C# projects
+   */
+  static List<Shard> split(Path solution, int count, Path outputDir) throws IOException {
+    List<String> projects = readProjects(solution);
+    Path absoluteSolution = solution.toAbsolutePath().normalize();
+    Path solutionDir = absoluteSolution.getParent();
+    List<Path> projectPaths = new ArrayList<>();
+    projects.forEach(p -> projectPaths.add(solutionDir.resolve(p.replace('\\', '/')).normalize()));
+    List<Set<Integer>> closures = topLevelClosures(projectPaths);
+    int shardCount = Math.min(count, closures.size());
+    if (shardCount < 2) {
+      return List.of();
+    }
+    // The weight of a shard is the number of projects it loads. Heaviest top-level projects first, each one in the shard that would
+    // weigh the least with it, so that top-level projects sharing many dependencies end up together.
+    closures.sort(Comparator.comparingInt((Set<Integer> c) -> c.size()).reversed());
+    List<Set<Integer>> shardProjects = new ArrayList<>();
+    for (int i = 0; i < shardCount; i++) {
+      shardProjects.add(new TreeSet<>());
+    }
+    int[] owners = new int[projectPaths.size()];
+    Arrays.fill(owners, -1);
+    for (Set<Integer> closure : closures) {
+      int best = 0;
+      int bestWeight = Integer.MAX_VALUE;
+      for (int i = 0; i < shardCount; i++) {
+        Set<Integer> union = new HashSet<>(shardProjects.get(i));
+        union.addAll(closure);
+        if (union.size() < bestWeight) {
+          best = i;
+          bestWeight = union.size();
+        }
+      }
+      shardProjects.get(best).addAll(closure);
+      // The top-level project is the first element of its closure
+      owners[closure.iterator().next()] = best;
+    }
+    // Dependencies are owned by the first shard loading them
+    for (int i = 0; i < shardCount; i++) {
+      for (int p : shardProjects.get(i)) {
+        if (owners[p] == -1) {
+          owners[p] = i;
+        }
+      }
+    }
+    String baseName = absoluteSolution.getFileName().toString().replaceFirst("\\.sln$", "");
+    List<Shard> shards = new ArrayList<>();
+    for (int i = 0; i < shardCount; i++) {
+      JsonArray projectsJson = new JsonArray();
+      List<Path> projectDirs = new ArrayList<>();
+      for (int p : shardProjects.get(i)) {
+        projectsJson.add(projects.get(p));
+        if (owners[p] == i) {
+          projectDirs.add(projectPaths.get(p).getParent());
+        }
+      }
+      JsonObject solutionJson = new JsonObject();
+      solutionJson.addProperty("path", absoluteSolution.toString());
+      solutionJson.add("projects", projectsJson);
+      JsonObject filter = new JsonObject();
+      filter.add("solution", solutionJson);
+
+      Path filterPath = outputDir.resolve(baseName + ".shard" + (i + 1) + ".slnf");
+      Files.write(filterPath, filter.toString().getBytes(StandardCharsets.UTF_8));
+      shards.add(new Shard(filterPath, projectDirs));
+    }
+    return shards;
+  }
+
+  /**
+   * @return for each project that no other project of the solution references, its index followed by the indexes of the projects it
+   * references, directly or not
+   */
+  private static List<Set<Integer>> topLevelClosures(List<Path> projectPaths) {
+    Map<Path, Integer> indexes = new HashMap<>();
+    for (int i = 0; i < projectPaths.size(); i++) {
+      indexes.put(projectPaths.get(i), i);
+    }
+    List<List<Integer>> references = new ArrayList<>();
+    boolean[] referenced = new boolean[projectPaths.size()];
+    for (Path projectPath : projectPaths) {
+      List<Integer> projectReferences = new ArrayList<>();
+      for (Path reference : readProjectReferences(projectPath)) {
+        Integer index = indexes.get(reference);
+        if (index != null) {
+          projectReferences.add(index);
+          referenced[index] = true;
+        }
+      }
+      references.add(projectReferences);
+    }
+    List<Set<Integer>> closures = new ArrayList<>();
+    Set<Integer> reached = new HashSet<>();
+    for (int i = 0; i < projectPaths.size(); i++) {
+      if (!referenced[i]) {
+        Set<Integer> closure = new LinkedHashSet<>();
+        collectReferences(i, references, closure);
+        closures.add(closure);
+        reached.addAll(closure);
+      }
+    }
+    // Projects only referenced from a cycle of references
+    for (int i = 0; i < projectPaths.size(); i++) {
+      if (!reached.contains(i)) {
+        Set<Integer> closure = new LinkedHashSet<>();
+        collectReferences(i, references, closure);
+        closures.add(closure);
+        reached.addAll(closure);
+      }
+    }
+    return closures;
+  }
+
+  private static void collectReferences(int project, List<List<Integer>> references, Set<Integer> closure) {
+    Deque<Integer> toVisit = new ArrayDeque<>();
+    toVisit.push(project);
+    while (!toVisit.isEmpty()) {
+      int p = toVisit.pop();
+      if (closure.add(p)) {
+        references.get(p).forEach(toVisit::push);
+      }
+    }
+  }
+
+  /**
+   * @return the absolute paths of the projects referenced by the given one, none if it can't be read
+   */
+  static List<Path> readProjectReferences(Path project) {
+    List<Path> references = new ArrayList<>();
+    String content;
+    try {
+      content = new String(Files.readAllBytes(project), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return references;
+    }
+    Matcher matcher = PROJECT_REFERENCE.matcher(content);
+    while (matcher.find()) {
+      references.add(project.getParent().resolve(matcher.group(1).replace('\\', '/')).normalize());
+    }
+    return references;
+  }
+
+  /**
+   * @return the relative paths of the C# projects, as written in the solution file
+   */
+  static List<String> readProjects(Path solution) throws IOException {
+    List<String> projects = new ArrayList<>();
+    for (String line : Files.readAllLines(solution, StandardCharsets.UTF_8)) {
+      Matcher matcher = PROJECT_LINE.matcher(line.trim());
+      if (matcher.find()) {
+        String project = matcher.group(1);
+        // Solution folders and other kinds of projects are not loaded by OmniSharp
+        if (project.toLowerCase(Locale.ENGLISH).endsWith(".csproj")) {
+          projects.add(project);
+        }
+      }
+    }
+    return projects;
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp.protocol;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Diagnostics of a file, and whether OmniSharp fully analyzed it. Results are partial when the analysis failed, timed out or was
+ * cancelled, or when the file is not part of a loaded project yet and only its syntax could be checked.
+ */
+public class CodeCheckResult {
+
+  private final File file;
+  private final List<Diagnostic> diagnostics;
+  private final boolean complete;
+
+  public CodeCheckResult(File file, List<Diagnostic> diagnostics, boolean complete) {
+    this.file = file;
+    this.diagnostics = diagnostics;
+    this.complete = complete;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public List<Diagnostic> getDiagnostics() {
+    return diagnostics;
+  }
+
+  public boolean isComplete() {
+    return complete;
+  }
+
+}
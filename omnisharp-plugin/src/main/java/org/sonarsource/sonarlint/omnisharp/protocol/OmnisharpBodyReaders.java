@@ -0,0 +1,184 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp.protocol;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Streaming decoders for response bodies. They are stateless, so they are created once and shared by all requests.
+ */
+final class OmnisharpBodyReaders {
+
+  private static final Gson GSON = new Gson();
+  private static final TypeAdapter<Diagnostic> DIAGNOSTIC_ADAPTER = GSON.getAdapter(Diagnostic.class);
+
+  /**
+   * Body of /sonarlint/codecheck: <code>{"QuickFixes": [...], "Complete": true}</code>
+   */
+  static final BodyReader<FileBody> CODECHECK_BODY = OmnisharpBodyReaders::readFileBody;
+
+  /**
+   * Body of /sonarlint/codecheckbatch: <code>{"Files": [{"FileName": "...", "QuickFixes": [...], "Complete": true}]}</code>
+   */
+  static final BodyReader<List<FileBody>> CODECHECK_BATCH_BODY = reader -> {
+    List<FileBody> result = new ArrayList<>();
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return result;
+    }
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("Files".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          result.add(readFileBody(reader));
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return result;
+  };
+
+  /**
+   * Body of the event pushed for each file by a streamed /sonarlint/codecheck: <code>{"CancellationId": "...", "FileName": "...", "QuickFixes": [...]}</code>
+   */
+  static final BodyReader<FileDiagnostics> FILE_DIAGNOSTICS_EVENT_BODY = reader -> {
+    String cancellationId = null;
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("CancellationId".equals(name) && reader.peek() == JsonToken.STRING) {
+        cancellationId = reader.nextString();
+      } else if ("QuickFixes".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        readDiagnostics(reader, diagnostics);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new FileDiagnostics(cancellationId, diagnostics);
+  };
+
+  static final class FileDiagnostics {
+    @Nullable
+    private final String cancellationId;
+    private final List<Diagnostic> diagnostics;
+
+    private FileDiagnostics(@Nullable String cancellationId, List<Diagnostic> diagnostics) {
+      this.cancellationId = cancellationId;
+      this.diagnostics = diagnostics;
+    }
+
+    @CheckForNull
+    String getCancellationId() {
+      return cancellationId;
+    }
+
+    List<Diagnostic> getDiagnostics() {
+      return diagnostics;
+    }
+  }
+
+  /**
+   * Diagnostics of a single file in a code check response. The file name is only set in batch responses.
+   */
+  static final class FileBody {
+    @Nullable
+    private final String fileName;
+    private final List<Diagnostic> diagnostics;
+    private final boolean complete;
+
+    private FileBody(@Nullable String fileName, List<Diagnostic> diagnostics, boolean complete) {
+      this.fileName = fileName;
+      this.diagnostics = diagnostics;
+      this.complete = complete;
+    }
+
+    @CheckForNull
+    String getFileName() {
+      return fileName;
+    }
+
+    List<Diagnostic> getDiagnostics() {
+      return diagnostics;
+    }
+
+    boolean isComplete() {
+      return complete;
+    }
+  }
+
+  private OmnisharpBodyReaders() {
+    // static only
+  }
+
+  /**
+   * Older servers don't tell whether the file was fully analyzed, so their results are considered partial.
+   */
+  private static FileBody readFileBody(JsonReader reader) throws IOException {
+    String fileName = null;
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    boolean complete = false;
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return new FileBody(null, diagnostics, false);
+    }
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("FileName".equals(name) && reader.peek() == JsonToken.STRING) {
+        fileName = reader.nextString();
+      } else if ("QuickFixes".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        readDiagnostics(reader, diagnostics);
+      } else if ("Complete".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+        complete = reader.nextBoolean();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new FileBody(fileName, diagnostics, complete);
+  }
+
+  private static void readDiagnostics(JsonReader reader, List<Diagnostic> result) throws IOException {
+    reader.beginArray();
+    while (reader.hasNext()) {
+      Diagnostic diagnostic = DIAGNOSTIC_ADAPTER.read(reader);
+      // Optimization: ignore some non SonarCS issues
+      if (diagnostic.getId().startsWith("S")) {
+        result.add(diagnostic);
+      }
+    }
+    reader.endArray();
+  }
+
+}
@@ -24,10 +24,21 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
+import java.util.function.Supplier;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonar.api.scanner.ScannerSide;
@@ -35,7 +46,7 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.api.sonarlint.SonarLintSide;
 import org.sonarsource.sonarlint.omnisharp.OmnisharpServerController;
-import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpResponseProcessor.OmnisharpResponseHandler;
+import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpBodyReaders.FileBody;
 
 @ScannerSide
 @SonarLintSide(lifespan = "MODULE")
@@ -45,12 +56,35 @@ public class OmnisharpEndpoints {
 
   private static final String FILENAME_PROPERTY = "FileName";
 
-  private final AtomicLong requestId = new AtomicLong(1L);
+  public static final String CONFIG_COMMAND = "/sonarlint/config";
+
+  private static final String CODECHECK_COMMAND = "/sonarlint/codecheck";
+
+  private static final String BUFFER_PROPERTY = "Buffer";
+
+  private static final String CODECHECK_BATCH_COMMAND = "/sonarlint/codecheckbatch";
+
+  private static final String WARMUP_COMMAND = "/sonarlint/warmup";
+
+  private static final String CANCEL_COMMAND = "/sonarlint/cancel";
+
+  private static final String CANCELLATION_ID_PROPERTY = "CancellationId";
+
+  private static final long RESPONSE_TIMEOUT_MIN = 1;
+
+  private static final long STREAM_POLL_INTERVAL_MS = 100;
+
+  private static final Gson GSON = new Gson();
 
   private OmnisharpServerController server;
 
   private final OmnisharpResponseProcessor responseProcessor;
 
+  /**
+   * Code checks waiting for their response, by request id. The request id is also their cancellation id.
+   */
+  private final Map<Long, CompletableFuture<?>> pendingCodeChecks = new ConcurrentHashMap<>();
+
   public OmnisharpEndpoints(OmnisharpResponseProcessor responseProcessor) {
     this.responseProcessor = responseProcessor;
   }
@@ -59,15 +93,188 @@ public class OmnisharpEndpoints {
     this.server = server;
   }
 
-  public void codeCheck(File f, Consumer<Diagnostic> issueHandler) {
-    JsonObject args = new JsonObject();
-    args.addProperty(FILENAME_PROPERTY, f.getAbsolutePath());
-    JsonObject resp = doRequestAndWaitForResponse("/sonarlint/codecheck", args);
-    handle(resp, issueHandler);
+  /**
+   * @return false if the results are partial, see {@link CodeCheckResult}
+   */
+  public boolean codeCheck(File f, Consumer<Diagnostic> issueHandler) {
+    CodeCheckResult result = waitForResponse(CODECHECK_COMMAND, codeCheckAsync(f));
+    result.getDiagnostics().forEach(issueHandler);
+    return result.isComplete();
+  }
+
+  /**
+   * Non blocking variant of {@link #codeCheck(File, Consumer)}. The returned future is completed on the thread reading OmniSharp
+   * output, so callers should consume the diagnostics on their own thread.
+   */
+  public CompletableFuture<CodeCheckResult> codeCheckAsync(File f) {
+    long id = responseProcessor.nextRequestId();
+    OmnisharpRequest.ArgumentsWriter args = w -> w.beginObject()
+      .name(FILENAME_PROPERTY).value(f.getAbsolutePath())
+      .name(CANCELLATION_ID_PROPERTY).value(String.valueOf(id))
+      .endObject();
+    return trackCodeCheck(id, () -> doRequestAsync(id, CODECHECK_COMMAND, f, args, OmnisharpBodyReaders.CODECHECK_BODY, RESPONSE_TIMEOUT_MIN)
+      .thenApply(response -> {
+        FileBody body = successfulBody(response);
+        return body != null ? new CodeCheckResult(f, body.getDiagnostics(), body.isComplete()) : new CodeCheckResult(f, List.of(), false);
+      }));
+  }
+
+  /**
+   * Analyze all the files of the loaded projects. OmniSharp pushes the diagnostics of each file as soon as it is analyzed, and they are
+   * passed to the handler on the calling thread, once per file, so issues are reported while the analysis is running and the diagnostics
+   * of the whole solution are never held in a single response. Once the first file is analyzed, the analysis fails if no other file is
+   * analyzed for too long. There is no such limit before, since OmniSharp first compiles the projects.
+   */
+  public void codeCheckAll(Consumer<List<Diagnostic>> fileDiagnosticsHandler) {
+    BlockingQueue<List<Diagnostic>> fileDiagnostics = new LinkedBlockingQueue<>();
+    CompletableFuture<Void> codeCheck = codeCheckAllAsync(fileDiagnostics::add);
+    boolean streaming = false;
+    long lastActivity = 0;
+    try {
+      while (!codeCheck.isDone()) {
+        List<Diagnostic> diagnostics = fileDiagnostics.poll(STREAM_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (diagnostics != null) {
+          streaming = true;
+          lastActivity = System.nanoTime();
+          fileDiagnosticsHandler.accept(diagnostics);
+        } else if (streaming && System.nanoTime() - lastActivity > TimeUnit.MINUTES.toNanos(RESPONSE_TIMEOUT_MIN)) {
+          codeCheck.cancel(false);
+          throw new IllegalStateException("Timeout waiting for response to: " + CODECHECK_COMMAND);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted!", e);
+    }
+    // Events are processed before the response, so none can be added anymore
+    List<List<Diagnostic>> remaining = new ArrayList<>();
+    fileDiagnostics.drainTo(remaining);
+    remaining.forEach(fileDiagnosticsHandler);
+    waitForResponse(CODECHECK_COMMAND, codeCheck);
+  }
+
+  /**
+   * Non blocking variant of {@link #codeCheckAll(Consumer)}. The handler is called with the diagnostics of each file on the thread reading
+   * OmniSharp output, and the returned future is completed once all OmniSharp processes analyzed their files. There is no timeout.
+   */
+  public CompletableFuture<Void> codeCheckAllAsync(Consumer<List<Diagnostic>> fileDiagnosticsHandler) {
+    long id = responseProcessor.nextRequestId();
+    OmnisharpRequest.ArgumentsWriter args = w -> w.beginObject()
+      .name(CANCELLATION_ID_PROPERTY).value(String.valueOf(id))
+      .name("StreamResults").value(true)
+      .endObject();
+    responseProcessor.registerFileDiagnosticsHandler(id, fileDiagnosticsHandler);
+    return trackCodeCheck(id, () -> {
+      CompletableFuture<Void> codeCheck = doRequestAsync(id, CODECHECK_COMMAND, null, args, null, 0)
+        .thenApply(response -> {
+          if (!response.isSuccess()) {
+            LOG.error(response.getMessage());
+          }
+          return null;
+        });
+      codeCheck.whenComplete((r, e) -> responseProcessor.removeFileDiagnosticsHandler(id));
+      return codeCheck;
+    });
+  }
+
+  /**
+   * Update the buffers of several files and analyze them in a single round trip. A null buffer means the server already has
+   * the current contents of the file.
+   */
+  public void codeCheckBatch(Map<File, String> buffers, Consumer<CodeCheckResult> resultHandler) {
+    waitForResponse(CODECHECK_BATCH_COMMAND, codeCheckBatchAsync(buffers)).forEach(resultHandler);
+  }
+
+  /**
+   * When the solution is split between several OmniSharp processes, one request is sent to each process owning some of the files.
+   */
+  public CompletableFuture<List<CodeCheckResult>> codeCheckBatchAsync(Map<File, String> buffers) {
+    Map<Integer, Map<File, String>> buffersPerProcess = new LinkedHashMap<>();
+    for (Map.Entry<File, String> buffer : buffers.entrySet()) {
+      buffersPerProcess.computeIfAbsent(server.getProcessIndex(buffer.getKey()), k -> new LinkedHashMap<>()).put(buffer.getKey(), buffer.getValue());
+    }
+    if (buffersPerProcess.size() <= 1) {
+      return codeCheckBatchOnSingleProcessAsync(buffers);
+    }
+    List<CompletableFuture<List<CodeCheckResult>>> futures = new ArrayList<>();
+    buffersPerProcess.values().forEach(processBuffers -> futures.add(codeCheckBatchOnSingleProcessAsync(processBuffers)));
+    return CompletableFuture.allOf(futures.stream().toArray(CompletableFuture[]::new))
+      .thenApply(v -> {
+        List<CodeCheckResult> results = new ArrayList<>();
+        futures.forEach(f -> results.addAll(f.join()));
+        return results;
+      });
+  }
+
+  private CompletableFuture<List<CodeCheckResult>> codeCheckBatchOnSingleProcessAsync(Map<File, String> buffers) {
+    long id = responseProcessor.nextRequestId();
+    OmnisharpRequest.ArgumentsWriter args = w -> {
+      w.beginObject()
+        .name(CANCELLATION_ID_PROPERTY).value(String.valueOf(id))
+        .name("Files").beginArray();
+      for (Map.Entry<File, String> buffer : buffers.entrySet()) {
+        w.beginObject()
+          .name(FILENAME_PROPERTY).value(buffer.getKey().getAbsolutePath())
+          .name(BUFFER_PROPERTY).value(buffer.getValue())
+          .endObject();
+      }
+      w.endArray().endObject();
+    };
+    File routingFile = buffers.isEmpty() ? null : buffers.keySet().iterator().next();
+    return trackCodeCheck(id, () -> doRequestAsync(id, CODECHECK_BATCH_COMMAND, routingFile, args, OmnisharpBodyReaders.CODECHECK_BATCH_BODY, RESPONSE_TIMEOUT_MIN)
+      .thenApply(response -> toBatchResults(buffers.keySet(), successfulBody(response))));
+  }
+
+  /**
+   * @param request sends the code check, called once the code check is counted as pending by the server, so that the processes receiving
+   * it are not recycled in the meantime
+   */
+  private <T> CompletableFuture<T> trackCodeCheck(long id, Supplier<CompletableFuture<T>> request) {
+    Runnable completed = server.codeCheckStarted();
+    CompletableFuture<T> codeCheck = request.get();
+    pendingCodeChecks.put(id, codeCheck);
+    codeCheck.whenComplete((r, e) -> {
+      pendingCodeChecks.remove(id);
+      completed.run();
+    });
+    return codeCheck;
+  }
+
+  /**
+   * Ask OmniSharp to stop the analysis of the pending code checks, and cancel their futures so that callers waiting for them
+   * get a {@link java.util.concurrent.CancellationException} right away, instead of waiting for the analyzers to reach a cancellation point.
+   */
+  public void cancelCodeChecks() {
+    // Cancelled first, so that callers are released even if the cancel request can't be written
+    List<Long> ids = new ArrayList<>();
+    for (Long id : new ArrayList<>(pendingCodeChecks.keySet())) {
+      CompletableFuture<?> codeCheck = pendingCodeChecks.remove(id);
+      if (codeCheck != null) {
+        ids.add(id);
+        codeCheck.cancel(false);
+      }
+    }
+    if (ids.isEmpty()) {
+      return;
+    }
+    OmnisharpRequest.ArgumentsWriter args = w -> {
+      w.beginObject().name("CancellationIds").beginArray();
+      for (Long id : ids) {
+        w.value(String.valueOf(id));
+      }
+      w.endArray().endObject();
+    };
+    // Don't wait for the response, the caller is not interested in the results anymore
+    server.writeRequestOnStdIn(new OmnisharpRequest(responseProcessor.nextRequestId(), CANCEL_COMMAND, args));
   }
 
   public void config(JsonObject config) {
-    doRequestAndWaitForResponse("/sonarlint/config", config);
+    waitForResponse(CONFIG_COMMAND, configAsync(config));
+  }
+
+  public CompletableFuture<Void> configAsync(JsonObject config) {
+    server.configSent(config);
+    return doRequestAsync(CONFIG_COMMAND, null, json(config), null).thenApply(r -> null);
   }
 
   public enum FileChangeType {
@@ -85,98 +292,161 @@ public class OmnisharpEndpoints {
   }
 
   public void fileChanged(File f, FileChangeType type) {
+    waitForResponse("/filesChanged", fileChangedAsync(f, type));
+  }
+
+  public CompletableFuture<Void> fileChangedAsync(File f, FileChangeType type) {
     JsonArray args = new JsonArray();
     JsonObject req = new JsonObject();
     req.addProperty(FILENAME_PROPERTY, f.getAbsolutePath());
     req.addProperty("changeType", type.protocolValue);
     args.add(req);
-    doRequestAndWaitForResponse("/filesChanged", args);
+    return doRequestAsync("/filesChanged", f, json(args), null).thenApply(r -> null);
   }
 
   public void updateBuffer(File f, String buffer) {
-    JsonObject args = new JsonObject();
-    args.addProperty(FILENAME_PROPERTY, f.getAbsolutePath());
-    args.addProperty("Buffer", buffer);
-    doRequestAndWaitForResponse("/updatebuffer", args);
+    waitForResponse("/updatebuffer", updateBufferAsync(f, buffer));
+  }
+
+  public CompletableFuture<Void> updateBufferAsync(File f, String buffer) {
+    // Stream the buffer straight to OmniSharp stdin, it may be large
+    OmnisharpRequest.ArgumentsWriter args = w -> w.beginObject()
+      .name(FILENAME_PROPERTY).value(f.getAbsolutePath())
+      .name(BUFFER_PROPERTY).value(buffer)
+      .endObject();
+    return doRequestAsync("/updatebuffer", f, args, null).thenApply(r -> null);
+  }
+
+  /**
+   * Apply changes on the buffer previously sent to OmniSharp, instead of sending the full contents again.
+   */
+  public void updateBufferChanges(File f, List<TextChange> changes) {
+    waitForResponse("/updatebuffer", updateBufferChangesAsync(f, changes));
+  }
+
+  public CompletableFuture<Void> updateBufferChangesAsync(File f, List<TextChange> changes) {
+    OmnisharpRequest.ArgumentsWriter args = w -> {
+      w.beginObject()
+        .name(FILENAME_PROPERTY).value(f.getAbsolutePath())
+        .name("Changes").beginArray();
+      for (TextChange change : changes) {
+        w.beginObject()
+          .name("NewText").value(change.getNewText())
+          .name("StartLine").value(change.getStartLine())
+          .name("StartColumn").value(change.getStartColumn())
+          .name("EndLine").value(change.getEndLine())
+          .name("EndColumn").value(change.getEndColumn())
+          .endObject();
+      }
+      w.endArray().endObject();
+    };
+    return doRequestAsync("/updatebuffer", f, args, null).thenApply(r -> null);
+  }
+
+  /**
+   * Let OmniSharp compile the projects and run the analyzers once, in the background and giving way to code checks. The response doesn't wait for
+   * the warm-up to complete, so it is not waited for either.
+   */
+  public void warmUp() {
+    doRequest(WARMUP_COMMAND);
   }
 
   public void stopServer() {
     // Don't wait for the response, because sometimes the process seems to die before receiving it
-    doRequest("/stopserver", null);
+    doRequest("/stopserver");
   }
 
-  private static void handle(JsonObject response, Consumer<Diagnostic> issueHandler) {
-    boolean success = response.get("Success").getAsBoolean();
-    if (!success) {
-      String message = response.get("Message").getAsString();
-      LOG.error(message);
-      return;
+  @CheckForNull
+  private static <T> T successfulBody(OmnisharpResponse<T> response) {
+    if (!response.isSuccess()) {
+      LOG.error(response.getMessage());
+      return null;
     }
-    JsonObject body = response.get("Body").getAsJsonObject();
-    JsonArray issues = body.get("QuickFixes").getAsJsonArray();
-    Diagnostic[] diagnostics = new Gson().fromJson(issues, Diagnostic[].class);
-    Stream.of(diagnostics).forEach(i -> {
-      if (!i.getId().startsWith("S")) {
-        // Optimization: ignore some non SonarCS issues
-        return;
-      }
-      issueHandler.accept(i);
-    });
+    return response.getBody();
   }
 
-  @CheckForNull
-  private static String getAsStringOrNull(@Nullable JsonElement element) {
-    return (element == null || element.isJsonNull()) ? null : element.getAsString();
+  /**
+   * Results are matched with the files of the request by name, so that they can be looked up with the same {@link File} instances.
+   * Files missing from the response get a partial empty result.
+   */
+  private static List<CodeCheckResult> toBatchResults(Collection<File> files, @Nullable List<FileBody> bodies) {
+    Map<String, FileBody> bodiesPerFileName = new HashMap<>();
+    if (bodies != null) {
+      bodies.stream().filter(b -> b.getFileName() != null).forEach(b -> bodiesPerFileName.put(b.getFileName(), b));
+    }
+    List<CodeCheckResult> results = new ArrayList<>();
+    for (File file : files) {
+      FileBody body = bodiesPerFileName.get(file.getAbsolutePath());
+      results.add(body != null ? new CodeCheckResult(file, body.getDiagnostics(), body.isComplete()) : new CodeCheckResult(file, List.of(), false));
+    }
+    return results;
   }
 
-  private JsonObject doRequestAndWaitForResponse(String command, @Nullable JsonElement dataJson) {
-    long id = requestId.getAndIncrement();
-    OmnisharpRequest req = buildRequest(command, dataJson, id);
+  /**
+   * Send a request without waiting for its response, so that several requests can be in flight on the same stdin/stdout channel.
+   * The returned future fails with an {@link IllegalStateException} if the request could not be sent or if no response was received in time.
+   *
+   * @param file used to route the request to the OmniSharp process owning the file, or null to send the request to all processes
+   */
+  private <T> CompletableFuture<OmnisharpResponse<T>> doRequestAsync(String command, @Nullable File file, @Nullable OmnisharpRequest.ArgumentsWriter args,
+    @Nullable BodyReader<T> bodyReader) {
+    return doRequestAsync(responseProcessor.nextRequestId(), command, file, args, bodyReader, RESPONSE_TIMEOUT_MIN);
+  }
 
-    OmnisharpResponseHandler omnisharpResponseHandler = responseProcessor.registerResponseHandler(id);
+  /**
+   * @param timeoutMin no timeout if 0
+   */
+  private <T> CompletableFuture<OmnisharpResponse<T>> doRequestAsync(long id, String command, @Nullable File file, @Nullable OmnisharpRequest.ArgumentsWriter args,
+    @Nullable BodyReader<T> bodyReader, long timeoutMin) {
+    OmnisharpRequest req = new OmnisharpRequest(id, command, file, args);
+
+    int expectedResponses = file != null ? 1 : Math.max(1, server.getRunningProcessCount());
+    CompletableFuture<OmnisharpResponse<T>> responseFuture = responseProcessor.registerResponseHandler(id, bodyReader, expectedResponses);
     try {
-      if (!server.writeRequestOnStdIn(req.getJsonPayload())) {
+      if (!server.writeRequestOnStdIn(req)) {
         throw new IllegalStateException("Unable to send request to the OmniSharp server: " + command);
       }
-      if (!omnisharpResponseHandler.responseLatch.await(1, TimeUnit.MINUTES)) {
-        throw new IllegalStateException("Timeout waiting for response to: " + command);
-      }
-      return omnisharpResponseHandler.response;
+    } catch (RuntimeException e) {
+      responseProcessor.removeResponseHandler(id);
+      return CompletableFuture.failedFuture(e);
+    }
+    if (timeoutMin > 0) {
+      responseFuture = responseFuture.orTimeout(timeoutMin, TimeUnit.MINUTES);
+    }
+    return responseFuture
+      .handle((response, error) -> {
+        responseProcessor.removeResponseHandler(id);
+        if (error instanceof TimeoutException) {
+          throw new IllegalStateException("Timeout waiting for response to: " + command);
+        }
+        if (error != null) {
+          throw new IllegalStateException("Request failed: " + command, error);
+        }
+        return response;
+      });
+  }
 
+  private static <T> T waitForResponse(String command, CompletableFuture<T> responseFuture) {
+    try {
+      return responseFuture.get();
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       throw new IllegalStateException("Interrupted!", e);
-    } finally {
-      responseProcessor.removeResponseHandler(id);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Request failed: " + command, e.getCause());
     }
   }
 
-  private void doRequest(String command, @Nullable JsonObject dataJson) {
-    long id = requestId.getAndIncrement();
-    OmnisharpRequest req = buildRequest(command, dataJson, id);
-    server.writeRequestOnStdIn(req.getJsonPayload());
-  }
-
-  private static OmnisharpRequest buildRequest(String command, @Nullable JsonElement dataJson, long id) {
-    JsonObject args = new JsonObject();
-    args.addProperty("Type", "request");
-    args.addProperty("Seq", id);
-    args.addProperty("Command", command);
-    args.add("Arguments", dataJson);
-
-    return new OmnisharpRequest(new Gson().toJson(args));
+  private void doRequest(String command) {
+    long id = responseProcessor.nextRequestId();
+    server.writeRequestOnStdIn(new OmnisharpRequest(id, command, null));
   }
 
-  static class OmnisharpRequest {
-    private final String jsonPayload;
-
-    OmnisharpRequest(String jsonPayload) {
-      this.jsonPayload = jsonPayload;
-    }
-
-    public String getJsonPayload() {
-      return jsonPayload;
-    }
+  private static OmnisharpRequest.ArgumentsWriter json(JsonElement element) {
+    return w -> GSON.toJson(element, w);
   }
 
 }
@@ -0,0 +1,104 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp.protocol;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * A request to be sent on OmniSharp stdin. Arguments are serialized lazily with a {@link JsonWriter}, so that large payloads
+ * like file buffers are streamed to the process without building intermediate trees or strings.
+ */
+public class OmnisharpRequest {
+
+  @FunctionalInterface
+  public interface ArgumentsWriter {
+    void write(JsonWriter writer) throws IOException;
+  }
+
+  private final long seq;
+  private final String command;
+  @Nullable
+  private final File file;
+  @Nullable
+  private final ArgumentsWriter arguments;
+
+  public OmnisharpRequest(long seq, String command, @Nullable ArgumentsWriter arguments) {
+    this(seq, command, null, arguments);
+  }
+
+  /**
+   * @param file the file the request is about, used to route the request to the OmniSharp process that loaded its project
+   */
+  public OmnisharpRequest(long seq, String command, @Nullable File file, @Nullable ArgumentsWriter arguments) {
+    this.seq = seq;
+    this.command = command;
+    this.file = file;
+    this.arguments = arguments;
+  }
+
+  public String getCommand() {
+    return command;
+  }
+
+  /**
+   * @return null if the request is for all OmniSharp processes
+   */
+  @CheckForNull
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Serialize the request on a single line. The writer is neither terminated by a newline, flushed nor closed.
+   */
+  public void writeTo(Writer out) throws IOException {
+    JsonWriter writer = new JsonWriter(out);
+    writer.beginObject();
+    writer.name("Type").value("request");
+    writer.name("Seq").value(seq);
+    writer.name("Command").value(command);
+    if (arguments != null) {
+      writer.name("Arguments");
+      arguments.write(writer);
+    }
+    writer.endObject();
+  }
+
+  /**
+   * Only for logs and tests, since this copies the whole payload in memory.
+   */
+  public String getJsonPayload() {
+    StringWriter out = new StringWriter();
+    try {
+      writeTo(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toString();
+  }
+
+}
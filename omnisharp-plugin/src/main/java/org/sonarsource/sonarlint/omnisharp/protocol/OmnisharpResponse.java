@@ -0,0 +1,57 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp.protocol;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Envelope of a response received from OmniSharp. The body has already been decoded by the {@link BodyReader}
+ * registered for the request, if any.
+ */
+public class OmnisharpResponse<T> {
+
+  private final boolean success;
+  @Nullable
+  private final String message;
+  @Nullable
+  private final T body;
+
+  OmnisharpResponse(boolean success, @Nullable String message, @Nullable T body) {
+    this.success = success;
+    this.message = message;
+    this.body = body;
+  }
+
+  public boolean isSuccess() {
+    return success;
+  }
+
+  @CheckForNull
+  public String getMessage() {
+    return message;
+  }
+
+  @CheckForNull
+  public T getBody() {
+    return body;
+  }
+
+}
@@ -19,50 +19,159 @@
  */
 package org.sonarsource.sonarlint.omnisharp.protocol;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.api.sonarlint.SonarLintSide;
 
-
-@SonarLintSide(lifespan = "MODULE")
+/**
+ * Shared by all modules, since modules with the same settings share the OmniSharp processes, and so their output.
+ */
+@SonarLintSide(lifespan = SonarLintSide.MULTIPLE_ANALYSES)
 public class OmnisharpResponseProcessor {
 
   private static final Logger LOG = Loggers.get(OmnisharpResponseProcessor.class);
 
-  private final ConcurrentHashMap<Long, OmnisharpResponseHandler> responseLatchQueue = new ConcurrentHashMap<>();
+  private static final String FILE_DIAGNOSTICS_EVENT = "SonarLintFileDiagnostics";
+
+  private final ConcurrentHashMap<Long, PendingResponse<?>> pendingResponses = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<Long, Consumer<List<Diagnostic>>> fileDiagnosticsHandlers = new ConcurrentHashMap<>();
+
+  private final AtomicLong requestId = new AtomicLong(1L);
 
   public void handleOmnisharpOutput(CompletableFuture<Void> startFuture, CompletableFuture<Void> loadProjectsFuture, String line) {
-    JsonObject jsonObject;
+    handleOmnisharpOutput(startFuture, loadProjectsFuture, p -> {
+    }, line);
+  }
+
+  /**
+   * @param projectLoaded notified with the path of the project file each time OmniSharp reports a project as added or changed
+   */
+  public void handleOmnisharpOutput(CompletableFuture<Void> startFuture, CompletableFuture<Void> loadProjectsFuture, Consumer<String> projectLoaded, String line) {
+    Message message;
     try {
-      jsonObject = JsonParser.parseString(line).getAsJsonObject();
+      message = readMessage(line);
     } catch (Exception e) {
       LOG.debug(line);
       return;
     }
-    handleJsonMessage(startFuture, loadProjectsFuture, line, jsonObject);
+    handleMessage(startFuture, loadProjectsFuture, projectLoaded, line, message);
+  }
+
+  /**
+   * Stream over the message instead of building a tree. The body is decoded with the reader registered for the request (or for the
+   * event) as soon as it is reached, which requires <code>Request_seq</code> (or <code>Event</code>) to come first. OmniSharp
+   * writes them in this order, but a body seen before them is kept as a tree and decoded at the end of the message.
+   */
+  private Message readMessage(String line) throws IOException {
+    Message message = new Message();
+    PendingResponse<?> pending = null;
+    JsonReader reader = new JsonReader(new StringReader(line));
+    reader.setLenient(true);
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "Type":
+          message.type = reader.nextString();
+          break;
+        case "Event":
+          message.event = reader.nextString();
+          break;
+        case "Request_seq":
+          message.requestSeq = reader.nextLong();
+          pending = pendingResponses.get(message.requestSeq);
+          break;
+        case "Success":
+          message.success = reader.nextBoolean();
+          break;
+        case "Message":
+          message.message = nextStringOrNull(reader);
+          break;
+        case "Body":
+          if (message.requestSeq != null) {
+            if (pending != null && pending.bodyReader != null) {
+              message.responseBody = pending.bodyReader.read(reader);
+            } else {
+              reader.skipValue();
+            }
+          } else if (FILE_DIAGNOSTICS_EVENT.equals(message.event)) {
+            message.fileDiagnostics = OmnisharpBodyReaders.FILE_DIAGNOSTICS_EVENT_BODY.read(reader);
+          } else {
+            // Events bodies are small, keep them as a tree. This is also where a body written before its Request_seq ends up.
+            message.bodyTree = JsonParser.parseReader(reader);
+          }
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (message.bodyTree != null && message.requestSeq != null) {
+      LOG.debug("Body of the response to request {} received before its sequence number", message.requestSeq);
+      if (pending != null && pending.bodyReader != null) {
+        message.responseBody = readBuffered(pending.bodyReader, message.bodyTree);
+      }
+    } else if (message.bodyTree != null && FILE_DIAGNOSTICS_EVENT.equals(message.event)) {
+      message.fileDiagnostics = readBuffered(OmnisharpBodyReaders.FILE_DIAGNOSTICS_EVENT_BODY, message.bodyTree);
+    }
+    return message;
+  }
+
+  private static <T> T readBuffered(BodyReader<T> bodyReader, JsonElement body) throws IOException {
+    JsonReader reader = new JsonReader(new StringReader(body.toString()));
+    reader.setLenient(true);
+    return bodyReader.read(reader);
+  }
+
+  @Nullable
+  private static String nextStringOrNull(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
   }
 
-  private void handleJsonMessage(CompletableFuture<Void> startFuture, CompletableFuture<Void> loadProjectsFuture, String line, JsonObject jsonObject) {
-    String type = jsonObject.get("Type").getAsString();
+  private void handleMessage(CompletableFuture<Void> startFuture, CompletableFuture<Void> loadProjectsFuture, Consumer<String> projectLoaded, String line,
+    Message message) {
+    String type = message.type;
+    if (type == null) {
+      LOG.debug(line);
+      return;
+    }
     switch (type) {
       case "response":
-        long reqSeq = jsonObject.get("Request_seq").getAsLong();
-        OmnisharpResponseHandler omnisharpResponseHandler = responseLatchQueue.get(reqSeq);
-        if (omnisharpResponseHandler != null) {
-          omnisharpResponseHandler.response = jsonObject;
-          omnisharpResponseHandler.responseLatch.countDown();
+        if (message.requestSeq != null) {
+          PendingResponse<?> pending = pendingResponses.get(message.requestSeq);
+          if (pending != null && pending.complete(message)) {
+            pendingResponses.remove(message.requestSeq);
+          }
         }
         break;
       case "event":
-        String eventType = jsonObject.get("Event").getAsString();
+        String eventType = message.event;
+        if (eventType == null) {
+          LOG.debug(line);
+          break;
+        }
         switch (eventType) {
           case "log":
-            handleLog(jsonObject.get("Body").getAsJsonObject());
+            handleLog(message.bodyTree, line);
             break;
           case "started":
             LOG.debug(line);
@@ -70,6 +179,13 @@ public class OmnisharpResponseProcessor {
             break;
           case "ProjectAdded":
           case "ProjectChanged":
+            LOG.debug(line);
+            String projectFile = getProjectFile(message.bodyTree);
+            if (projectFile != null) {
+              projectLoaded.accept(projectFile);
+            }
+            loadProjectsFuture.complete(null);
+            break;
           case "ProjectRemoved":
             LOG.debug(line);
             loadProjectsFuture.complete(null);
@@ -77,9 +193,11 @@ public class OmnisharpResponseProcessor {
           case "Diagnostic":
             // For now we ignore diagnostics "pushed" by Omnisharp
             break;
+          case FILE_DIAGNOSTICS_EVENT:
+            handleFileDiagnostics(message);
+            break;
           case "MsBuildProjectDiagnostics":
-            var msbuildErrors = jsonObject.get("Body").getAsJsonObject().get("Errors").getAsJsonArray();
-            if (!msbuildErrors.isEmpty()) {
+            if (hasMsBuildErrors(message.bodyTree)) {
               LOG.error("MSBuild failed to load the project");
               // No need to wait for project loading, it might never happen
               // firstUpdateProjectLatch.countDown();
@@ -95,25 +213,154 @@ public class OmnisharpResponseProcessor {
     }
   }
 
-  private static void handleLog(JsonObject jsonObject) {
-    String level = jsonObject.get("LogLevel").getAsString();
-    String message = jsonObject.get("Message").getAsString();
+  private void handleFileDiagnostics(Message message) {
+    OmnisharpBodyReaders.FileDiagnostics fileDiagnostics = message.fileDiagnostics;
+    String cancellationId = fileDiagnostics != null ? fileDiagnostics.getCancellationId() : null;
+    if (cancellationId == null) {
+      return;
+    }
+    Consumer<List<Diagnostic>> handler;
+    try {
+      handler = fileDiagnosticsHandlers.get(Long.parseLong(cancellationId));
+    } catch (NumberFormatException e) {
+      LOG.debug("Unexpected cancellation id: {}", cancellationId);
+      return;
+    }
+    if (handler != null) {
+      handler.accept(fileDiagnostics.getDiagnostics());
+    }
+  }
+
+  @CheckForNull
+  private static String getProjectFile(@Nullable JsonElement eventBody) {
+    if (eventBody == null || !eventBody.isJsonObject()) {
+      return null;
+    }
+    JsonElement project = eventBody.getAsJsonObject().get("MsBuildProject");
+    if (project == null || !project.isJsonObject()) {
+      return null;
+    }
+    JsonElement path = project.getAsJsonObject().get("Path");
+    return path != null && path.isJsonPrimitive() ? path.getAsString() : null;
+  }
+
+  private static void handleLog(@Nullable JsonElement eventBody, String line) {
+    if (eventBody == null || !eventBody.isJsonObject()) {
+      LOG.debug(line);
+      return;
+    }
+    JsonObject jsonObject = eventBody.getAsJsonObject();
+    String level = getAsStringOrNull(jsonObject, "LogLevel");
+    String message = getAsStringOrNull(jsonObject, "Message");
     LOG.debug("Omnisharp: [" + level + "] " + message);
   }
 
-  static class OmnisharpResponseHandler {
-    JsonObject response;
-    CountDownLatch responseLatch = new CountDownLatch(1);
+  private static boolean hasMsBuildErrors(@Nullable JsonElement eventBody) {
+    if (eventBody == null || !eventBody.isJsonObject()) {
+      return false;
+    }
+    JsonElement errors = eventBody.getAsJsonObject().get("Errors");
+    return errors != null && errors.isJsonArray() && !errors.getAsJsonArray().isEmpty();
+  }
+
+  @CheckForNull
+  private static String getAsStringOrNull(JsonObject jsonObject, String name) {
+    JsonElement value = jsonObject.get(name);
+    return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+  }
+
+  /**
+   * Register interest in the response to the request with the given sequence number. The returned future is completed
+   * by the stdout reader thread, so dependent stages should stay cheap or be moved to another executor.
+   *
+   * @param bodyReader used to decode the response body while reading it, or null to skip the body
+   */
+  public <T> CompletableFuture<OmnisharpResponse<T>> registerResponseHandler(long id, @Nullable BodyReader<T> bodyReader) {
+    return registerResponseHandler(id, bodyReader, 1);
+  }
+
+  /**
+   * Variant of {@link #registerResponseHandler(long, BodyReader)} for a request sent to several OmniSharp processes. The future is
+   * completed once all of them answered, with the first unsuccessful response if any.
+   */
+  public <T> CompletableFuture<OmnisharpResponse<T>> registerResponseHandler(long id, @Nullable BodyReader<T> bodyReader, int expectedResponses) {
+    PendingResponse<T> pending = new PendingResponse<>(bodyReader, expectedResponses);
+    pendingResponses.put(id, pending);
+    return pending.future;
   }
 
-  public OmnisharpResponseHandler registerResponseHandler(long id) {
-    OmnisharpResponseHandler omnisharpResponseHandler = new OmnisharpResponseHandler();
-    responseLatchQueue.put(id, omnisharpResponseHandler);
-    return omnisharpResponseHandler;
+  /**
+   * Sequence numbers are allocated here, so that they are unique among the requests of all modules.
+   */
+  public long nextRequestId() {
+    return requestId.getAndIncrement();
   }
 
   public void removeResponseHandler(long id) {
-    responseLatchQueue.remove(id);
+    pendingResponses.remove(id);
+  }
+
+  /**
+   * Register interest in the diagnostics pushed file per file by a streamed code check. The handler is called on the stdout reader thread,
+   * before the response to the request is processed.
+   *
+   * @param id the sequence number of the code check, which is also its cancellation id
+   */
+  public void registerFileDiagnosticsHandler(long id, Consumer<List<Diagnostic>> handler) {
+    fileDiagnosticsHandlers.put(id, handler);
+  }
+
+  public void removeFileDiagnosticsHandler(long id) {
+    fileDiagnosticsHandlers.remove(id);
+  }
+
+  private static class Message {
+    @Nullable
+    private String type;
+    @Nullable
+    private String event;
+    @Nullable
+    private Long requestSeq;
+    private boolean success;
+    @Nullable
+    private String message;
+    @Nullable
+    private JsonElement bodyTree;
+    @Nullable
+    private Object responseBody;
+    @Nullable
+    private OmnisharpBodyReaders.FileDiagnostics fileDiagnostics;
+  }
+
+  private static class PendingResponse<T> {
+    private final CompletableFuture<OmnisharpResponse<T>> future = new CompletableFuture<>();
+    @Nullable
+    private final BodyReader<T> bodyReader;
+    private final AtomicInteger remainingResponses;
+    @Nullable
+    private volatile OmnisharpResponse<T> failure;
+
+    private PendingResponse(@Nullable BodyReader<T> bodyReader, int expectedResponses) {
+      this.bodyReader = bodyReader;
+      this.remainingResponses = new AtomicInteger(expectedResponses);
+    }
+
+    /**
+     * @return true if no more response is expected
+     */
+    @SuppressWarnings("unchecked")
+    private boolean complete(Message message) {
+      // The body was produced by bodyReader, so it has the expected type
+      OmnisharpResponse<T> response = new OmnisharpResponse<>(message.success, message.message, (T) message.responseBody);
+      if (!response.isSuccess() && failure == null) {
+        failure = response;
+      }
+      if (remainingResponses.decrementAndGet() > 0) {
+        return false;
+      }
+      future.complete(failure != null ? failure : response);
+      return true;
+    }
   }
 
 }
@@ -0,0 +1,127 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp.protocol;
+
+import java.util.List;
+import javax.annotation.CheckForNull;
+
+/**
+ * A change of the buffer, in the <code>Changes</code> form of <code>/updatebuffer</code>. Lines and columns are 1-based, like
+ * everything else on the wire.
+ */
+public class TextChange {
+
+  private final String newText;
+  private final int startLine;
+  private final int startColumn;
+  private final int endLine;
+  private final int endColumn;
+
+  public TextChange(String newText, int startLine, int startColumn, int endLine, int endColumn) {
+    this.newText = newText;
+    this.startLine = startLine;
+    this.startColumn = startColumn;
+    this.endLine = endLine;
+    this.endColumn = endColumn;
+  }
+
+  /**
+   * Compute the range of lines that has to be replaced to turn the previous buffer into the current one.
+   *
+   * @return an empty list if both buffers are equal, or null if the change can't be expressed safely, in which case the whole
+   * buffer should be sent
+   */
+  @CheckForNull
+  public static List<TextChange> diff(String previous, String current) {
+    if (hasLineBreaksOtherThanLf(previous)) {
+      // Line numbering would not be the same as on the Roslyn side
+      return null;
+    }
+    int maxPrefix = Math.min(previous.length(), current.length());
+    int prefix = 0;
+    while (prefix < maxPrefix && previous.charAt(prefix) == current.charAt(prefix)) {
+      prefix++;
+    }
+    if (prefix == previous.length() && prefix == current.length()) {
+      return List.of();
+    }
+    // Start the change at the beginning of the line
+    prefix = previous.lastIndexOf('\n', prefix - 1) + 1;
+
+    int maxSuffix = maxPrefix - prefix;
+    int suffix = 0;
+    while (suffix < maxSuffix && previous.charAt(previous.length() - 1 - suffix) == current.charAt(current.length() - 1 - suffix)) {
+      suffix++;
+    }
+    // End the change at the beginning of a line
+    int end = previous.length() - suffix;
+    while (end > prefix && end < previous.length() && previous.charAt(end - 1) != '\n') {
+      end++;
+    }
+    suffix = previous.length() - end;
+
+    int startLine = countLf(previous, prefix);
+    int endLine = countLf(previous, end);
+    int endColumn = end - (previous.lastIndexOf('\n', end - 1) + 1);
+    String newText = current.substring(prefix, current.length() - suffix);
+    return List.of(new TextChange(newText, startLine + 1, 1, endLine + 1, endColumn + 1));
+  }
+
+  private static boolean hasLineBreaksOtherThanLf(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if ((c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n')) || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int countLf(String text, int end) {
+    int count = 0;
+    for (int i = 0; i < end; i++) {
+      if (text.charAt(i) == '\n') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public String getNewText() {
+    return newText;
+  }
+
+  public int getStartLine() {
+    return startLine;
+  }
+
+  public int getStartColumn() {
+    return startColumn;
+  }
+
+  public int getEndLine() {
+    return endLine;
+  }
+
+  public int getEndColumn() {
+    return endColumn;
+  }
+
+}
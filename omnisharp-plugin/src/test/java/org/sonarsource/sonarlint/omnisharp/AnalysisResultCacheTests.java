@@ -0,0 +1,160 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonarsource.sonarlint.omnisharp.protocol.Diagnostic;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class AnalysisResultCacheTests {
+
+  private Path baseDir;
+  private DefaultFileSystem fs;
+  private InputFile file;
+
+  @BeforeEach
+  void prepare(@TempDir Path tmp) throws IOException {
+    baseDir = tmp.toRealPath();
+    fs = new DefaultFileSystem(baseDir).setWorkDir(baseDir.resolve(".work"));
+    file = addFile("Foo.cs", "class Foo {}");
+  }
+
+  @Test
+  void replayStoredDiagnostics() {
+    var cache = AnalysisResultCache.create(fs, "rules", "omnisharp");
+    assertThat(cache.get(file, "hash")).isNull();
+
+    cache.put(file, "hash", List.of(diagnostic("S1118")));
+
+    var otherInstance = AnalysisResultCache.create(fs, "rules", "omnisharp");
+    assertThat(otherInstance.get(file, "hash"))
+      .extracting(Diagnostic::getId, Diagnostic::getFilename, Diagnostic::getLine, Diagnostic::getEndColumn)
+      .containsExactly(tuple("S1118", file.file().getAbsolutePath(), 1, 5));
+  }
+
+  @Test
+  void missIfContentChanged() {
+    var cache = AnalysisResultCache.create(fs, "rules", "omnisharp");
+    cache.put(file, "hash", List.of(diagnostic("S1118")));
+
+    assertThat(cache.get(file, "otherHash")).isNull();
+  }
+
+  @Test
+  void missIfRulesOrAnalyzerChanged() {
+    AnalysisResultCache.create(fs, "rules", "omnisharp").put(file, "hash", List.of(diagnostic("S1118")));
+
+    assertThat(AnalysisResultCache.create(fs, "otherRules", "omnisharp").get(file, "hash")).isNull();
+    assertThat(AnalysisResultCache.create(fs, "rules", "otherOmnisharp").get(file, "hash")).isNull();
+  }
+
+  @Test
+  void missIfProjectChanged() throws IOException {
+    addFile("Foo.csproj", "<Project Sdk=\"Microsoft.NET.Sdk\"></Project>");
+    AnalysisResultCache.create(fs, "rules", "omnisharp").put(file, "hash", List.of(diagnostic("S1118")));
+    assertThat(AnalysisResultCache.create(fs, "rules", "omnisharp").get(file, "hash")).isNotNull();
+
+    Path assets = baseDir.resolve("obj").resolve("project.assets.json");
+    Files.createDirectories(assets.getParent());
+    Files.write(assets, "{}".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(AnalysisResultCache.create(fs, "rules", "omnisharp").get(file, "hash")).isNull();
+  }
+
+  @Test
+  void missIfProjectContentChanged() throws IOException {
+    InputFile project = addFile("Foo.csproj", "<Project Sdk=\"Microsoft.NET.Sdk\"></Project>");
+    AnalysisResultCache.create(fs, "rules", "omnisharp").put(file, "hash", List.of(diagnostic("S1118")));
+
+    Files.write(project.path(), "<Project Sdk=\"Microsoft.NET.Sdk.Web\"></Project>".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(AnalysisResultCache.create(fs, "rules", "omnisharp").get(file, "hash")).isNull();
+  }
+
+  @Test
+  void hitIfProjectOnlyTouched() throws IOException {
+    InputFile project = addFile("Foo.csproj", "<Project Sdk=\"Microsoft.NET.Sdk\"></Project>");
+    AnalysisResultCache.create(fs, "rules", "omnisharp").put(file, "hash", List.of(diagnostic("S1118")));
+
+    Files.setLastModifiedTime(project.path(), FileTime.fromMillis(Files.getLastModifiedTime(project.path()).toMillis() + 10_000));
+
+    assertThat(AnalysisResultCache.create(fs, "rules", "omnisharp").get(file, "hash")).isNotNull();
+  }
+
+  @Test
+  void onlyReadProjectFilesIfSizeOrModificationTimeChanged() throws IOException {
+    InputFile project = addFile("Foo.csproj", "<Project Sdk=\"Microsoft.NET.Sdk\"></Project>");
+    AnalysisResultCache.create(fs, "rules", "omnisharp").put(file, "hash", List.of(diagnostic("S1118")));
+
+    // Same size and modification time, so the contents are assumed unchanged
+    FileTime lastModified = Files.getLastModifiedTime(project.path());
+    Files.write(project.path(), "<Project Sdk=\"Microsoft.NET.Sdx\"></Project>".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(project.path(), lastModified);
+
+    assertThat(AnalysisResultCache.create(fs, "rules", "omnisharp").get(file, "hash")).isNotNull();
+  }
+
+  @Test
+  void ignoreCorruptedEntries() throws IOException {
+    var cache = AnalysisResultCache.create(fs, "rules", "omnisharp");
+    cache.put(file, "hash", List.of(diagnostic("S1118")));
+    try (var entries = Files.list(baseDir.resolve(".work").resolve("omnisharp-cache"))) {
+      for (Path entry : (Iterable<Path>) entries::iterator) {
+        Files.write(entry, "{not json".getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    assertThat(cache.get(file, "hash")).isNull();
+  }
+
+  private InputFile addFile(String relativePath, String content) throws IOException {
+    Path path = baseDir.resolve(relativePath);
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    InputFile inputFile = TestInputFileBuilder.create("", relativePath)
+      .setModuleBaseDir(baseDir)
+      .setCharset(StandardCharsets.UTF_8)
+      .build();
+    fs.add(inputFile);
+    return inputFile;
+  }
+
+  private Diagnostic diagnostic(String ruleId) {
+    return new Gson().fromJson("{"
+      + "\"Id\": \"" + ruleId + "\","
+      + "\"FileName\": " + new Gson().toJson(file.file().getAbsolutePath()) + ","
+      + "\"Line\": 1, \"Column\": 1, \"EndLine\": 1, \"EndColumn\": 5, \"Text\": \"Message\""
+      + "}", Diagnostic.class);
+  }
+
+}
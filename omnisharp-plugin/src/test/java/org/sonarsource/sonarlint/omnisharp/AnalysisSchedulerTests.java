@@ -0,0 +1,93 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AnalysisSchedulerTests {
+
+  @TempDir
+  Path baseDir;
+
+  @Test
+  void changedFilesThenRecentlyTouchedFilesThenOthers() throws IOException {
+    InputFile other = inputFile("Other.cs", "class Other {}", InputFile.Status.SAME);
+    InputFile touched = inputFile("Touched.cs", "class Touched {}", InputFile.Status.SAME);
+    InputFile changed = inputFile("Changed.cs", "class Changed {}", InputFile.Status.CHANGED);
+    InputFile added = inputFile("Added.cs", "class Added {}", InputFile.Status.ADDED);
+
+    List<InputFile> result = AnalysisScheduler.prioritize(List.of(other, touched, changed, added), Set.of(touched.path())::contains);
+
+    assertThat(result).containsExactly(added, changed, touched, other);
+  }
+
+  @Test
+  void smallFilesFirstWithinTier() throws IOException {
+    InputFile big = inputFile("Big.cs", "class Big { void Foo() {} }", InputFile.Status.SAME);
+    InputFile small = inputFile("Small.cs", "class Small {}", InputFile.Status.SAME);
+    InputFile medium = inputFile("Medium.cs", "class Medium { }", InputFile.Status.SAME);
+
+    List<InputFile> result = AnalysisScheduler.prioritize(List.of(big, small, medium), p -> false);
+
+    assertThat(result).containsExactly(small, medium, big);
+  }
+
+  @Test
+  void ignoreStatusIfAllFilesAreNew() throws IOException {
+    InputFile big = inputFile("Big.cs", "class Big { void Foo() {} }", InputFile.Status.ADDED);
+    InputFile touched = inputFile("Touched.cs", "class Touched { void Foo() {} }", InputFile.Status.ADDED);
+    InputFile small = inputFile("Small.cs", "class Small {}", InputFile.Status.ADDED);
+
+    List<InputFile> result = AnalysisScheduler.prioritize(List.of(big, touched, small), Set.of(touched.path())::contains);
+
+    assertThat(result).containsExactly(touched, small, big);
+  }
+
+  @Test
+  void keepOrderOfFilesWithSameTierAndSize() throws IOException {
+    InputFile foo = inputFile("Foo.cs", "class Foo {}", null);
+    InputFile bar = inputFile("Bar.cs", "class Bar {}", null);
+
+    assertThat(AnalysisScheduler.prioritize(List.of(foo, bar), p -> false)).containsExactly(foo, bar);
+    assertThat(AnalysisScheduler.prioritize(List.of(bar, foo), p -> false)).containsExactly(bar, foo);
+  }
+
+  private InputFile inputFile(String name, String content, InputFile.Status status) throws IOException {
+    Files.write(baseDir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    return TestInputFileBuilder.create("", name)
+      .setModuleBaseDir(baseDir)
+      .setLanguage(OmnisharpPlugin.LANGUAGE_KEY)
+      .setCharset(StandardCharsets.UTF_8)
+      .setStatus(status)
+      .build();
+  }
+
+}
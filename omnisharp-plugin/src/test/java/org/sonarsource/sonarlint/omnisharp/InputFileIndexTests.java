@@ -0,0 +1,66 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InputFileIndexTests {
+
+  @TempDir
+  Path baseDir;
+
+  private InputFile foo;
+  private InputFileIndex underTest;
+
+  @BeforeEach
+  void prepare() {
+    DefaultFileSystem fileSystem = new DefaultFileSystem(baseDir);
+    foo = TestInputFileBuilder.create("", "src/Foo.cs").setModuleBaseDir(baseDir).build();
+    fileSystem.add(foo);
+    fileSystem.add(TestInputFileBuilder.create("", "src/Bar.cs").setModuleBaseDir(baseDir).build());
+    underTest = new InputFileIndex(fileSystem);
+  }
+
+  @Test
+  void findFileByAbsolutePath() {
+    assertThat(underTest.get(baseDir.resolve("src/Foo.cs"))).isSameAs(foo);
+    assertThat(underTest.get(baseDir.resolve("src/../src/Foo.cs"))).isSameAs(foo);
+  }
+
+  @Test
+  void resolveRelativePathAgainstBaseDir() {
+    assertThat(underTest.get(Paths.get("src/Foo.cs"))).isSameAs(foo);
+  }
+
+  @Test
+  void nullIfUnknownFile() {
+    assertThat(underTest.get(baseDir.resolve("src/Unknown.cs"))).isNull();
+  }
+
+}
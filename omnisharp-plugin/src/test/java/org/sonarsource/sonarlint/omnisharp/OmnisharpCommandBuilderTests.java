@@ -245,4 +245,53 @@ class OmnisharpCommandBuilderTests {
       omnisharpDllServicesPath.toString());
   }
 
+  @Test
+  void buildCommandNet6_pass_heap_hard_limit(@TempDir Path projectBaseDir) {
+    mapSettings.setProperty(CSharpPropertyDefinitions.getHeapHardLimit(), 2048);
+    var pb = underTest.buildNet6(projectBaseDir, null, null, null, false);
+    assertThat(pb.environment()).containsEntry("DOTNET_GCHeapHardLimit", "0x80000000");
+  }
+
+  @Test
+  void buildCommand_pass_heap_hard_limit_to_mono(@TempDir Path projectBaseDir) {
+    mapSettings.setProperty(CSharpPropertyDefinitions.getHeapHardLimit(), 512);
+    var pb = underTest.build(projectBaseDir, null, null, null, false);
+    assertThat(pb.environment().get("MONO_GC_PARAMS")).contains("max-heap-size=512m");
+  }
+
+  @Test
+  void buildCommand_no_heap_hard_limit_by_default(@TempDir Path projectBaseDir) {
+    var pb = underTest.buildNet6(projectBaseDir, null, null, null, false);
+    assertThat(pb.environment()).doesNotContainKey("DOTNET_GCHeapHardLimit");
+  }
+
+  @Test
+  void buildCommandNet6_low_latency_runtime_profile(@TempDir Path projectBaseDir) {
+    mapSettings.setProperty(CSharpPropertyDefinitions.getRuntimeProfile(), "low-latency");
+    var pb = underTest.buildNet6(projectBaseDir, null, null, null, false);
+    assertThat(pb.environment())
+      .containsEntry("DOTNET_gcServer", "0")
+      .containsEntry("DOTNET_gcConcurrent", "1")
+      .containsEntry("DOTNET_TieredPGO", "1");
+  }
+
+  @Test
+  void buildCommandNet6_throughput_runtime_profile(@TempDir Path projectBaseDir) {
+    mapSettings.setProperty(CSharpPropertyDefinitions.getRuntimeProfile(), "throughput");
+    var pb = underTest.buildNet6(projectBaseDir, null, null, null, false);
+    assertThat(pb.environment())
+      .containsEntry("DOTNET_gcServer", "1")
+      .containsEntry("DOTNET_gcConcurrent", "0")
+      .containsEntry("DOTNET_TieredPGO", "1")
+      // Only supported since .NET 8
+      .doesNotContainKey("DOTNET_GCDynamicAdaptationMode");
+  }
+
+  @Test
+  void buildCommandNet6_unknown_runtime_profile_uses_default(@TempDir Path projectBaseDir) {
+    mapSettings.setProperty(CSharpPropertyDefinitions.getRuntimeProfile(), "turbo");
+    var pb = underTest.buildNet6(projectBaseDir, null, null, null, false);
+    assertThat(pb.environment()).isEqualTo(new ProcessBuilder().environment());
+  }
+
 }
@@ -21,13 +21,16 @@ package org.sonarsource.sonarlint.omnisharp;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.internal.MapSettings;
 import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpEndpoints;
 import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpEndpoints.FileChangeType;
 import org.sonarsource.sonarlint.plugin.api.module.file.ModuleFileEvent;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -39,13 +42,17 @@ class OmnisharpFileListenerTests {
   private OmnisharpFileListener underTest;
   private OmnisharpServerController omnisharpServer;
   private OmnisharpEndpoints omnisharpProtocol;
+  private MapSettings settings;
+  private RecentlyTouchedFiles recentlyTouchedFiles;
 
   @BeforeEach
   void prepare() throws IOException {
     omnisharpServer = mock(OmnisharpServerController.class);
     when(omnisharpServer.isOmnisharpStarted()).thenReturn(true);
     omnisharpProtocol = mock(OmnisharpEndpoints.class);
-    underTest = new OmnisharpFileListener(omnisharpServer, omnisharpProtocol);
+    settings = new MapSettings();
+    recentlyTouchedFiles = new RecentlyTouchedFiles();
+    underTest = new OmnisharpFileListener(omnisharpServer, omnisharpProtocol, settings.asConfig(), recentlyTouchedFiles);
   }
 
   @Test
@@ -68,8 +75,10 @@ class OmnisharpFileListenerTests {
     underTest.process(event);
 
     verify(omnisharpServer).isOmnisharpStarted();
+    verify(omnisharpServer).forgetBuffer(f.toPath());
     verifyNoMoreInteractions(omnisharpServer);
     verify(omnisharpProtocol).fileChanged(f, FileChangeType.CREATE);
+    assertThat(recentlyTouchedFiles.contains(f.toPath())).isTrue();
   }
 
   @Test
@@ -81,8 +90,10 @@ class OmnisharpFileListenerTests {
     underTest.process(event);
 
     verify(omnisharpServer).isOmnisharpStarted();
+    verify(omnisharpServer).forgetBuffer(f.toPath());
     verifyNoMoreInteractions(omnisharpServer);
     verify(omnisharpProtocol).fileChanged(f, FileChangeType.CHANGE);
+    assertThat(recentlyTouchedFiles.contains(f.toPath())).isTrue();
   }
 
   @Test
@@ -94,8 +105,10 @@ class OmnisharpFileListenerTests {
     underTest.process(event);
 
     verify(omnisharpServer).isOmnisharpStarted();
+    verify(omnisharpServer).forgetBuffer(f.toPath());
     verifyNoMoreInteractions(omnisharpServer);
     verify(omnisharpProtocol).fileChanged(f, FileChangeType.DELETE);
+    assertThat(recentlyTouchedFiles.contains(f.toPath())).isFalse();
   }
 
   @Test
@@ -113,27 +126,74 @@ class OmnisharpFileListenerTests {
   }
 
   @Test
-  void stopServerIfCreatedProject() throws IOException {
+  void broadcastCreatedProject() throws IOException {
     File f = new File("foo/Project1.csproj");
     ModuleFileEvent event = mockEvent(ModuleFileEvent.Type.CREATED, f);
 
     underTest.process(event);
 
     verify(omnisharpServer).isOmnisharpStarted();
+    verify(omnisharpServer).projectCreated(f.toPath());
+    verify(omnisharpServer).forgetBuffer(f.toPath());
+    verifyNoMoreInteractions(omnisharpServer);
+    verify(omnisharpProtocol).fileChanged(f, FileChangeType.CREATE);
+    assertThat(recentlyTouchedFiles.contains(f.toPath())).isTrue();
+  }
+
+  @Test
+  void stopServerIfModifiedSolutionCantBeReloaded() throws IOException {
+    File f = new File("Solution.sln");
+    ModuleFileEvent event = mockEvent(ModuleFileEvent.Type.MODIFIED, f);
+
+    underTest.process(event);
+
+    verify(omnisharpServer).isOmnisharpStarted();
+    verify(omnisharpServer).projectsAddedToSolution(f.toPath());
     verify(omnisharpServer).stopServer();
     verifyNoMoreInteractions(omnisharpServer);
     verifyNoInteractions(omnisharpProtocol);
   }
 
   @Test
-  void stopServerIfModifiedSolution() throws IOException {
+  void broadcastProjectsAddedToModifiedSolution() throws IOException {
     File f = new File("Solution.sln");
+    File project = new File("foo/Project2.csproj");
+    when(omnisharpServer.projectsAddedToSolution(f.toPath())).thenReturn(List.of(project));
     ModuleFileEvent event = mockEvent(ModuleFileEvent.Type.MODIFIED, f);
 
     underTest.process(event);
 
     verify(omnisharpServer).isOmnisharpStarted();
-    verify(omnisharpServer).stopServer();
+    verify(omnisharpServer).projectsAddedToSolution(f.toPath());
+    verifyNoMoreInteractions(omnisharpServer);
+    verify(omnisharpProtocol).fileChanged(project, FileChangeType.CREATE);
+    verifyNoMoreInteractions(omnisharpProtocol);
+  }
+
+  @Test
+  void restartServerInBackgroundIfModifiedSolutionAndWarmRestart() throws IOException {
+    settings.setProperty(CSharpPropertyDefinitions.getWarmRestart(), "true");
+    File f = new File("Solution.sln");
+    ModuleFileEvent event = mockEvent(ModuleFileEvent.Type.MODIFIED, f);
+
+    underTest.process(event);
+
+    verify(omnisharpServer).isOmnisharpStarted();
+    verify(omnisharpServer).restartInBackground();
+    verifyNoMoreInteractions(omnisharpServer);
+    verifyNoInteractions(omnisharpProtocol);
+  }
+
+  @Test
+  void restartServerInBackgroundIfCreatedSolutionAndWarmRestart() throws IOException {
+    settings.setProperty(CSharpPropertyDefinitions.getWarmRestart(), "true");
+    File f = new File("Solution.sln");
+    ModuleFileEvent event = mockEvent(ModuleFileEvent.Type.CREATED, f);
+
+    underTest.process(event);
+
+    verify(omnisharpServer).isOmnisharpStarted();
+    verify(omnisharpServer).restartInBackground();
     verifyNoMoreInteractions(omnisharpServer);
     verifyNoInteractions(omnisharpProtocol);
   }
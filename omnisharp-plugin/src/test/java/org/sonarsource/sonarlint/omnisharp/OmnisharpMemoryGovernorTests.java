@@ -0,0 +1,67 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OmnisharpMemoryGovernorTests {
+
+  private OmnisharpServerRegistry serverRegistry;
+  private OmnisharpMemoryGovernor underTest;
+
+  @BeforeEach
+  void prepare() {
+    serverRegistry = mock(OmnisharpServerRegistry.class);
+    underTest = new OmnisharpMemoryGovernor(serverRegistry);
+  }
+
+  @Test
+  void checkEachServerOnce() {
+    var server1 = mock(OmnisharpServerController.class);
+    var server2 = mock(OmnisharpServerController.class);
+    when(serverRegistry.getOneUserPerServer()).thenReturn(List.of(server1, server2));
+    underTest.start();
+
+    underTest.checkMemory();
+    underTest.stop();
+
+    verify(server1).recycleIfMemoryAboveLimit();
+    verify(server2).recycleIfMemoryAboveLimit();
+  }
+
+  @Test
+  void keepCheckingOtherServersOnFailure() {
+    var server1 = mock(OmnisharpServerController.class);
+    var server2 = mock(OmnisharpServerController.class);
+    when(serverRegistry.getOneUserPerServer()).thenReturn(List.of(server1, server2));
+    when(server1.recycleIfMemoryAboveLimit()).thenThrow(new IllegalStateException("Boom"));
+
+    underTest.checkMemory();
+
+    verify(server2).recycleIfMemoryAboveLimit();
+  }
+
+}
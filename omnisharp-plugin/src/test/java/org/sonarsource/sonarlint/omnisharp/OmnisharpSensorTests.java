@@ -19,20 +19,30 @@
  */
 package org.sonarsource.sonarlint.omnisharp;
 
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.sonar.api.batch.fs.InputComponent;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.TextRange;
@@ -54,6 +64,7 @@ import org.sonar.api.issue.impact.SoftwareQuality;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.api.testfixtures.log.LogTesterJUnit5;
+import org.sonarsource.sonarlint.omnisharp.protocol.CodeCheckResult;
 import org.sonarsource.sonarlint.omnisharp.protocol.Diagnostic;
 import org.sonarsource.sonarlint.omnisharp.protocol.DiagnosticLocation;
 import org.sonarsource.sonarlint.omnisharp.protocol.Fix;
@@ -66,8 +77,12 @@ import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -75,8 +90,12 @@ import static org.mockito.Mockito.when;
 
 class OmnisharpSensorTests {
 
+  private static final String NO_RULES_CONFIG_HASH = Hashing.sha256Hex("{\"activeRules\":[]}");
+
   private final OmnisharpServerController mockServer = mock(OmnisharpServerController.class);
   private final OmnisharpEndpoints mockProtocol = mock(OmnisharpEndpoints.class);
+  private final RecentlyTouchedFiles recentlyTouchedFiles = new RecentlyTouchedFiles();
+  private final BufferLedger buffers = new BufferLedger();
   @RegisterExtension
   LogTesterJUnit5 logTester = new LogTesterJUnit5();
   private OmnisharpSensor underTest;
@@ -106,11 +125,42 @@ class OmnisharpSensorTests {
     return edit;
   }
 
+  private InputFile addInputFile(SensorContextTester sensorContext, String relativePath, String content) throws IOException {
+    InputFile file = newInputFile(relativePath, content).build();
+    sensorContext.fileSystem().add(file);
+    return file;
+  }
+
+  /**
+   * Write the file in the base directory, the returned builder can be further customized by the test.
+   */
+  private TestInputFileBuilder newInputFile(String relativePath, String content) throws IOException {
+    Path filePath = baseDir.resolve(relativePath);
+    Files.createDirectories(filePath.getParent());
+    Files.write(filePath, content.getBytes(StandardCharsets.UTF_8));
+    return TestInputFileBuilder.create("", relativePath)
+      .setModuleBaseDir(baseDir)
+      .setLanguage(OmnisharpPlugin.LANGUAGE_KEY)
+      .setCharset(StandardCharsets.UTF_8)
+      .initMetadata(content);
+  }
+
+  private SensorContextTester newCachingContext() {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+    sensorContext.fileSystem().setWorkDir(baseDir.resolve(".work"));
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getAnalysisCacheEnabled(), "true");
+    return sensorContext;
+  }
+
   @BeforeEach
   void prepare(@TempDir Path tmp) throws Exception {
     baseDir = tmp.toRealPath();
-    underTest = new OmnisharpSensor(mockServer, mockProtocol);
+    underTest = new OmnisharpSensor(mockServer, mockProtocol, recentlyTouchedFiles);
     when(mockServer.whenReady()).thenReturn(CompletableFuture.completedFuture(null));
+    when(mockServer.getBuffers()).thenReturn(buffers);
+    when(mockServer.isCurrent(buffers)).thenReturn(true);
+    when(mockProtocol.updateBufferAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+    when(mockProtocol.updateBufferChangesAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
   }
 
   @Test
@@ -160,14 +210,280 @@ class OmnisharpSensorTests {
 
     underTest.execute(sensorContext);
 
-    verify(mockServer).lazyStart(baseDir, false, false, null, null, null, null, 60, 60);
+    verify(mockServer).lazyStart(baseDir, false, false, null, null, null, null, 60, 60, 1, NO_RULES_CONFIG_HASH);
 
-    verify(mockProtocol).updateBuffer(filePath.toFile(), content);
+    verify(mockProtocol).updateBufferAsync(filePath.toFile(), content);
     verify(mockProtocol).config(argThat(json -> json.toString().equals("{\"activeRules\":[]}")));
     verify(mockProtocol).codeCheck(eq(filePath.toFile()), any());
     verifyNoMoreInteractions(mockProtocol);
   }
 
+  @Test
+  void sendOnlyChangesIfBufferAlreadySent() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+
+    Path filePath = baseDir.resolve("Foo.cs");
+    String content = "class Foo {\n  int a;\n}\n";
+    addInputFile(sensorContext, "Foo.cs", content);
+    buffers.sent(filePath, "class Foo {\n  int b;\n}\n");
+
+    underTest.execute(sensorContext);
+
+    verify(mockProtocol).config(any());
+    verify(mockProtocol).updateBufferChangesAsync(eq(filePath.toFile()), argThat(changes -> changes.size() == 1
+      && changes.get(0).getNewText().equals("  int a;\n")
+      && changes.get(0).getStartLine() == 2
+      && changes.get(0).getEndLine() == 3));
+    verify(mockProtocol).codeCheck(eq(filePath.toFile()), any());
+    verifyNoMoreInteractions(mockProtocol);
+    assertThat(buffers.getSnapshot(filePath)).isEqualTo(content);
+  }
+
+  @Test
+  void sendFullBufferIfServerRestartedWhileSendingChanges() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+
+    Path filePath = baseDir.resolve("Foo.cs");
+    String content = "class Foo {\n  int a;\n}\n";
+    addInputFile(sensorContext, "Foo.cs", content);
+    buffers.sent(filePath, "class Foo {\n  int b;\n}\n");
+    BufferLedger replacementBuffers = new BufferLedger();
+    when(mockServer.isCurrent(buffers)).thenReturn(false);
+    when(mockServer.getBuffers()).thenReturn(buffers, replacementBuffers);
+
+    underTest.execute(sensorContext);
+
+    InOrder inOrder = inOrder(mockProtocol);
+    inOrder.verify(mockProtocol).updateBufferChangesAsync(eq(filePath.toFile()), any());
+    inOrder.verify(mockProtocol).updateBufferAsync(filePath.toFile(), content);
+    inOrder.verify(mockProtocol).codeCheck(eq(filePath.toFile()), any());
+    assertThat(replacementBuffers.getSnapshot(filePath)).isEqualTo(content);
+  }
+
+  @Test
+  void dontSendBufferIfServerAlreadyHasIt() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+
+    Path filePath = baseDir.resolve("Foo.cs");
+    String content = "Console.WriteLine(\"Hello World!\");";
+    addInputFile(sensorContext, "Foo.cs", content);
+    buffers.sent(filePath, content);
+
+    underTest.execute(sensorContext);
+
+    verify(mockProtocol).config(any());
+    verify(mockProtocol).codeCheck(eq(filePath.toFile()), any());
+    verifyNoMoreInteractions(mockProtocol);
+  }
+
+  @Test
+  void replayCachedResults() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+    sensorContext.fileSystem().setWorkDir(baseDir.resolve(".work"));
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getAnalysisCacheEnabled(), "true");
+    RuleKey ruleKey = RuleKey.of(OmnisharpPlugin.REPOSITORY_KEY, "S12345");
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(new NewActiveRule.Builder().setRuleKey(ruleKey).build()).build());
+
+    Path filePath = baseDir.resolve("Foo.cs");
+    String content = "Console.WriteLine(\"Hello World!\");";
+    InputFile file = addInputFile(sensorContext, "Foo.cs", content);
+
+    Diagnostic diag = new Gson().fromJson("{\"Id\": \"S12345\", \"FileName\": " + new Gson().toJson(filePath.toString())
+      + ", \"Line\": 1, \"Column\": 1, \"EndLine\": 1, \"EndColumn\": 5, \"Text\": \"Don't do this\"}", Diagnostic.class);
+    doAnswer(invocation -> {
+      invocation.<Consumer<Diagnostic>>getArgument(1).accept(diag);
+      return true;
+    }).when(mockProtocol).codeCheck(eq(filePath.toFile()), any());
+
+    underTest.execute(sensorContext);
+    verify(mockProtocol).codeCheck(eq(filePath.toFile()), any());
+    assertThat(sensorContext.allIssues()).hasSize(1);
+
+    SensorContextTester secondContext = SensorContextTester.create(baseDir);
+    secondContext.fileSystem().setWorkDir(baseDir.resolve(".work"));
+    secondContext.settings().appendProperty(CSharpPropertyDefinitions.getAnalysisCacheEnabled(), "true");
+    secondContext.setActiveRules(new ActiveRulesBuilder().addRule(new NewActiveRule.Builder().setRuleKey(ruleKey).build()).build());
+    secondContext.fileSystem().add(file);
+
+    underTest.execute(secondContext);
+
+    // Not analyzed again, but issues are reported
+    verify(mockProtocol).codeCheck(eq(filePath.toFile()), any());
+    assertThat(secondContext.allIssues()).extracting(Issue::ruleKey, i -> i.primaryLocation().message())
+      .containsOnly(tuple(ruleKey, "Don't do this"));
+  }
+
+  @Test
+  void dontCachePartialResults() throws Exception {
+    SensorContextTester sensorContext = newCachingContext();
+    InputFile file = addInputFile(sensorContext, "Foo.cs", "class Foo {}");
+    when(mockProtocol.codeCheck(any(), any())).thenReturn(false);
+
+    underTest.execute(sensorContext);
+    SensorContextTester secondContext = newCachingContext();
+    secondContext.fileSystem().add(file);
+    underTest.execute(secondContext);
+
+    verify(mockProtocol, times(2)).codeCheck(eq(file.file()), any());
+  }
+
+  @Test
+  void dontCacheResultsWhileProjectsAreLoading() throws Exception {
+    SensorContextTester sensorContext = newCachingContext();
+    InputFile file = addInputFile(sensorContext, "Foo.cs", "class Foo {}");
+    when(mockServer.getProjectLoadState()).thenReturn(new ProjectLoadState(List.of(baseDir.resolve("Core/Core.csproj"))));
+    when(mockProtocol.codeCheck(any(), any())).thenReturn(true);
+
+    underTest.execute(sensorContext);
+    SensorContextTester secondContext = newCachingContext();
+    secondContext.fileSystem().add(file);
+    underTest.execute(secondContext);
+
+    verify(mockProtocol, times(2)).codeCheck(eq(file.file()), any());
+  }
+
+  @Test
+  void cacheCompleteBatchResultsPerFile() throws Exception {
+    SensorContextTester sensorContext = newCachingContext();
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getAnalysisBatchSize(), "2");
+    InputFile foo = addInputFile(sensorContext, "Foo.cs", "class Foo {}");
+    InputFile bar = addInputFile(sensorContext, "Bar.cs", "class Bar {}");
+    doAnswer(invocation -> {
+      Consumer<CodeCheckResult> resultHandler = invocation.getArgument(1);
+      resultHandler.accept(new CodeCheckResult(foo.file(), List.of(), true));
+      resultHandler.accept(new CodeCheckResult(bar.file(), List.of(), false));
+      return null;
+    }).when(mockProtocol).codeCheckBatch(any(), any());
+
+    underTest.execute(sensorContext);
+    SensorContextTester secondContext = newCachingContext();
+    secondContext.settings().appendProperty(CSharpPropertyDefinitions.getAnalysisBatchSize(), "2");
+    secondContext.fileSystem().add(foo);
+    secondContext.fileSystem().add(bar);
+    underTest.execute(secondContext);
+
+    ArgumentCaptor<Map<File, String>> captor = ArgumentCaptor.forClass(Map.class);
+    verify(mockProtocol, times(2)).codeCheckBatch(captor.capture(), any());
+    assertThat(captor.getAllValues().get(1)).containsOnlyKeys(bar.file());
+  }
+
+  @Test
+  void scanCsFilesInParallel() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getAnalysisThreads(), "4");
+    RuleKey ruleKey = RuleKey.of(OmnisharpPlugin.REPOSITORY_KEY, "S12345");
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(new NewActiveRule.Builder().setRuleKey(ruleKey).build()).build());
+
+    List<InputFile> files = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      String name = "Foo" + i + ".cs";
+      files.add(addInputFile(sensorContext, name, "class Foo" + i + " {}"));
+    }
+    doAnswer(invocation -> {
+      File f = invocation.getArgument(0);
+      Diagnostic diag = new Gson().fromJson("{\"Id\": \"S12345\", \"FileName\": " + new Gson().toJson(f.getAbsolutePath())
+        + ", \"Line\": 1, \"Column\": 1, \"EndLine\": 1, \"EndColumn\": 5, \"Text\": \"Don't do this\"}", Diagnostic.class);
+      invocation.<Consumer<Diagnostic>>getArgument(1).accept(diag);
+      return true;
+    }).when(mockProtocol).codeCheck(any(), any());
+
+    underTest.execute(sensorContext);
+
+    for (InputFile file : files) {
+      verify(mockProtocol).codeCheck(eq(file.file()), any());
+    }
+    assertThat(sensorContext.allIssues()).extracting(i -> i.primaryLocation().inputComponent())
+      .containsExactlyInAnyOrderElementsOf(files);
+  }
+
+  @Test
+  void scanCsFilesInBatches() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getAnalysisBatchSize(), "2");
+
+    List<Path> filePaths = new ArrayList<>();
+    for (String name : List.of("Foo.cs", "Bar.cs", "Baz.cs")) {
+      filePaths.add(addInputFile(sensorContext, name, "// " + name).path());
+    }
+
+    ArgumentCaptor<Map<File, String>> captor = ArgumentCaptor.forClass(Map.class);
+
+    underTest.execute(sensorContext);
+
+    verify(mockProtocol).config(any());
+    verify(mockProtocol, times(2)).codeCheckBatch(captor.capture(), any());
+    verifyNoMoreInteractions(mockProtocol);
+
+    assertThat(captor.getAllValues()).extracting(Map::size).containsExactly(2, 1);
+    assertThat(captor.getAllValues()).flatExtracting(Map::keySet)
+      .containsExactlyInAnyOrderElementsOf(filePaths.stream().map(Path::toFile).collect(Collectors.toList()));
+    assertThat(captor.getAllValues()).flatExtracting(Map::values)
+      .containsExactlyInAnyOrder("// Foo.cs", "// Bar.cs", "// Baz.cs");
+  }
+
+  @Test
+  void analyzeFilesOfLoadedProjectsFirst() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getProgressiveAnalysis(), "true");
+    // Never ready, files are analyzed as their project is loaded
+    when(mockServer.whenReady()).thenReturn(new CompletableFuture<>());
+    var projectLoadState = new ProjectLoadState(List.of(baseDir.resolve("Core/Core.csproj"), baseDir.resolve("Web/Web.csproj")));
+    when(mockServer.getProjectLoadState()).thenReturn(projectLoadState);
+
+    List<File> files = new ArrayList<>();
+    for (String name : List.of("Core/Foo.cs", "Web/Bar.cs")) {
+      files.add(addInputFile(sensorContext, name, "// " + name).file());
+    }
+    projectLoadState.projectLoaded(baseDir.resolve("Web/Web.csproj").toString());
+    doAnswer(invocation -> {
+      projectLoadState.projectLoaded(baseDir.resolve("Core/Core.csproj").toString());
+      return true;
+    }).when(mockProtocol).codeCheck(eq(files.get(1)), any());
+
+    underTest.execute(sensorContext);
+
+    InOrder inOrder = inOrder(mockProtocol);
+    inOrder.verify(mockProtocol).codeCheck(eq(files.get(1)), any());
+    inOrder.verify(mockProtocol).codeCheck(eq(files.get(0)), any());
+  }
+
+  @Test
+  @Timeout(value = 20, unit = TimeUnit.SECONDS)
+  void stopWaitingForProjectsToLoadIfCancelled() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getProgressiveAnalysis(), "true");
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getLoadProjectsTimeout(), "999");
+    when(mockServer.whenReady()).thenReturn(new CompletableFuture<>());
+    when(mockServer.getProjectLoadState()).thenReturn(new ProjectLoadState(List.of(baseDir.resolve("Core/Core.csproj"))));
+
+    addInputFile(sensorContext, "Core/Foo.cs", "// Foo.cs");
+    CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS).execute(() -> sensorContext.setCancelled(true));
+
+    underTest.execute(sensorContext);
+
+    verify(mockProtocol, times(0)).codeCheck(any(), any());
+  }
+
+  @Test
+  void analyzeChangedAndRecentlyTouchedFilesFirst() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+
+    Map<String, InputFile.Status> statuses = Map.of("Big.cs", InputFile.Status.SAME, "Small.cs", InputFile.Status.SAME,
+      "Touched.cs", InputFile.Status.SAME, "Changed.cs", InputFile.Status.CHANGED);
+    for (String name : List.of("Big.cs", "Small.cs", "Touched.cs", "Changed.cs")) {
+      String content = "// " + (name.equals("Small.cs") ? "" : "Some content of ") + name;
+      sensorContext.fileSystem().add(newInputFile(name, content).setStatus(statuses.get(name)).build());
+    }
+    recentlyTouchedFiles.touch(baseDir.resolve("Touched.cs"));
+
+    underTest.execute(sensorContext);
+
+    InOrder inOrder = inOrder(mockProtocol);
+    for (String name : List.of("Changed.cs", "Touched.cs", "Small.cs", "Big.cs")) {
+      inOrder.verify(mockProtocol).codeCheck(eq(baseDir.resolve(name).toFile()), any());
+    }
+  }
+
   @Test
   void logIfProjectLoadTimeout() throws Exception {
     when(mockServer.whenReady()).thenReturn(CompletableFuture.failedFuture(new TimeoutException()));
@@ -187,7 +503,7 @@ class OmnisharpSensorTests {
 
     underTest.execute(sensorContext);
 
-    verify(mockServer).lazyStart(baseDir, false, false, null, null, null, null, 60, 60);
+    verify(mockServer).lazyStart(baseDir, false, false, null, null, null, null, 60, 60, 1, NO_RULES_CONFIG_HASH);
 
     verifyNoInteractions(mockProtocol);
 
@@ -205,6 +521,8 @@ class OmnisharpSensorTests {
     sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getLoadProjectsOnDemand(), "true");
     sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getStartupTimeout(), "999");
     sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getLoadProjectsTimeout(), "123");
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getServerPoolSize(), "4");
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getMemoryRecycleThreshold(), "1500");
 
     Path filePath = baseDir.resolve("Foo.cs");
     String content = "Console.WriteLine(\"Hello World!\");";
@@ -219,7 +537,8 @@ class OmnisharpSensorTests {
 
     underTest.execute(sensorContext);
 
-    verify(mockServer).lazyStart(baseDir, true, true, null, null, null, null, 999, 123);
+    verify(mockServer).lazyStart(baseDir, true, true, null, null, null, null, 999, 123, 4, NO_RULES_CONFIG_HASH);
+    verify(mockServer).setMemoryLimit(1500L * 1024 * 1024);
   }
 
   @Test
@@ -251,6 +570,30 @@ class OmnisharpSensorTests {
       .config(argThat(json -> json.toString().equals("{\"activeRules\":[{\"ruleId\":\"S123\"},{\"ruleId\":\"S456\",\"params\":{\"param1\":\"val1\",\"param2\":\"val2\"}}]}")));
   }
 
+  @Test
+  void passConcurrentAnalysis() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getConcurrentAnalysis(), "true");
+
+    Path filePath = baseDir.resolve("Foo.cs");
+    String content = "Console.WriteLine(\"Hello World!\");";
+    Files.write(filePath, content.getBytes(StandardCharsets.UTF_8));
+
+    InputFile file = TestInputFileBuilder.create("", "Foo.cs")
+      .setModuleBaseDir(baseDir)
+      .setLanguage(OmnisharpPlugin.LANGUAGE_KEY)
+      .setCharset(StandardCharsets.UTF_8)
+      .build();
+    sensorContext.fileSystem().add(file);
+
+    underTest.execute(sensorContext);
+
+    // Processes configured differently are not shared
+    verify(mockServer).lazyStart(baseDir, false, false, null, null, null, null, 60, 60, 1,
+      Hashing.sha256Hex("{\"activeRules\":[],\"concurrentAnalysis\":true}"));
+    verify(mockProtocol).config(argThat(json -> json.toString().equals("{\"activeRules\":[],\"concurrentAnalysis\":true}")));
+  }
+
   @Test
   void testCancellation() throws Exception {
     SensorContextTester sensorContext = SensorContextTester.create(baseDir);
@@ -269,9 +612,103 @@ class OmnisharpSensorTests {
 
     underTest.execute(sensorContext);
 
-    verify(mockServer).lazyStart(baseDir, false, false, null, null, null, null, 60, 60);
+    verify(mockServer).lazyStart(baseDir, false, false, null, null, null, null, 60, 60, 1, NO_RULES_CONFIG_HASH);
+    verify(mockProtocol).config(any());
+    verifyNoMoreInteractions(mockProtocol);
+  }
+
+  @Test
+  void analyzeWholeProject() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getWholeProjectAnalysis(), "true");
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getProgressiveAnalysis(), "true");
+    RuleKey ruleKey = RuleKey.of(OmnisharpPlugin.REPOSITORY_KEY, "S12345");
+    sensorContext.setActiveRules(new ActiveRulesBuilder().addRule(new NewActiveRule.Builder().setRuleKey(ruleKey).build()).build());
+
+    Path filePath = baseDir.resolve("Foo.cs");
+    String content = "Console.WriteLine(\"Hello World!\");";
+    InputFile file = addInputFile(sensorContext, "Foo.cs", content);
+
+    Diagnostic diag = mock(Diagnostic.class);
+    when(diag.getFilename()).thenReturn(filePath.toString());
+    when(diag.getId()).thenReturn("S12345");
+    when(diag.getLine()).thenReturn(1);
+    when(diag.getColumn()).thenReturn(1);
+    when(diag.getEndLine()).thenReturn(1);
+    when(diag.getEndColumn()).thenReturn(5);
+    when(diag.getText()).thenReturn("Don't do this");
+    doAnswer(invocation -> {
+      Consumer<List<Diagnostic>> fileDiagnosticsConsumer = invocation.getArgument(0);
+      fileDiagnosticsConsumer.accept(List.of(diag));
+      return null;
+    }).when(mockProtocol).codeCheckAll(any());
+
+    underTest.execute(sensorContext);
+
+    // All projects must be loaded before analyzing the whole project
+    verify(mockServer).whenReady();
+    verify(mockServer, times(0)).getProjectLoadState();
+    verify(mockProtocol).updateBufferAsync(filePath.toFile(), content);
     verify(mockProtocol).config(any());
+    verify(mockProtocol).codeCheckAll(any());
     verifyNoMoreInteractions(mockProtocol);
+    assertThat(sensorContext.allIssues()).extracting(Issue::ruleKey, i -> i.primaryLocation().inputComponent())
+      .containsOnly(tuple(ruleKey, file));
+  }
+
+  @Test
+  @Timeout(value = 20, unit = TimeUnit.SECONDS)
+  void sendAllBuffersBeforeWaitingInWholeProjectAnalysis() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+    sensorContext.settings().appendProperty(CSharpPropertyDefinitions.getWholeProjectAnalysis(), "true");
+    // Smaller files are sent first
+    Map<String, String> contents = Map.of("Foo.cs", "//", "Bar.cs", "// Bar.cs", "Baz.cs", "// Baz.cs");
+    for (String name : List.of("Foo.cs", "Bar.cs", "Baz.cs")) {
+      addInputFile(sensorContext, name, contents.get(name));
+    }
+    // Already sent
+    buffers.sent(baseDir.resolve("Baz.cs"), "// Baz.cs");
+    CompletableFuture<Void> fooUpdate = new CompletableFuture<>();
+    CompletableFuture<Void> barUpdate = new CompletableFuture<>();
+    when(mockProtocol.updateBufferAsync(baseDir.resolve("Foo.cs").toFile(), "//")).thenReturn(fooUpdate);
+    when(mockProtocol.updateBufferAsync(baseDir.resolve("Bar.cs").toFile(), "// Bar.cs")).thenAnswer(invocation -> {
+      // Would never complete if the sensor waited for the response of Foo.cs before sending Bar.cs
+      fooUpdate.complete(null);
+      barUpdate.complete(null);
+      return barUpdate;
+    });
+
+    underTest.execute(sensorContext);
+
+    verify(mockProtocol).updateBufferAsync(baseDir.resolve("Foo.cs").toFile(), "//");
+    verify(mockProtocol).updateBufferAsync(baseDir.resolve("Bar.cs").toFile(), "// Bar.cs");
+    verify(mockProtocol, times(0)).updateBufferAsync(eq(baseDir.resolve("Baz.cs").toFile()), any());
+    verify(mockProtocol).codeCheckAll(any());
+  }
+
+  @Test
+  void cancelInFlightCodeCheck() throws Exception {
+    SensorContextTester sensorContext = SensorContextTester.create(baseDir);
+    for (String name : List.of("Foo.cs", "Bar.cs")) {
+      addInputFile(sensorContext, name, "class Foo {}");
+    }
+    CountDownLatch cancelled = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      cancelled.countDown();
+      return null;
+    }).when(mockProtocol).cancelCodeChecks();
+    doAnswer(invocation -> {
+      sensorContext.setCancelled(true);
+      // Blocked until the watcher cancels the code check
+      assertThat(cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+      throw new CancellationException();
+    }).when(mockProtocol).codeCheck(any(), any());
+
+    underTest.execute(sensorContext);
+
+    verify(mockProtocol, atLeastOnce()).cancelCodeChecks();
+    verify(mockProtocol, times(1)).codeCheck(any(), any());
+    assertThat(sensorContext.allIssues()).isEmpty();
   }
 
   @Test
@@ -19,6 +19,7 @@
  */
 package org.sonarsource.sonarlint.omnisharp;
 
+import com.google.gson.JsonObject;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -34,11 +35,14 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import org.assertj.core.api.SoftAssertionsProvider.ThrowingRunnable;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.invocation.InvocationOnMock;
@@ -47,12 +51,16 @@ import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.api.testfixtures.log.LogTesterJUnit5;
 import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpEndpoints;
+import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpRequest;
 import org.sonarsource.sonarlint.omnisharp.protocol.OmnisharpResponseProcessor;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -85,7 +93,7 @@ class OmnisharpServerControllerTests {
     anotherSolutionDir = tmpDir.resolve("anotherSolution");
     endpoints = mock(OmnisharpEndpoints.class);
     commandBuilder = mock(OmnisharpCommandBuilder.class);
-    underTest = new OmnisharpServerController(endpoints, new FakeOmnisharpResponseProcessor(), commandBuilder);
+    underTest = new OmnisharpServerController(endpoints, new FakeOmnisharpResponseProcessor(), commandBuilder, new OmnisharpServerRegistry());
     // Does nothing, for coverage
     underTest.start();
   }
@@ -98,7 +106,7 @@ class OmnisharpServerControllerTests {
 
   @Test
   void dontWriteRequestIfServerStopped() {
-    underTest.writeRequestOnStdIn("foo");
+    underTest.writeRequestOnStdIn(new OmnisharpRequest(1, "foo", null));
     assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Server stopped, ignoring request");
   }
 
@@ -143,6 +151,372 @@ class OmnisharpServerControllerTests {
     }
   }
 
+  @Test
+  void forgetBuffersOnRestart() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+    Path file = solutionDir.resolve("Foo.cs");
+
+    lazyStart();
+    BufferLedger buffers = underTest.getBuffers();
+    buffers.sent(file, "content");
+    assertThat(underTest.getBuffers().getSnapshot(file)).isEqualTo("content");
+    assertThat(underTest.getBuffers().isUpToDate(file, "content")).isTrue();
+    assertThat(underTest.getBuffers().isUpToDate(file, "other content")).isFalse();
+
+    underTest.stop();
+    lazyStart();
+
+    assertThat(underTest.isCurrent(buffers)).isFalse();
+    assertThat(underTest.getBuffers().getSnapshot(file)).isNull();
+    assertThat(underTest.getBuffers().isUpToDate(file, "content")).isFalse();
+  }
+
+  @Test
+  void startOneProcessPerShardInPoolMode() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + emulateProjectLoaded() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+    Files.createDirectories(solutionDir);
+    Path solution = solutionDir.resolve("All.sln");
+    Files.write(solution, ("Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Core\", \"Core\\Core.csproj\", \"{11111111-1111-1111-1111-111111111111}\"\n"
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Web\", \"Web\\Web.csproj\", \"{22222222-2222-2222-2222-222222222222}\"\n")
+      .getBytes(StandardCharsets.UTF_8));
+
+    underTest.lazyStart(solutionDir, false, false, null, null, null, solution, 1, 1, 2);
+
+    assertThat(underTest.isOmnisharpStarted()).isTrue();
+    assertThat(underTest.getRunningProcessCount()).isEqualTo(2);
+    underTest.whenReady().get();
+    assertThat(processedOutput).containsExactlyInAnyOrder("STARTED", "LOADED", "STARTED", "LOADED");
+    verify(commandBuilder).build(eq(solutionDir), any(), any(), argThat(p -> p.getFileName().toString().equals("All.shard1.slnf")), anyBoolean());
+    verify(commandBuilder).build(eq(solutionDir), any(), any(), argThat(p -> p.getFileName().toString().equals("All.shard2.slnf")), anyBoolean());
+    assertThat(underTest.getProcessIndex(solutionDir.resolve("Core/Foo.cs").toFile())).isZero();
+    assertThat(underTest.getProcessIndex(solutionDir.resolve("Web/Controllers/Bar.cs").toFile())).isEqualTo(1);
+    assertThat(underTest.getProcessIndex(solutionDir.resolve("Other.cs").toFile())).isZero();
+
+    underTest.stop();
+    assertThat(underTest.getRunningProcessCount()).isZero();
+  }
+
+  @Test
+  void singleProcessInPoolModeWithoutSolution() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+
+    underTest.lazyStart(solutionDir, false, false, null, null, null, null, 1, 1, 2);
+
+    assertThat(underTest.getRunningProcessCount()).isEqualTo(1);
+    assertThat(processedOutput).containsExactly("STARTED");
+  }
+
+  @Test
+  void stopWhileStartingDoesntWaitForStartup() throws Exception {
+    mockOmnisharpRun(waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+
+    CompletableFuture<Void> started = underTest.lazyStartAsync(solutionDir, false, false, null, null, null, null, 10, 10, 1, null);
+    assertThat(started).isNotDone();
+
+    underTest.stopServer();
+
+    assertThat(started).isCancelled();
+    assertThat(underTest.isOmnisharpStarted()).isFalse();
+  }
+
+  @Test
+  void shareServerBetweenModulesWithSameSettings() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+    var registry = new OmnisharpServerRegistry();
+    var responseProcessor = new FakeOmnisharpResponseProcessor();
+    underTest = new OmnisharpServerController(endpoints, responseProcessor, commandBuilder, registry);
+    var otherModule = new OmnisharpServerController(mock(OmnisharpEndpoints.class), responseProcessor, commandBuilder, registry);
+
+    lazyStart();
+    otherModule.lazyStart(solutionDir, false, false, null, null, null, null, 1, 1);
+
+    assertThat(processedOutput).containsExactly("STARTED");
+    assertThat(otherModule.isOmnisharpStarted()).isTrue();
+
+    // Still used by the first module
+    otherModule.stop();
+    assertThat(otherModule.isOmnisharpStarted()).isFalse();
+    assertThat(underTest.isOmnisharpStarted()).isTrue();
+    verify(endpoints, never()).stopServer();
+  }
+
+  @Test
+  void dontShareServerBetweenModulesWithDifferentSettings() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+    var registry = new OmnisharpServerRegistry();
+    var responseProcessor = new FakeOmnisharpResponseProcessor();
+    var otherEndpoints = mock(OmnisharpEndpoints.class);
+    underTest = new OmnisharpServerController(endpoints, responseProcessor, commandBuilder, registry);
+    var otherModule = new OmnisharpServerController(otherEndpoints, responseProcessor, commandBuilder, registry);
+    doAnswer(invocation -> {
+      otherModule.writeRequestOnStdIn(new OmnisharpRequest(1, "/stopserver", null));
+      return null;
+    }).when(otherEndpoints).stopServer();
+
+    lazyStart();
+    otherModule.lazyStart(anotherSolutionDir, false, false, null, null, null, null, 1, 1);
+
+    assertThat(processedOutput).containsExactly("STARTED", "STARTED");
+
+    otherModule.stop();
+    assertThat(otherModule.isOmnisharpStarted()).isFalse();
+    assertThat(underTest.isOmnisharpStarted()).isTrue();
+  }
+
+  @Test
+  void detectProjectsAddedToSolution() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+    Files.createDirectories(solutionDir);
+    Path solution = solutionDir.resolve("All.sln");
+    String core = "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Core\", \"Core\\Core.csproj\", \"{11111111-1111-1111-1111-111111111111}\"\n";
+    String web = "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Web\", \"Web\\Web.csproj\", \"{22222222-2222-2222-2222-222222222222}\"\n";
+    Files.write(solution, core.getBytes(StandardCharsets.UTF_8));
+
+    underTest.lazyStart(solutionDir, false, false, null, null, null, solution, 1, 1);
+
+    Files.write(solution, (core + web).getBytes(StandardCharsets.UTF_8));
+    assertThat(underTest.projectsAddedToSolution(solution)).containsExactly(solutionDir.resolve("Web/Web.csproj").toFile());
+    // Already loaded
+    assertThat(underTest.projectsAddedToSolution(solution)).isEmpty();
+    assertThat(underTest.projectsAddedToSolution(solutionDir.resolve("Other.sln"))).isNull();
+
+    Files.write(solution, web.getBytes(StandardCharsets.UTF_8));
+    assertThat(underTest.projectsAddedToSolution(solution)).isNull();
+  }
+
+  @Test
+  void routeProjectsAddedToSolutionInPoolMode() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + emulateProjectLoaded() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+    Files.createDirectories(solutionDir);
+    Path solution = solutionDir.resolve("All.sln");
+    String projects = "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Core\", \"Core\\Core.csproj\", \"{11111111-1111-1111-1111-111111111111}\"\n"
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Web\", \"Web\\Web.csproj\", \"{22222222-2222-2222-2222-222222222222}\"\n";
+    Files.write(solution, projects.getBytes(StandardCharsets.UTF_8));
+    underTest.lazyStart(solutionDir, false, false, null, null, null, solution, 1, 1, 2);
+    underTest.whenReady().get();
+
+    Path api = solutionDir.resolve("Api/Api.csproj");
+    Files.createDirectories(api.getParent());
+    Files.write(api, "<Project><ItemGroup><ProjectReference Include=\"..\\Core\\Core.csproj\" /></ItemGroup></Project>".getBytes(StandardCharsets.UTF_8));
+    Files.write(solution, (projects
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Api\", \"Api\\Api.csproj\", \"{33333333-3333-3333-3333-333333333333}\"\n")
+      .getBytes(StandardCharsets.UTF_8));
+    assertThat(underTest.projectsAddedToSolution(solution)).containsExactly(api.toFile());
+
+    // Same process as the referenced project
+    assertThat(underTest.getProcessIndex(api.toFile())).isZero();
+    assertThat(underTest.getProcessIndex(solutionDir.resolve("Api/Controllers/Foo.cs").toFile())).isZero();
+    // Waited for until OmniSharp reports it
+    assertThat(underTest.getProjectLoadState().isLoaded(solutionDir.resolve("Api/Controllers/Foo.cs"))).isFalse();
+
+    Files.write(solution, (projects
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Api\", \"Api\\Api.csproj\", \"{33333333-3333-3333-3333-333333333333}\"\n"
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Lib\", \"Lib\\Lib.csproj\", \"{44444444-4444-4444-4444-444444444444}\"\n")
+      .getBytes(StandardCharsets.UTF_8));
+    assertThat(underTest.projectsAddedToSolution(solution)).containsExactly(solutionDir.resolve("Lib/Lib.csproj").toFile());
+
+    // No reference, so the process owning the fewest projects
+    assertThat(underTest.getProcessIndex(solutionDir.resolve("Lib/Bar.cs").toFile())).isEqualTo(1);
+
+    underTest.stop();
+  }
+
+  @Test
+  void routeCreatedProjectsToTheirOwnerInPoolMode() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + emulateProjectLoaded() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+    Files.createDirectories(solutionDir);
+    Path solution = solutionDir.resolve("All.sln");
+    String projects = "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Core\", \"Core\\Core.csproj\", \"{11111111-1111-1111-1111-111111111111}\"\n"
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Web\", \"Web\\Web.csproj\", \"{22222222-2222-2222-2222-222222222222}\"\n";
+    Files.write(solution, projects.getBytes(StandardCharsets.UTF_8));
+    underTest.lazyStart(solutionDir, false, false, null, null, null, solution, 1, 1, 2);
+    underTest.whenReady().get();
+
+    Path api = solutionDir.resolve("Api/Api.csproj");
+    Files.createDirectories(api.getParent());
+    Files.write(api, "<Project><ItemGroup><ProjectReference Include=\"..\\Web\\Web.csproj\" /></ItemGroup></Project>".getBytes(StandardCharsets.UTF_8));
+    underTest.projectCreated(api);
+
+    // Same process as the referenced project
+    assertThat(underTest.getProcessIndex(api.toFile())).isEqualTo(1);
+
+    Files.write(solution, (projects
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Api\", \"Api\\Api.csproj\", \"{33333333-3333-3333-3333-333333333333}\"\n")
+      .getBytes(StandardCharsets.UTF_8));
+    assertThat(underTest.projectsAddedToSolution(solution)).containsExactly(api.toFile());
+
+    // Adding the project to the solution doesn't move it to another process
+    assertThat(underTest.getProcessIndex(api.toFile())).isEqualTo(1);
+    assertThat(underTest.getProcessIndex(solutionDir.resolve("Api/Controllers/Foo.cs").toFile())).isEqualTo(1);
+
+    underTest.stop();
+  }
+
+  @Test
+  void cantDetectProjectsAddedToUnknownSolution() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+
+    lazyStart();
+
+    assertThat(underTest.projectsAddedToSolution(solutionDir.resolve("All.sln"))).isNull();
+  }
+
+  @Test
+  void warmRestartSwitchesToReplacementOnceReady() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + emulateProjectLoaded() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+    Path file = solutionDir.resolve("Foo.cs");
+
+    lazyStart();
+    underTest.whenReady().get();
+    BufferLedger buffers = underTest.getBuffers();
+    buffers.sent(file, "content");
+
+    underTest.restartInBackground();
+
+    // The current process is still used while the replacement is loading
+    assertThat(underTest.isOmnisharpStarted()).isTrue();
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertThat(logTester.logs(LoggerLevel.INFO)).contains("OmniSharp restarted"));
+    assertThat(processedOutput).containsExactly("STARTED", "LOADED", "STARTED", "LOADED");
+    assertThat(underTest.isOmnisharpStarted()).isTrue();
+    assertThat(underTest.getBuffers().getSnapshot(file)).isNull();
+    // A send to the previous process, recorded after the switch, doesn't leak into the ledger of the replacement
+    assertThat(underTest.isCurrent(buffers)).isFalse();
+    buffers.sent(file, "late content");
+    assertThat(underTest.getBuffers().getSnapshot(file)).isNull();
+    verify(endpoints, never()).stopServer();
+  }
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void warmRestartDuringAnalysisConfiguresTheReplacement() throws Exception {
+    Path receivedConfig = omnisharpDir.resolve("config.json");
+    mockOmnisharpRun(emulateStartEvent() + emulateProjectLoaded() + answerConfigRequest(receivedConfig) + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+
+    lazyStart();
+    underTest.whenReady().get();
+    JsonObject config = new JsonObject();
+    config.addProperty("concurrentAnalysis", true);
+    underTest.configSent(config);
+    Runnable codeCheckCompleted = underTest.codeCheckStarted();
+
+    // Not recycled while a code check is pending, but restarted when the solution changes
+    assertThat(underTest.recycleIfMemoryAbove(0)).isFalse();
+    underTest.restartInBackground();
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertThat(logTester.logs(LoggerLevel.INFO)).contains("OmniSharp restarted"));
+    assertThat(Files.readString(receivedConfig))
+      .contains("\"Command\":\"/sonarlint/config\"")
+      .contains("\"Arguments\":{\"concurrentAnalysis\":true}");
+    codeCheckCompleted.run();
+    verify(endpoints, never()).stopServer();
+  }
+
+  @Test
+  void coldRestartIfReplacementFailsToStart() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + emulateProjectLoaded() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+
+    lazyStart();
+    underTest.whenReady().get();
+
+    when(commandBuilder.build(any(), any(), any(), any(), anyBoolean())).thenReturn(new ProcessBuilder("not existing command"));
+    underTest.restartInBackground();
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertThat(underTest.isOmnisharpStarted()).isFalse());
+    assertThat(logTester.logs(LoggerLevel.WARN)).contains("Unable to restart OmniSharp in the background, it will be restarted during the next analysis");
+    verify(endpoints).stopServer();
+  }
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void recycleWhenMemoryThresholdIsExceeded() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + emulateProjectLoaded() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+
+    lazyStart();
+    underTest.whenReady().get();
+
+    assertThat(underTest.recycleIfMemoryAbove(Long.MAX_VALUE)).isFalse();
+    assertThat(underTest.recycleIfMemoryAbove(0)).isTrue();
+    // Already being recycled
+    assertThat(underTest.recycleIfMemoryAbove(0)).isFalse();
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertThat(logTester.logs(LoggerLevel.INFO)).contains("OmniSharp restarted"));
+    assertThat(underTest.isOmnisharpStarted()).isTrue();
+    verify(endpoints, never()).stopServer();
+  }
+
+  @Test
+  void dontRecycleIfNotStarted() {
+    assertThat(underTest.recycleIfMemoryAbove(0)).isFalse();
+  }
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void recycleWhenMemoryLimitIsExceeded() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + emulateProjectLoaded() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+
+    lazyStart();
+    underTest.whenReady().get();
+
+    // Disabled by default
+    assertThat(underTest.recycleIfMemoryAboveLimit()).isFalse();
+    underTest.setMemoryLimit(Long.MAX_VALUE);
+    assertThat(underTest.recycleIfMemoryAboveLimit()).isFalse();
+    underTest.setMemoryLimit(1);
+    assertThat(underTest.recycleIfMemoryAboveLimit()).isTrue();
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertThat(logTester.logs(LoggerLevel.INFO)).contains("OmniSharp restarted"));
+  }
+
+  @Test
+  void warmUpOnceProjectsAreLoaded() throws Exception {
+    mockOmnisharpRun(emulateStartEvent() + emulateProjectLoaded() + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+
+    lazyStart();
+    underTest.whenReady().get();
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> verify(endpoints).warmUp());
+  }
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void warmUpOnceAllProjectsOfTheSolutionAreLoaded() throws Exception {
+    Files.createDirectories(solutionDir);
+    Path solution = solutionDir.resolve("All.sln");
+    Files.write(solution, ("Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Core\", \"Core\\Core.csproj\", \"{11111111-1111-1111-1111-111111111111}\"\n"
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Web\", \"Web\\Web.csproj\", \"{22222222-2222-2222-2222-222222222222}\"\n")
+      .getBytes(StandardCharsets.UTF_8));
+    // OmniSharp reports the solution as loaded with its first project
+    mockOmnisharpRun(emulateStartEvent() + emulateProjectLoaded() + emulateProjectLoaded(solutionDir.resolve("Core/Core.csproj")) + waitForKeyPress()
+      + emulateProjectLoaded(solutionDir.resolve("Web/Web.csproj")) + waitForKeyPress());
+    pressKeyWhenEndpointCallStopServer();
+
+    underTest.lazyStart(solutionDir, false, false, null, null, null, solution, 1, 1);
+    underTest.whenReady().get();
+
+    await().during(500, TimeUnit.MILLISECONDS).atMost(2, TimeUnit.SECONDS).untilAsserted(() -> verify(endpoints, never()).warmUp());
+
+    // Resume the script, so that the last project is reported
+    underTest.writeRequestOnStdIn(new OmnisharpRequest(1, "resume", null));
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> verify(endpoints).warmUp());
+  }
+
   @Test
   void multipleCallToStartOnlyStartsOnce() throws Exception {
     mockOmnisharpRun(emulateStartEvent() + waitForKeyPress());
@@ -216,6 +590,36 @@ class OmnisharpServerControllerTests {
       "Using a different load projects on demand setting, OmniSharp has to be restarted");
   }
 
+  @Test
+  void automaticallyRestartIfDifferentRules() throws Exception {
+    automaticallyRestartIfDifferentConfig(
+      () -> underTest.lazyStart(solutionDir, false, false, null, null, null, null, 1, 1, 1, "rules1"),
+      () -> underTest.lazyStart(solutionDir, false, false, null, null, null, null, 1, 1, 1, "rules2"),
+      "Using a different configuration of the rules, OmniSharp has to be restarted");
+  }
+
+  @Test
+  void automaticallyRestartIfDifferentRuntimeProfile() throws Exception {
+    automaticallyRestartIfDifferentConfig(
+      () -> lazyStart(),
+      () -> {
+        when(commandBuilder.getRuntimeProfile()).thenReturn(OmnisharpCommandBuilder.RuntimeProfile.THROUGHPUT);
+        lazyStart();
+      },
+      "Using a different runtime profile, OmniSharp has to be restarted");
+  }
+
+  @Test
+  void automaticallyRestartIfDifferentHeapHardLimit() throws Exception {
+    automaticallyRestartIfDifferentConfig(
+      () -> lazyStart(),
+      () -> {
+        when(commandBuilder.getHeapHardLimitMb()).thenReturn(2048L);
+        lazyStart();
+      },
+      "Using a different heap hard limit, OmniSharp has to be restarted");
+  }
+
   private void automaticallyRestartIfDifferentConfig(ThrowingRunnable first, ThrowingRunnable second, String expectedMsg) throws Exception {
     mockOmnisharpRun(emulateStartEvent() + waitForKeyPress());
     pressKeyWhenEndpointCallStopServer();
@@ -260,7 +664,7 @@ class OmnisharpServerControllerTests {
       @Override
       public Void answer(InvocationOnMock invocation) throws Throwable {
         // Write something on stdin to resume program
-        underTest.writeRequestOnStdIn("");
+        underTest.writeRequestOnStdIn(new OmnisharpRequest(1, "resume", null));
         return null;
       }
     }).when(endpoints).stopServer();
@@ -273,7 +677,7 @@ class OmnisharpServerControllerTests {
     lazyStart();
 
     // Write something on stdin to resume program
-    underTest.writeRequestOnStdIn("");
+    underTest.writeRequestOnStdIn(new OmnisharpRequest(1, "resume", null));
 
     // give time for process to die
     Thread.sleep(1000);
@@ -335,7 +739,7 @@ class OmnisharpServerControllerTests {
 
   @Test
   void waitingForProjectToLoadDoesntPreventStopping() throws Exception {
-    underTest = new OmnisharpServerController(endpoints, new FakeOmnisharpResponseProcessor(), commandBuilder);
+    underTest = new OmnisharpServerController(endpoints, new FakeOmnisharpResponseProcessor(), commandBuilder, new OmnisharpServerRegistry());
 
     mockOmnisharpRun(emulateStartEvent() + waitForKeyPress());
     pressKeyWhenEndpointCallStopServer();
@@ -409,6 +813,24 @@ class OmnisharpServerControllerTests {
     return "echo " + FakeOmnisharpResponseProcessor.LOADED_EVENT + "\n";
   }
 
+  /**
+   * Record the first request if it is a <code>/sonarlint/config</code> and answer it, otherwise exit.
+   */
+  private String answerConfigRequest(Path receivedConfig) {
+    return "read -r line\n"
+      + "case \"$line\" in\n"
+      + "  *sonarlint/config*) ;;\n"
+      + "  *) exit 0 ;;\n"
+      + "esac\n"
+      + "echo \"$line\" > \"" + receivedConfig + "\"\n"
+      + "seq=$(echo \"$line\" | sed -E 's/.*\"Seq\":([0-9]+).*/\\1/')\n"
+      + "echo \"{\\\"Type\\\":\\\"response\\\",\\\"Request_seq\\\":$seq,\\\"Success\\\":true}\"\n";
+  }
+
+  private String emulateProjectLoaded(Path project) {
+    return "echo " + FakeOmnisharpResponseProcessor.PROJECT_EVENT_PREFIX + project + "\n";
+  }
+
   private String waitForKeyPress() {
     if (System2.INSTANCE.isOsWindows()) {
       // Prevent pause to write "Press any key to continue..." to stdout
@@ -433,9 +855,10 @@ class OmnisharpServerControllerTests {
 
     private static final String STARTED_EVENT = "STARTED";
     private static final String LOADED_EVENT = "LOADED";
+    private static final String PROJECT_EVENT_PREFIX = "PROJECT ";
 
     @Override
-    public void handleOmnisharpOutput(CompletableFuture<Void> startFuture, CompletableFuture<Void> loadProjectsFuture, String line) {
+    public void handleOmnisharpOutput(CompletableFuture<Void> startFuture, CompletableFuture<Void> loadProjectsFuture, Consumer<String> projectLoaded, String line) {
       processedOutput.add(line);
       switch (line) {
         case STARTED_EVENT:
@@ -444,6 +867,12 @@ class OmnisharpServerControllerTests {
         case LOADED_EVENT:
           loadProjectsFuture.complete(null);
           break;
+        default:
+          if (line.startsWith(PROJECT_EVENT_PREFIX)) {
+            projectLoaded.accept(line.substring(PROJECT_EVENT_PREFIX.length()));
+          } else {
+            super.handleOmnisharpOutput(startFuture, loadProjectsFuture, projectLoaded, line);
+          }
       }
     }
   }
@@ -0,0 +1,84 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.nio.file.Paths;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.omnisharp.OmnisharpServerController.ServerKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class OmnisharpServerRegistryTests {
+
+  private final OmnisharpServerRegistry underTest = new OmnisharpServerRegistry();
+
+  @Test
+  void shareServerForSameKey() {
+    var module1 = mock(OmnisharpServerController.class);
+    var module2 = mock(OmnisharpServerController.class);
+
+    var server1 = underTest.acquire(key("solution"), module1);
+    var server2 = underTest.acquire(key("solution"), module2);
+    var otherServer = underTest.acquire(key("otherSolution"), module2);
+
+    assertThat(server2).isSameAs(server1);
+    assertThat(otherServer).isNotSameAs(server1);
+    assertThat(underTest.getUserCount(key("solution"))).isEqualTo(2);
+  }
+
+  @Test
+  void lastUserHasToStopServer() {
+    var module1 = mock(OmnisharpServerController.class);
+    var module2 = mock(OmnisharpServerController.class);
+    var server = underTest.acquire(key("solution"), module1);
+    underTest.acquire(key("solution"), module1);
+    underTest.acquire(key("solution"), module2);
+
+    assertThat(underTest.release(key("solution"), module1)).isFalse();
+    assertThat(underTest.release(key("solution"), module2)).isTrue();
+    assertThat(underTest.getUserCount(key("solution"))).isZero();
+
+    // A new server is created for the next user
+    assertThat(underTest.acquire(key("solution"), module1)).isNotSameAs(server);
+  }
+
+  @Test
+  void oneUserPerServer() {
+    var module1 = mock(OmnisharpServerController.class);
+    var module2 = mock(OmnisharpServerController.class);
+    var module3 = mock(OmnisharpServerController.class);
+    underTest.acquire(key("solution"), module1);
+    underTest.acquire(key("solution"), module2);
+    underTest.acquire(key("otherSolution"), module3);
+
+    assertThat(underTest.getOneUserPerServer()).hasSize(2).contains(module3).containsAnyOf(module1, module2);
+  }
+
+  @Test
+  void releaseUnknownKey() {
+    assertThat(underTest.release(key("solution"), mock(OmnisharpServerController.class))).isTrue();
+  }
+
+  private static ServerKey key(String solution) {
+    return new ServerKey(Paths.get("baseDir"), null, null, null, Paths.get(solution + ".sln"), true, false, 1, null, 0, null);
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProcessMemoryTests {
+
+  @TempDir
+  Path procDir;
+
+  @Test
+  void readResidentSetSize() throws IOException {
+    Path statusFile = procDir.resolve("42").resolve("status");
+    Files.createDirectories(statusFile.getParent());
+    Files.writeString(statusFile, "Name:\tdotnet\nVmPeak:\t 4000000 kB\nVmRSS:\t  123456 kB\nThreads:\t30\n");
+
+    assertThat(ProcessMemory.residentSetSize(procDir, 42)).hasValue(123456L * 1024);
+  }
+
+  @Test
+  void emptyIfNoResidentSetSize() throws IOException {
+    Path statusFile = procDir.resolve("42").resolve("status");
+    Files.createDirectories(statusFile.getParent());
+    Files.writeString(statusFile, "Name:\tzombie\nState:\tZ (zombie)\n");
+
+    assertThat(ProcessMemory.residentSetSize(procDir, 42)).isEmpty();
+  }
+
+  @Test
+  void emptyIfProcessNotFound() {
+    assertThat(ProcessMemory.residentSetSize(procDir, 42)).isEmpty();
+  }
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void readResidentSetSizeOfCurrentProcess() {
+    assertThat(ProcessMemory.residentSetSize(ProcessHandle.current().pid())).hasValueSatisfying(rss -> assertThat(rss).isPositive());
+  }
+
+}
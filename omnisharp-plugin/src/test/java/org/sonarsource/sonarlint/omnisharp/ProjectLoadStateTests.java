@@ -0,0 +1,109 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProjectLoadStateTests {
+
+  @TempDir
+  Path solutionDir;
+
+  @Test
+  void filesAreLoadedWithTheirProject() {
+    var underTest = new ProjectLoadState(List.of(solutionDir.resolve("Core/Core.csproj"), solutionDir.resolve("Core/Tests/Tests.csproj")));
+
+    underTest.projectLoaded(solutionDir.resolve("Core/Tests/Tests.csproj").toString());
+
+    assertThat(underTest.isLoaded(solutionDir.resolve("Core/Tests/FooTest.cs"))).isTrue();
+    assertThat(underTest.isLoaded(solutionDir.resolve("Core/Foo.cs"))).isFalse();
+    assertThat(underTest.isFullyLoaded()).isFalse();
+  }
+
+  @Test
+  void filesOutsideOfProjectsAreLoadedWithTheLastProject() {
+    var underTest = new ProjectLoadState(List.of(solutionDir.resolve("Core/Core.csproj"), solutionDir.resolve("Web/Web.csproj")));
+    Path miscFile = solutionDir.resolve("Misc.cs");
+
+    underTest.projectLoaded(solutionDir.resolve("Core/Core.csproj").toString());
+    assertThat(underTest.isLoaded(miscFile)).isFalse();
+
+    underTest.projectLoaded(solutionDir.resolve("Web/Web.csproj").toString());
+    assertThat(underTest.isLoaded(miscFile)).isTrue();
+    assertThat(underTest.isFullyLoaded()).isTrue();
+  }
+
+  @Test
+  void waitForProjectsAddedLater() {
+    var underTest = new ProjectLoadState(List.of(solutionDir.resolve("Core/Core.csproj")));
+    underTest.projectLoaded(solutionDir.resolve("Core/Core.csproj").toString());
+    assertThat(underTest.isFullyLoaded()).isTrue();
+
+    underTest.addProjects(List.of(solutionDir.resolve("Core/Api/Api.csproj")));
+
+    assertThat(underTest.isLoaded(solutionDir.resolve("Core/Api/Controller.cs"))).isFalse();
+    assertThat(underTest.isLoaded(solutionDir.resolve("Core/Foo.cs"))).isTrue();
+    assertThat(underTest.isFullyLoaded()).isFalse();
+
+    underTest.projectLoaded(solutionDir.resolve("Core/Api/Api.csproj").toString());
+    assertThat(underTest.isLoaded(solutionDir.resolve("Core/Api/Controller.cs"))).isTrue();
+  }
+
+  @Test
+  void notifyWhenAProjectIsLoaded() {
+    var underTest = new ProjectLoadState(List.of(solutionDir.resolve("Core/Core.csproj")));
+    CompletableFuture<Void> changed = underTest.whenChanged();
+
+    assertThat(changed).isNotDone();
+    underTest.projectLoaded(solutionDir.resolve("Core/Core.csproj").toString());
+
+    assertThat(changed).isDone();
+    assertThat(underTest.whenChanged()).isNotDone();
+
+    // Already known
+    CompletableFuture<Void> next = underTest.whenChanged();
+    underTest.projectLoaded(solutionDir.resolve("Core/Core.csproj").toString());
+    assertThat(next).isNotDone();
+  }
+
+  @Test
+  void notifyWhenAllProjectsAreLoaded() {
+    var underTest = new ProjectLoadState(List.of(solutionDir.resolve("Core/Core.csproj"), solutionDir.resolve("Web/Web.csproj")));
+    CompletableFuture<Void> loaded = underTest.whenFullyLoaded();
+
+    underTest.projectLoaded(solutionDir.resolve("Core/Core.csproj").toString());
+    assertThat(loaded).isNotDone();
+
+    underTest.addProjects(List.of(solutionDir.resolve("Api/Api.csproj")));
+    underTest.projectLoaded(solutionDir.resolve("Web/Web.csproj").toString());
+    assertThat(loaded).isNotDone();
+
+    underTest.projectLoaded(solutionDir.resolve("Api/Api.csproj").toString());
+    assertThat(loaded).isDone();
+    assertThat(underTest.whenFullyLoaded()).isDone();
+  }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecentlyTouchedFilesTests {
+
+  private final RecentlyTouchedFiles underTest = new RecentlyTouchedFiles();
+
+  @Test
+  void containsTouchedFiles() {
+    underTest.touch(Paths.get("src/Foo.cs"));
+
+    assertThat(underTest.contains(Paths.get("src/Foo.cs"))).isTrue();
+    assertThat(underTest.contains(Paths.get("src/../src/Foo.cs").toAbsolutePath())).isTrue();
+    assertThat(underTest.contains(Paths.get("src/Bar.cs"))).isFalse();
+  }
+
+  @Test
+  void forgetLeastRecentlyTouchedFiles() {
+    for (int i = 0; i < RecentlyTouchedFiles.MAX_FILES; i++) {
+      underTest.touch(Paths.get("File" + i + ".cs"));
+    }
+    // Touched again, so it is now the most recent one
+    underTest.touch(Paths.get("File0.cs"));
+
+    underTest.touch(Paths.get("Other.cs"));
+
+    assertThat(underTest.contains(Paths.get("File0.cs"))).isTrue();
+    assertThat(underTest.contains(Paths.get("File1.cs"))).isFalse();
+    assertThat(underTest.contains(Paths.get("Other.cs"))).isTrue();
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp;
+
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SolutionShardsTests {
+
+  private static final String SOLUTION = "\n"
+    + "Microsoft Visual Studio Solution File, Format Version 12.00\n"
+    + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Core\", \"src\\Core\\Core.csproj\", \"{11111111-1111-1111-1111-111111111111}\"\n"
+    + "EndProject\n"
+    + "Project(\"{2150E333-8FDC-42A3-9474-1A3956D46DE8}\") = \"Tests\", \"Tests\", \"{22222222-2222-2222-2222-222222222222}\"\n"
+    + "EndProject\n"
+    + "Project(\"{9A19103F-16F7-4668-BE54-9A1E7A4F7556}\") = \"Web\", \"src\\Web\\Web.csproj\", \"{33333333-3333-3333-3333-333333333333}\"\n"
+    + "EndProject\n"
+    + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Core.Tests\", \"tests\\Core.Tests\\Core.Tests.csproj\", \"{44444444-4444-4444-4444-444444444444}\"\n"
+    + "EndProject\n"
+    + "Project(\"{F184B08F-C81C-45F6-A57F-5ABD9991F28F}\") = \"Legacy\", \"legacy\\Legacy.vbproj\", \"{55555555-5555-5555-5555-555555555555}\"\n"
+    + "EndProject\n"
+    + "Global\n"
+    + "EndGlobal\n";
+
+  private Path baseDir;
+  private Path outputDir;
+  private Path solution;
+
+  @BeforeEach
+  void prepare(@TempDir Path tmp) throws IOException {
+    baseDir = tmp.toRealPath();
+    outputDir = Files.createDirectories(baseDir.resolve("shards"));
+    solution = baseDir.resolve("All.sln");
+    Files.write(solution, SOLUTION.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void readOnlyCSharpProjects() throws IOException {
+    assertThat(SolutionShards.readProjects(solution))
+      .containsExactly("src\\Core\\Core.csproj", "src\\Web\\Web.csproj", "tests\\Core.Tests\\Core.Tests.csproj");
+  }
+
+  @Test
+  void splitIndependentProjects() throws IOException {
+    List<SolutionShards.Shard> shards = SolutionShards.split(solution, 2, outputDir);
+
+    assertThat(shards).hasSize(2);
+    assertThat(shards.get(0).getSolutionFilter()).isEqualTo(outputDir.resolve("All.shard1.slnf"));
+    assertThat(shards.get(0).getProjectDirs()).containsExactly(baseDir.resolve("src/Core"), baseDir.resolve("tests/Core.Tests"));
+    assertThat(shards.get(1).getProjectDirs()).containsExactly(baseDir.resolve("src/Web"));
+
+    var filter = JsonParser.parseString(Files.readString(shards.get(1).getSolutionFilter())).getAsJsonObject().getAsJsonObject("solution");
+    assertThat(filter.get("path").getAsString()).isEqualTo(solution.toString());
+    assertThat(filter.getAsJsonArray("projects")).hasSize(1);
+    assertThat(filter.getAsJsonArray("projects").get(0).getAsString()).isEqualTo("src\\Web\\Web.csproj");
+  }
+
+  @Test
+  void keepReferencedProjectsInTheSameShard() throws IOException {
+    writeProject("tests/Core.Tests/Core.Tests.csproj", "..\\..\\src\\Core\\Core.csproj");
+
+    List<SolutionShards.Shard> shards = SolutionShards.split(solution, 3, outputDir);
+
+    assertThat(shards).hasSize(2);
+    assertThat(shards.get(0).getProjectDirs()).containsExactly(baseDir.resolve("src/Core"), baseDir.resolve("tests/Core.Tests"));
+    assertThat(shards.get(1).getProjectDirs()).containsExactly(baseDir.resolve("src/Web"));
+  }
+
+  @Test
+  void loadSharedReferencedProjectInEachShard() throws IOException {
+    writeProject("src/Web/Web.csproj", "..\\Core\\Core.csproj");
+    writeProject("tests/Core.Tests/Core.Tests.csproj", "../../src/Core/Core.csproj");
+
+    List<SolutionShards.Shard> shards = SolutionShards.split(solution, 2, outputDir);
+
+    assertThat(shards).hasSize(2);
+    assertThat(readFilterProjects(shards.get(0))).containsExactly("src\\Core\\Core.csproj", "src\\Web\\Web.csproj");
+    assertThat(readFilterProjects(shards.get(1))).containsExactly("src\\Core\\Core.csproj", "tests\\Core.Tests\\Core.Tests.csproj");
+    // Core is loaded by both shards but only owned by the first one
+    assertThat(shards.get(0).getProjectDirs()).containsExactly(baseDir.resolve("src/Core"), baseDir.resolve("src/Web"));
+    assertThat(shards.get(1).getProjectDirs()).containsExactly(baseDir.resolve("tests/Core.Tests"));
+  }
+
+  @Test
+  void dontSplitSolutionWithSingleTopLevelProject() throws IOException {
+    writeProject("src/Web/Web.csproj", "..\\Core\\Core.csproj");
+    writeProject("tests/Core.Tests/Core.Tests.csproj", "../../src/Web/Web.csproj");
+
+    assertThat(SolutionShards.split(solution, 2, outputDir)).isEmpty();
+  }
+
+  @Test
+  void readProjectReferences() throws IOException {
+    Path project = writeProject("src/Web/Web.csproj", "..\\Core\\Core.csproj");
+
+    assertThat(SolutionShards.readProjectReferences(project)).containsExactly(baseDir.resolve("src/Core/Core.csproj"));
+    assertThat(SolutionShards.readProjectReferences(baseDir.resolve("Missing.csproj"))).isEmpty();
+  }
+
+  @Test
+  void noMoreShardsThanProjects() throws IOException {
+    assertThat(SolutionShards.split(solution, 10, outputDir)).hasSize(3);
+  }
+
+  @Test
+  void dontSplitSolutionWithSingleProject() throws IOException {
+    Path single = baseDir.resolve("Single.sln");
+    Files.write(single, ("Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Core\", \"Core.csproj\", \"{11111111-1111-1111-1111-111111111111}\"\n")
+      .getBytes(StandardCharsets.UTF_8));
+
+    assertThat(SolutionShards.split(single, 4, outputDir)).isEmpty();
+  }
+
+  private static List<String> readFilterProjects(SolutionShards.Shard shard) throws IOException {
+    var projects = JsonParser.parseString(Files.readString(shard.getSolutionFilter())).getAsJsonObject().getAsJsonObject("solution")
+      .getAsJsonArray("projects");
+    List<String> result = new ArrayList<>();
+    projects.forEach(p -> result.add(p.getAsString()));
+    return result;
+  }
+
+  private Path writeProject(String relativePath, String reference) throws IOException {
+    Path project = baseDir.resolve(relativePath);
+    Files.createDirectories(project.getParent());
+    Files.write(project, ("<Project Sdk=\"Microsoft.NET.Sdk\">\n"
+      + "  <ItemGroup>\n"
+      + "    <ProjectReference Include=\"" + reference + "\" />\n"
+      + "  </ItemGroup>\n"
+      + "</Project>\n").getBytes(StandardCharsets.UTF_8));
+    return project;
+  }
+
+}
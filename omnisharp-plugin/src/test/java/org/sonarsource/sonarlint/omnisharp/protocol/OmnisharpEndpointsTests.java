@@ -23,8 +23,13 @@ import com.google.gson.JsonObject;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -44,9 +49,12 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.tuple;
 import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class OmnisharpEndpointsTests {
@@ -71,15 +79,17 @@ class OmnisharpEndpointsTests {
 
     omnisharpServer = mock(OmnisharpServerController.class);
     underTest.setServer(omnisharpServer);
+    when(omnisharpServer.codeCheckStarted()).thenReturn(() -> {
+    });
 
     doAnswer(new Answer<Boolean>() {
 
       @Override
       public Boolean answer(InvocationOnMock invocation) throws Throwable {
-        requests.add(invocation.getArgument(0));
+        requests.add(invocation.<OmnisharpRequest>getArgument(0).getJsonPayload());
         return true;
       }
-    }).when(omnisharpServer).writeRequestOnStdIn(anyString());
+    }).when(omnisharpServer).writeRequestOnStdIn(any(OmnisharpRequest.class));
   }
 
   @ParameterizedTest
@@ -104,6 +114,21 @@ class OmnisharpEndpointsTests {
     assertThat(loadProjectsFuture.isDone()).isTrue();
   }
 
+  @Test
+  void notifyLoadedProjects() {
+    List<String> loadedProjects = new ArrayList<>();
+
+    responseProcessor.handleOmnisharpOutput(startFuture, loadProjectsFuture, loadedProjects::add,
+      "{\"Type\": \"event\", \"Event\": \"ProjectAdded\", \"Body\": {\"MsBuildProject\": {\"Path\": \"/solution/Core/Core.csproj\"}}}");
+    responseProcessor.handleOmnisharpOutput(startFuture, loadProjectsFuture, loadedProjects::add,
+      "{\"Type\": \"event\", \"Event\": \"ProjectChanged\", \"Body\": {\"MsBuildProject\": {\"Path\": \"/solution/Web/Web.csproj\"}}}");
+    responseProcessor.handleOmnisharpOutput(startFuture, loadProjectsFuture, loadedProjects::add,
+      "{\"Type\": \"event\", \"Event\": \"ProjectRemoved\", \"Body\": {\"MsBuildProject\": {\"Path\": \"/solution/Old/Old.csproj\"}}}");
+
+    assertThat(loadedProjects).containsExactly("/solution/Core/Core.csproj", "/solution/Web/Web.csproj");
+    assertThat(loadProjectsFuture).isDone();
+  }
+
   @Test
   void stopServer() throws Exception {
     underTest.stopServer();
@@ -111,6 +136,13 @@ class OmnisharpEndpointsTests {
     assertThat(requests).containsExactly("{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/stopserver\"}");
   }
 
+  @Test
+  void warmUp() {
+    underTest.warmUp();
+
+    assertThat(requests).containsExactly("{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/warmup\"}");
+  }
+
   @Test
   void updateBuffer() throws Exception {
     File f = new File("Foo.cs");
@@ -143,6 +175,26 @@ class OmnisharpEndpointsTests {
     assertThat(issues).isEmpty();
   }
 
+  @Test
+  void codeCheckWithBodyBeforeRequestSeq() throws Exception {
+    logTester.setLevel(LoggerLevel.DEBUG);
+    List<Diagnostic> issues = new ArrayList<>();
+    File f = new File("Foo.cs");
+    Thread t = new Thread(() -> underTest.codeCheck(f, issues::add));
+    t.start();
+
+    await().atMost(5, SECONDS).untilAsserted(() -> assertThat(requests).containsExactly(
+      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/codecheck\",\"Arguments\":{\"FileName\":\"" + toJsonAbsolutePath(f) + "\",\"CancellationId\":\"1\"}}"));
+
+    emulateReceivedMessage("{\"Type\": \"response\", \"Body\": {\"QuickFixes\": [{\"Id\": \"S1118\", \"FileName\": \"" + toJsonAbsolutePath(f)
+      + "\", \"Line\": 1, \"Column\": 1, \"EndLine\": 1, \"EndColumn\": 2, \"Text\": \"Foo\"}]}, \"Request_seq\": 1, \"Success\": true}");
+
+    t.join(1000);
+    assertThat(t.isAlive()).isFalse();
+    assertThat(issues).extracting(Diagnostic::getId).containsExactly("S1118");
+    assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Body of the response to request 1 received before its sequence number");
+  }
+
   @Test
   void codeCheckFailed() throws Exception {
     List<Diagnostic> issues = new ArrayList<>();
@@ -155,6 +207,22 @@ class OmnisharpEndpointsTests {
     assertThat(issues).isEmpty();
   }
 
+  @Test
+  void ignoreEventsWithoutBody() throws Exception {
+    logTester.setLevel(LoggerLevel.DEBUG);
+    List<Diagnostic> issues = new ArrayList<>();
+    File f = new File("Foo.cs");
+
+    emulateReceivedMessage("{\"Type\": \"event\", \"Event\": \"log\"}");
+    emulateReceivedMessage("{\"Type\": \"event\", \"Event\": \"MsBuildProjectDiagnostics\"}");
+    doCodeCheck(f, issues, "\"Body\": {"
+      + "    \"QuickFixes\": []"
+      + "  }");
+
+    assertThat(logTester.logs(LoggerLevel.ERROR)).isEmpty();
+    assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("{\"Type\": \"event\", \"Event\": \"log\"}");
+  }
+
   @Test
   void codeCheck() throws Exception {
     List<Diagnostic> issues = new ArrayList<>();
@@ -337,6 +405,8 @@ class OmnisharpEndpointsTests {
     // wait for config to finish
     t.join(1000);
     assertThat(t.isAlive()).isFalse();
+    // Sent again to the replacement processes of a warm restart
+    verify(omnisharpServer).configSent(config);
   }
 
   @Test
@@ -358,13 +428,358 @@ class OmnisharpEndpointsTests {
     assertThat(t.isAlive()).isFalse();
   }
 
+  @Test
+  void updateBufferChanges() throws Exception {
+    File f = new File("Foo.cs");
+
+    var future = underTest.updateBufferChangesAsync(f, List.of(new TextChange("  long b;\n", 3, 1, 4, 1)));
+
+    assertThat(requests).containsExactly(
+      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/updatebuffer\",\"Arguments\":{\"FileName\":\"" + toJsonAbsolutePath(f) + "\",\"Changes\":["
+        + "{\"NewText\":\"  long b;\\n\",\"StartLine\":3,\"StartColumn\":1,\"EndLine\":4,\"EndColumn\":1}]}}");
+
+    emulateReceivedMessage("{\"Type\": \"response\", \"Request_seq\": 1}");
+
+    assertThat(future).isCompleted();
+  }
+
+  @Test
+  void escapeBufferWhileStreamingRequest() throws Exception {
+    File f = new File("Foo.cs");
+
+    underTest.updateBufferAsync(f, "class Foo {\r\n  string s = \"\\\t\";\r\n}");
+
+    assertThat(requests).containsExactly(
+      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/updatebuffer\",\"Arguments\":{\"FileName\":\"" + toJsonAbsolutePath(f)
+        + "\",\"Buffer\":\"class Foo {\\r\\n  string s = \\\"\\\\\\t\\\";\\r\\n}\"}}");
+  }
+
   @Test
   void failEarlyIfUnableToWriteRequestToServer() throws Exception {
-    when(omnisharpServer.writeRequestOnStdIn(anyString())).thenReturn(false);
+    when(omnisharpServer.writeRequestOnStdIn(any(OmnisharpRequest.class))).thenReturn(false);
     JsonObject jsonObject = new JsonObject();
     assertThrows(IllegalStateException.class, () -> underTest.config(jsonObject));
   }
 
+  @Test
+  void asyncRequestFailsIfUnableToWriteRequestToServer() throws Exception {
+    when(omnisharpServer.writeRequestOnStdIn(any(OmnisharpRequest.class))).thenReturn(false);
+
+    var future = underTest.configAsync(new JsonObject());
+
+    assertThat(future).isCompletedExceptionally();
+    var thrown = assertThrows(ExecutionException.class, future::get);
+    assertThat(thrown).hasCauseInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void pipelineSeveralRequests() throws Exception {
+    File foo = new File("Foo.cs");
+    File bar = new File("Bar.cs");
+
+    var updateFooFuture = underTest.updateBufferAsync(foo, "Foo content");
+    var codeCheckFooFuture = underTest.codeCheckAsync(foo);
+    var codeCheckBarFuture = underTest.codeCheckAsync(bar);
+
+    // All requests are sent without waiting for any response
+    assertThat(requests).containsExactly(
+      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/updatebuffer\",\"Arguments\":{\"FileName\":\"" + toJsonAbsolutePath(foo) + "\",\"Buffer\":\"Foo content\"}}",
+      "{\"Type\":\"request\",\"Seq\":2,\"Command\":\"/sonarlint/codecheck\",\"Arguments\":{\"FileName\":\"" + toJsonAbsolutePath(foo) + "\",\"CancellationId\":\"2\"}}",
+      "{\"Type\":\"request\",\"Seq\":3,\"Command\":\"/sonarlint/codecheck\",\"Arguments\":{\"FileName\":\"" + toJsonAbsolutePath(bar) + "\",\"CancellationId\":\"3\"}}");
+    assertThat(updateFooFuture).isNotDone();
+    assertThat(codeCheckFooFuture).isNotDone();
+    assertThat(codeCheckBarFuture).isNotDone();
+
+    // Responses can come in any order
+    emulateReceivedMessage(codeCheckResponse(3, "S1118", bar));
+    assertThat(codeCheckBarFuture.get().getDiagnostics()).extracting(Diagnostic::getId).containsExactly("S1118");
+    assertThat(codeCheckFooFuture).isNotDone();
+
+    emulateReceivedMessage("{\"Type\": \"response\", \"Request_seq\": 1}");
+    emulateReceivedMessage(codeCheckResponse(2, "S3776", foo));
+
+    assertThat(updateFooFuture).isCompleted();
+    assertThat(codeCheckFooFuture.get().getDiagnostics()).extracting(Diagnostic::getId).containsExactly("S3776");
+    assertThat(codeCheckFooFuture.get().getFile()).isEqualTo(foo);
+    assertThat(codeCheckFooFuture.get().isComplete()).isTrue();
+  }
+
+  @Test
+  void codeCheckWithoutCompletenessIsPartial() throws Exception {
+    File f = new File("Foo.cs");
+
+    var future = underTest.codeCheckAsync(f);
+    emulateReceivedMessage("{\"Type\": \"response\", \"Request_seq\": 1, \"Success\": true, \"Body\": {\"QuickFixes\": []}}");
+
+    assertThat(future.get().isComplete()).isFalse();
+  }
+
+  @Test
+  void failedCodeCheckIsPartial() throws Exception {
+    File f = new File("Foo.cs");
+
+    var future = underTest.codeCheckAsync(f);
+    emulateReceivedMessage("{\"Type\": \"response\", \"Request_seq\": 1, \"Success\": false, \"Message\": \"Some error\", \"Body\": {\"QuickFixes\": [], \"Complete\": true}}");
+
+    assertThat(future.get().getDiagnostics()).isEmpty();
+    assertThat(future.get().isComplete()).isFalse();
+  }
+
+  @Test
+  void codeCheckBatchWithoutBuffer() throws Exception {
+    File foo = new File("Foo.cs");
+    Map<File, String> buffers = new LinkedHashMap<>();
+    buffers.put(foo, null);
+
+    underTest.codeCheckBatchAsync(buffers);
+
+    assertThat(requests).containsExactly(
+      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/codecheckbatch\",\"Arguments\":{\"CancellationId\":\"1\",\"Files\":["
+        + "{\"FileName\":\"" + toJsonAbsolutePath(foo) + "\",\"Buffer\":null}]}}");
+  }
+
+  @Test
+  void codeCheckBatch() throws Exception {
+    File foo = new File("Foo.cs");
+    File bar = new File("Bar.cs");
+    Map<File, String> buffers = new LinkedHashMap<>();
+    buffers.put(foo, "Foo content");
+    buffers.put(bar, "Bar content");
+
+    var future = underTest.codeCheckBatchAsync(buffers);
+
+    assertThat(requests).containsExactly(
+      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/codecheckbatch\",\"Arguments\":{\"CancellationId\":\"1\",\"Files\":["
+        + "{\"FileName\":\"" + toJsonAbsolutePath(foo) + "\",\"Buffer\":\"Foo content\"},"
+        + "{\"FileName\":\"" + toJsonAbsolutePath(bar) + "\",\"Buffer\":\"Bar content\"}]}}");
+
+    emulateReceivedMessage("{"
+      + "  \"Request_seq\": 1,"
+      + "  \"Command\": \"/sonarlint/codecheckbatch\","
+      + "  \"Running\": true,"
+      + "  \"Success\": true,"
+      + "  \"Message\": null,"
+      + "  \"Body\": {"
+      + "    \"Files\": ["
+      + "      {"
+      + "        \"FileName\": \"" + toJsonAbsolutePath(foo) + "\","
+      + "        \"QuickFixes\": ["
+      + "          {\"Id\": \"S1118\", \"FileName\": \"" + toJsonAbsolutePath(foo) + "\", \"Line\": 1, \"Column\": 1, \"EndLine\": 1, \"EndColumn\": 2, \"Text\": \"Foo\"},"
+      + "          {\"Id\": \"CS1234\", \"FileName\": \"" + toJsonAbsolutePath(foo) + "\", \"Line\": 1, \"Column\": 1, \"EndLine\": 1, \"EndColumn\": 2, \"Text\": \"Ignored\"}"
+      + "        ],"
+      + "        \"Complete\": true"
+      + "      },"
+      + "      {"
+      + "        \"FileName\": \"" + toJsonAbsolutePath(bar) + "\","
+      + "        \"QuickFixes\": ["
+      + "          {\"Id\": \"S3776\", \"FileName\": \"" + toJsonAbsolutePath(bar) + "\", \"Line\": 2, \"Column\": 1, \"EndLine\": 2, \"EndColumn\": 2, \"Text\": \"Bar\"}"
+      + "        ]"
+      + "      }"
+      + "    ]"
+      + "  },"
+      + "  \"Seq\": 12,"
+      + "  \"Type\": \"response\""
+      + "}");
+
+    // Grouped by the files of the request, the second one is partial
+    assertThat(future.get()).extracting(CodeCheckResult::getFile, r -> r.getDiagnostics().size(), CodeCheckResult::isComplete)
+      .containsExactly(tuple(foo, 1, true), tuple(bar, 1, false));
+    assertThat(future.get()).flatExtracting(CodeCheckResult::getDiagnostics).extracting(Diagnostic::getId, Diagnostic::getFilename)
+      .containsExactly(tuple("S1118", foo.getAbsolutePath()), tuple("S3776", bar.getAbsolutePath()));
+  }
+
+  @Test
+  void codeCheckBatchMissingFileIsPartial() throws Exception {
+    File foo = new File("Foo.cs");
+    Map<File, String> buffers = new LinkedHashMap<>();
+    buffers.put(foo, null);
+
+    var future = underTest.codeCheckBatchAsync(buffers);
+    emulateReceivedMessage("{\"Type\": \"response\", \"Request_seq\": 1, \"Success\": true, \"Body\": {\"Files\": []}}");
+
+    assertThat(future.get()).extracting(CodeCheckResult::getFile, CodeCheckResult::isComplete).containsExactly(tuple(foo, false));
+  }
+
+  @Test
+  void codeCheckBatchSplitBetweenProcesses() throws Exception {
+    File foo = new File("Foo.cs");
+    File bar = new File("Bar.cs");
+    when(omnisharpServer.getProcessIndex(bar)).thenReturn(1);
+    Map<File, String> buffers = new LinkedHashMap<>();
+    buffers.put(foo, "Foo content");
+    buffers.put(bar, "Bar content");
+
+    var future = underTest.codeCheckBatchAsync(buffers);
+
+    assertThat(requests).containsExactly(
+      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/codecheckbatch\",\"Arguments\":{\"CancellationId\":\"1\",\"Files\":["
+        + "{\"FileName\":\"" + toJsonAbsolutePath(foo) + "\",\"Buffer\":\"Foo content\"}]}}",
+      "{\"Type\":\"request\",\"Seq\":2,\"Command\":\"/sonarlint/codecheckbatch\",\"Arguments\":{\"CancellationId\":\"2\",\"Files\":["
+        + "{\"FileName\":\"" + toJsonAbsolutePath(bar) + "\",\"Buffer\":\"Bar content\"}]}}");
+
+    emulateReceivedMessage(codeCheckBatchResponse(2, "S3776", bar));
+    assertThat(future).isNotDone();
+    emulateReceivedMessage(codeCheckBatchResponse(1, "S1118", foo));
+
+    assertThat(future.get()).flatExtracting(CodeCheckResult::getDiagnostics).extracting(Diagnostic::getId, Diagnostic::getFilename)
+      .containsExactly(tuple("S1118", foo.getAbsolutePath()), tuple("S3776", bar.getAbsolutePath()));
+  }
+
+  @Test
+  void codeCheckAllStreamsFileDiagnostics() throws Exception {
+    File foo = new File("Foo.cs");
+    File bar = new File("Bar.cs");
+    List<Diagnostic> issues = new CopyOnWriteArrayList<>();
+    Thread t = new Thread(() -> underTest.codeCheckAll(issues::addAll));
+    t.start();
+
+    await().atMost(5, SECONDS).untilAsserted(() -> assertThat(requests).containsExactly(
+      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/codecheck\",\"Arguments\":{\"CancellationId\":\"1\",\"StreamResults\":true}}"));
+
+    emulateReceivedMessage(fileDiagnosticsEvent("1", "S1118", foo));
+    // Reported before the end of the analysis
+    await().atMost(5, SECONDS).untilAsserted(() -> assertThat(issues).extracting(Diagnostic::getId).containsExactly("S1118"));
+    assertThat(t.isAlive()).isTrue();
+
+    // Body before event name, decoded from the tree
+    emulateReceivedMessage("{\"Body\": {\"CancellationId\": \"1\", \"QuickFixes\": [{\"Id\": \"S3776\", \"FileName\": \"" + toJsonAbsolutePath(bar)
+      + "\", \"Line\": 1, \"Column\": 1, \"EndLine\": 1, \"EndColumn\": 2, \"Text\": \"Bar\"}]}, \"Event\": \"SonarLintFileDiagnostics\", \"Type\": \"event\"}");
+    // Other requests are ignored
+    emulateReceivedMessage(fileDiagnosticsEvent("2", "S1234", foo));
+    emulateReceivedMessage(fileDiagnosticsEvent("not a number", "S1234", foo));
+    emulateReceivedMessage("{\"Type\": \"response\", \"Request_seq\": 1, \"Success\": true, \"Body\": {\"QuickFixes\": []}}");
+
+    t.join(5000);
+    assertThat(t.isAlive()).isFalse();
+    assertThat(issues).extracting(Diagnostic::getId, Diagnostic::getFilename)
+      .containsExactly(tuple("S1118", foo.getAbsolutePath()), tuple("S3776", bar.getAbsolutePath()));
+  }
+
+  @Test
+  void codeCheckAllFailed() throws Exception {
+    var future = underTest.codeCheckAllAsync(d -> {
+    });
+
+    emulateReceivedMessage("{\"Type\": \"response\", \"Request_seq\": 1, \"Success\": false, \"Message\": \"Some error\"}");
+
+    assertThat(future).isCompleted();
+    assertThat(logTester.logs(LoggerLevel.ERROR)).contains("Some error");
+  }
+
+  @Test
+  void cancelCodeChecks() throws Exception {
+    File foo = new File("Foo.cs");
+    File bar = new File("Bar.cs");
+    var fooFuture = underTest.codeCheckAsync(foo);
+    var barFuture = underTest.codeCheckAsync(bar);
+    emulateReceivedMessage(codeCheckResponse(2, "S1118", bar));
+    assertThat(barFuture.get().getDiagnostics()).extracting(Diagnostic::getId).containsExactly("S1118");
+
+    underTest.cancelCodeChecks();
+
+    assertThat(requests).last().isEqualTo("{\"Type\":\"request\",\"Seq\":3,\"Command\":\"/sonarlint/cancel\",\"Arguments\":{\"CancellationIds\":[\"1\"]}}");
+    assertThat(fooFuture).isCancelled();
+  }
+
+  @Test
+  void cancelCodeChecksEvenIfCancelRequestCantBeWritten() {
+    var fooFuture = underTest.codeCheckAsync(new File("Foo.cs"));
+    doThrow(new IllegalStateException("Unable to write in Omnisharp stdin")).when(omnisharpServer)
+      .writeRequestOnStdIn(argThat(r -> r.getCommand().equals("/sonarlint/cancel")));
+
+    assertThrows(IllegalStateException.class, () -> underTest.cancelCodeChecks());
+
+    assertThat(fooFuture).isCancelled();
+  }
+
+  @Test
+  void cancelBlockingCodeCheck() {
+    AtomicReference<Throwable> thrown = new AtomicReference<>();
+    Thread t = new Thread(() -> {
+      try {
+        underTest.codeCheck(new File("Foo.cs"), d -> {
+        });
+      } catch (Throwable e) {
+        thrown.set(e);
+      }
+    });
+    t.start();
+    await().atMost(5, SECONDS).until(() -> requests.size() == 1);
+
+    underTest.cancelCodeChecks();
+
+    await().atMost(5, SECONDS).untilAsserted(() -> assertThat(thrown.get()).isInstanceOf(CancellationException.class));
+  }
+
+  @Test
+  void cancelCodeChecksDoesNothingIfNoneIsPending() {
+    underTest.cancelCodeChecks();
+
+    assertThat(requests).isEmpty();
+  }
+
+  @Test
+  void configWaitsForAllProcesses() throws Exception {
+    when(omnisharpServer.getRunningProcessCount()).thenReturn(2);
+
+    var future = underTest.configAsync(new JsonObject());
+
+    // The server controller sends the same request to each process
+    assertThat(requests).containsExactly("{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/config\",\"Arguments\":{}}");
+
+    emulateReceivedMessage("{\"Type\": \"response\", \"Request_seq\": 1, \"Success\": true}");
+    assertThat(future).isNotDone();
+
+    emulateReceivedMessage("{\"Type\": \"response\", \"Request_seq\": 1, \"Success\": true}");
+    assertThat(future).isCompleted();
+  }
+
+  private String codeCheckBatchResponse(int requestSeq, String ruleId, File f) {
+    return "{\"Type\": \"response\", \"Request_seq\": " + requestSeq + ", \"Success\": true, \"Body\": {\"Files\": [{"
+      + "\"FileName\": \"" + toJsonAbsolutePath(f) + "\", \"QuickFixes\": ["
+      + "{\"Id\": \"" + ruleId + "\", \"FileName\": \"" + toJsonAbsolutePath(f) + "\", \"Line\": 1, \"Column\": 1, \"EndLine\": 1, \"EndColumn\": 2, \"Text\": \"Msg\"}"
+      + "]}]}}";
+  }
+
+  @Test
+  void skipBodyOfResponsesNobodyWaitsFor() throws Exception {
+    File foo = new File("Foo.cs");
+
+    var codeCheckFooFuture = underTest.codeCheckAsync(foo);
+
+    emulateReceivedMessage(codeCheckResponse(42, "S1118", foo));
+    assertThat(codeCheckFooFuture).isNotDone();
+
+    emulateReceivedMessage(codeCheckResponse(1, "S3776", foo));
+    assertThat(codeCheckFooFuture.get().getDiagnostics()).extracting(Diagnostic::getId).containsExactly("S3776");
+  }
+
+  private String codeCheckResponse(int requestSeq, String ruleId, File f) {
+    return "{"
+      + "  \"Request_seq\": " + requestSeq + ","
+      + "  \"Command\": \"/sonarlint/codecheck\","
+      + "  \"Running\": true,"
+      + "  \"Success\": true,"
+      + "  \"Message\": null,"
+      + "  \"Body\": {"
+      + "    \"QuickFixes\": ["
+      + "      {"
+      + "        \"Id\": \"" + ruleId + "\","
+      + "        \"FileName\": \"" + toJsonAbsolutePath(f) + "\","
+      + "        \"Line\": 1,"
+      + "        \"Column\": 1,"
+      + "        \"EndLine\": 1,"
+      + "        \"EndColumn\": 2,"
+      + "        \"Text\": \"Message\""
+      + "      }"
+      + "    ],"
+      + "    \"Complete\": true"
+      + "  },"
+      + "  \"Seq\": 409,"
+      + "  \"Type\": \"response\""
+      + "}";
+  }
+
   private void doCodeCheck(File f, List<Diagnostic> issues, String jsonBody) throws IOException, InterruptedException {
     // codeCheck is blocking, so run it in a separate Thread
     Thread t = new Thread(() -> {
@@ -373,7 +788,7 @@ class OmnisharpEndpointsTests {
     t.start();
 
     await().atMost(5, SECONDS).untilAsserted(() -> assertThat(requests).containsExactly(
-      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/codecheck\",\"Arguments\":{\"FileName\":\"" + toJsonAbsolutePath(f) + "\"}}"));
+      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/codecheck\",\"Arguments\":{\"FileName\":\"" + toJsonAbsolutePath(f) + "\",\"CancellationId\":\"1\"}}"));
 
     emulateReceivedMessage("{"
       + "  \"Request_seq\": 1,"
@@ -399,7 +814,7 @@ class OmnisharpEndpointsTests {
     t.start();
 
     await().atMost(5, SECONDS).untilAsserted(() -> assertThat(requests).containsExactly(
-      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/codecheck\",\"Arguments\":{\"FileName\":\"" + toJsonAbsolutePath(f) + "\"}}"));
+      "{\"Type\":\"request\",\"Seq\":1,\"Command\":\"/sonarlint/codecheck\",\"Arguments\":{\"FileName\":\"" + toJsonAbsolutePath(f) + "\",\"CancellationId\":\"1\"}}"));
 
     emulateReceivedMessage("{"
       + "  \"Request_seq\": 1,"
@@ -420,7 +835,22 @@ class OmnisharpEndpointsTests {
     return f.getAbsolutePath().replaceAll("\\\\", Matcher.quoteReplacement("\\\\"));
   }
 
-  private void emulateReceivedMessage(String msg) throws IOException {
+  private String fileDiagnosticsEvent(String cancellationId, String ruleId, File f) {
+    return "{"
+      + "  \"Event\": \"SonarLintFileDiagnostics\","
+      + "  \"Body\": {"
+      + "    \"CancellationId\": \"" + cancellationId + "\","
+      + "    \"FileName\": \"" + toJsonAbsolutePath(f) + "\","
+      + "    \"QuickFixes\": ["
+      + "      {\"Id\": \"" + ruleId + "\", \"FileName\": \"" + toJsonAbsolutePath(f) + "\", \"Line\": 1, \"Column\": 1, \"EndLine\": 1, \"EndColumn\": 2, \"Text\": \"Foo\"}"
+      + "    ]"
+      + "  },"
+      + "  \"Seq\": 12,"
+      + "  \"Type\": \"event\""
+      + "}";
+  }
+
+    private void emulateReceivedMessage(String msg) throws IOException {
     responseProcessor.handleOmnisharpOutput(startFuture, loadProjectsFuture, msg);
   }
 
@@ -0,0 +1,64 @@
+/*
+ * SonarOmnisharp
+ * Copyright (C) 2021-2024 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.omnisharp.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class TextChangeTests {
+
+  @Test
+  void noChangeIfSameBuffer() {
+    assertThat(TextChange.diff("class Foo {\n}\n", "class Foo {\n}\n")).isEmpty();
+  }
+
+  @Test
+  void replaceOnlyModifiedLines() {
+    var changes = TextChange.diff("class Foo {\n  int a;\n  int b;\n}\n", "class Foo {\n  int a;\n  long b;\n}\n");
+
+    assertThat(changes).extracting(TextChange::getNewText, TextChange::getStartLine, TextChange::getStartColumn, TextChange::getEndLine, TextChange::getEndColumn)
+      .containsExactly(tuple("  long b;\n", 3, 1, 4, 1));
+  }
+
+  @Test
+  void appendAtEndOfFile() {
+    var changes = TextChange.diff("class Foo {\n}", "class Foo {\n}\n// comment");
+
+    assertThat(changes).extracting(TextChange::getNewText, TextChange::getStartLine, TextChange::getStartColumn, TextChange::getEndLine, TextChange::getEndColumn)
+      .containsExactly(tuple("}\n// comment", 2, 1, 2, 2));
+  }
+
+  @Test
+  void insertLines() {
+    var changes = TextChange.diff("a\r\nb\r\n", "a\r\nc\r\nb\r\n");
+
+    assertThat(changes).extracting(TextChange::getNewText, TextChange::getStartLine, TextChange::getStartColumn, TextChange::getEndLine, TextChange::getEndColumn)
+      .containsExactly(tuple("c\r\n", 2, 1, 2, 1));
+  }
+
+  @Test
+  void fullBufferIfUnsupportedLineBreaks() {
+    assertThat(TextChange.diff("a\rb\r", "a\rc\r")).isNull();
+    assertThat(TextChange.diff("a\u2028b", "a\u2028c")).isNull();
+  }
+
+}